@@ -0,0 +1,502 @@
+/*
+ * Copyright (c) 2014 Ian Bondoc
+ *
+ * This file is part of Jen8583
+ *
+ * Jen8583 is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the License, or(at your option) any later version.
+ *
+ * Jen8583 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.chiknrice.iso;
+
+import org.chiknrice.iso.codec.Codec;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.LocalDateTime;
+import java.time.MonthDay;
+import java.nio.ByteBuffer;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * A compact map of components keyed by their index which is what IsoMessage and the composite codecs use to hold
+ * values. Keys from 1 up to {@value #MAX_DIRECT_KEY} are kept in a dense array of slots together with a presence
+ * bitmap (which allows null values to be present) while any other key falls back to a TreeMap. Iteration is always in
+ * ascending order of keys just like the TreeMap it replaces and equality follows the {@link Map} contract so it
+ * compares equal to any other map with the same entries. Components in the slots can also be set in their encoded
+ * form in which case they are only decoded when their value is first accessed.
+ *
+ * @author <a href="mailto:chiknrice@gmail.com">Ian Bondoc</a>
+ */
+public class ComponentMap extends AbstractMap<Integer, Object> {
+
+    /**
+     * The highest key which is kept in the slots.
+     */
+    public static final int MAX_DIRECT_KEY = 1024;
+
+    private static final int DEFAULT_CAPACITY = 8;
+
+    private Object[] slots;
+    private Encoded[] raw;
+    private long[] present;
+    private int directSize;
+    private TreeMap<Integer, Object> overflow;
+    private int modCount;
+    private Set<Entry<Integer, Object>> entrySet;
+
+    public ComponentMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity the highest key expected (e.g. the last index of a composite definition). Higher keys are still
+     *                 accepted, the slots just grow when needed.
+     */
+    public ComponentMap(int capacity) {
+        int length = Math.max(1, Math.min(capacity, MAX_DIRECT_KEY));
+        slots = new Object[length];
+        present = new long[words(length)];
+    }
+
+    @Override
+    public int size() {
+        return directSize + (overflow != null ? overflow.size() : 0);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        if (key instanceof Integer) {
+            int k = (Integer) key;
+            if (isDirect(k)) {
+                return isPresent(k);
+            } else {
+                return overflow != null && overflow.containsKey(k);
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public Object get(Object key) {
+        if (key instanceof Integer) {
+            return get((int) (Integer) key);
+        }
+        return null;
+    }
+
+    /**
+     * @param key the index of the component.
+     * @return the value or null if the component doesn't exist.
+     */
+    public Object get(int key) {
+        if (isDirect(key)) {
+            return key <= slots.length ? value(key) : null;
+        } else {
+            return overflow != null ? overflow.get(key) : null;
+        }
+    }
+
+    @Override
+    public Object put(Integer key, Object value) {
+        int k = key;
+        Object old = isDirect(k) && isPresent(k) ? value(k) : null;
+        Object oldOverflow = set(k, value);
+        return isDirect(k) ? old : oldOverflow;
+    }
+
+    /**
+     * Sets the value of the component like {@link #put(Integer, Object)} but without decoding the previous value if it
+     * has not been decoded yet.
+     *
+     * @param key   the index of the component.
+     * @param value the value.
+     * @return the previous value of a key which is not kept in the slots, null otherwise.
+     */
+    public Object set(int key, Object value) {
+        if (isDirect(key)) {
+            if (key > slots.length) {
+                grow(key);
+            }
+            if (!isPresent(key)) {
+                present[word(key)] |= bit(key);
+                directSize++;
+                modCount++;
+            }
+            slots[key - 1] = value;
+            clearRaw(key);
+            return null;
+        } else {
+            if (overflow == null) {
+                overflow = new TreeMap<>();
+            }
+            if (!overflow.containsKey(key)) {
+                modCount++;
+            }
+            return overflow.put(key, value);
+        }
+    }
+
+    /**
+     * Sets a component which is only decoded by the codec when its value is first accessed. The encoded value is read
+     * from the buffer (which should not be modified until then) between offset and offset + length. The encoded bytes
+     * are also retained for {@link #copyEncoded(int, Codec, ByteBuffer)} until the component is set, removed or its
+     * value (if mutable) is accessed. Components which are not kept in the slots are decoded straight away.
+     *
+     * @param key    the index of the component.
+     * @param codec  the codec of the component.
+     * @param buf    the buffer holding the encoded value.
+     * @param offset the absolute position of the encoded value in the buffer.
+     * @param length the number of bytes of the encoded value.
+     */
+    public void setEncoded(int key, Codec<?> codec, ByteBuffer buf, int offset, int length) {
+        Encoded encoded = new Encoded(codec, buf, offset, length);
+        if (isDirect(key)) {
+            set(key, encoded);
+            if (raw == null) {
+                raw = new Encoded[slots.length];
+            }
+            raw[key - 1] = encoded;
+        } else {
+            set(key, encoded.decode());
+        }
+    }
+
+    /**
+     * Copies the encoded bytes the component was decoded from to the buffer if the bytes are still retained and were
+     * decoded by the same codec instance.
+     *
+     * @param key   the index of the component.
+     * @param codec the codec which would otherwise encode the value.
+     * @param dst   the buffer to copy the encoded bytes to.
+     * @return true if the encoded bytes were copied, false if the value needs to be encoded.
+     */
+    public boolean copyEncoded(int key, Codec<?> codec, ByteBuffer dst) {
+        if (raw != null && isDirect(key) && key <= raw.length) {
+            Encoded encoded = raw[key - 1];
+            if (encoded != null && encoded.codec == codec) {
+                encoded.copyTo(dst);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param key   the index of the component.
+     * @param codec the codec which would otherwise encode the value.
+     * @return the number of encoded bytes {@link #copyEncoded(int, Codec, ByteBuffer)} would copy or -1 if the value
+     * needs to be encoded.
+     */
+    public int encodedLength(int key, Codec<?> codec) {
+        if (raw != null && isDirect(key) && key <= raw.length) {
+            Encoded encoded = raw[key - 1];
+            if (encoded != null && encoded.codec == codec) {
+                return encoded.length;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public Object remove(Object key) {
+        if (key instanceof Integer) {
+            int k = (Integer) key;
+            Object old = isDirect(k) && isPresent(k) ? value(k) : null;
+            Object oldOverflow = unSet(k);
+            return isDirect(k) ? old : oldOverflow;
+        }
+        return null;
+    }
+
+    /**
+     * Removes the component like {@link #remove(Object)} but without decoding the previous value if it has not been
+     * decoded yet.
+     *
+     * @param key the index of the component.
+     * @return the previous value of a key which is not kept in the slots, null otherwise.
+     */
+    public Object unSet(int key) {
+        if (isDirect(key)) {
+            if (isPresent(key)) {
+                slots[key - 1] = null;
+                clearRaw(key);
+                present[word(key)] &= ~bit(key);
+                directSize--;
+                modCount++;
+            }
+        } else if (overflow != null && overflow.containsKey(key)) {
+            modCount++;
+            return overflow.remove(key);
+        }
+        return null;
+    }
+
+    @Override
+    public void clear() {
+        if (size() > 0) {
+            Arrays.fill(slots, null);
+            Arrays.fill(present, 0L);
+            raw = null;
+            directSize = 0;
+            overflow = null;
+            modCount++;
+        }
+    }
+
+    /**
+     * Returns the keys from 1 up to {@value #MAX_DIRECT_KEY} which are present as 64 bit words with key 1 being the
+     * most significant bit of word 0 (the same order as an ISO8583 bitmap). The returned array is shared and must not
+     * be modified, it may also have trailing words which are all zero.
+     *
+     * @return the presence mask.
+     */
+    public long[] getPresenceMask() {
+        return present;
+    }
+
+    /**
+     * @return true if there are keys beyond the range covered by the presence mask.
+     */
+    public boolean hasOverflow() {
+        return overflow != null && overflow.size() > 0;
+    }
+
+    @Override
+    public Set<Entry<Integer, Object>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new AbstractSet<Entry<Integer, Object>>() {
+                @Override
+                public Iterator<Entry<Integer, Object>> iterator() {
+                    return new EntryIterator();
+                }
+
+                @Override
+                public int size() {
+                    return ComponentMap.this.size();
+                }
+
+                @Override
+                public void clear() {
+                    ComponentMap.this.clear();
+                }
+            };
+        }
+        return entrySet;
+    }
+
+    private void grow(int key) {
+        int length = Math.max(key, Math.min(slots.length * 2, MAX_DIRECT_KEY));
+        slots = Arrays.copyOf(slots, length);
+        if (raw != null) {
+            raw = Arrays.copyOf(raw, length);
+        }
+        present = Arrays.copyOf(present, words(length));
+    }
+
+    /**
+     * Returns the value of a key in the slots decoding it first if it has not been decoded yet.
+     */
+    private Object value(int key) {
+        Object value = slots[key - 1];
+        if (value instanceof Encoded) {
+            value = ((Encoded) value).decode();
+            slots[key - 1] = value;
+            if (!isImmutable(value)) {
+                // the value could be changed in place so the encoded bytes can't be trusted anymore
+                clearRaw(key);
+            }
+        }
+        return value;
+    }
+
+    private void clearRaw(int key) {
+        if (raw != null && key <= raw.length) {
+            raw[key - 1] = null;
+        }
+    }
+
+    private static boolean isImmutable(Object value) {
+        return value == null || value instanceof String || value instanceof Integer || value instanceof Long ||
+                value instanceof BigInteger || value instanceof BigDecimal || value instanceof Boolean ||
+                value instanceof Character || value instanceof Short || value instanceof Byte ||
+                value instanceof LocalDateTime || value instanceof MonthDay;
+    }
+
+    private boolean isPresent(int key) {
+        int word = word(key);
+        return word < present.length && (present[word] & bit(key)) != 0;
+    }
+
+    private static boolean isDirect(int key) {
+        return key > 0 && key <= MAX_DIRECT_KEY;
+    }
+
+    private static int words(int length) {
+        return ((length - 1) >>> 6) + 1;
+    }
+
+    private static int word(int key) {
+        return (key - 1) >>> 6;
+    }
+
+    private static long bit(int key) {
+        return Long.MIN_VALUE >>> ((key - 1) & 63);
+    }
+
+    /**
+     * The encoded bytes of a value which has not been decoded yet.
+     */
+    private static final class Encoded {
+
+        private final Codec<?> codec;
+        private final ByteBuffer buf;
+        private final int offset;
+        private final int length;
+
+        private Encoded(Codec<?> codec, ByteBuffer buf, int offset, int length) {
+            this.codec = codec;
+            this.buf = buf;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        private Object decode() {
+            ByteBuffer encoded = buf.duplicate();
+            encoded.limit(offset + length);
+            encoded.position(offset);
+            return codec.decode(encoded.slice());
+        }
+
+        private void copyTo(ByteBuffer dst) {
+            ByteBuffer encoded = buf.duplicate();
+            encoded.limit(offset + length);
+            encoded.position(offset);
+            dst.put(encoded);
+        }
+    }
+
+    private class ComponentEntry extends SimpleEntry<Integer, Object> {
+
+        private static final long serialVersionUID = 1L;
+
+        private ComponentEntry(int key) {
+            super(key, value(key));
+        }
+
+        @Override
+        public Object setValue(Object value) {
+            slots[getKey() - 1] = value;
+            clearRaw(getKey());
+            return super.setValue(value);
+        }
+    }
+
+    /**
+     * Iterates the overflow keys lower than 1, then the slots and then the overflow keys higher than
+     * {@value #MAX_DIRECT_KEY}.
+     */
+    private class EntryIterator implements Iterator<Entry<Integer, Object>> {
+
+        private final Iterator<Entry<Integer, Object>> lowOverflow;
+        private Iterator<Entry<Integer, Object>> highOverflow;
+        private Iterator<Entry<Integer, Object>> lastOverflow;
+        private int expectedModCount = modCount;
+        private int nextKey;
+        private int lastKey;
+
+        private EntryIterator() {
+            lowOverflow = overflow != null ? overflow.headMap(1).entrySet().iterator() : null;
+            nextKey = nextDirectKey(1);
+        }
+
+        private int nextDirectKey(int from) {
+            for (int word = word(from); word < present.length; word++) {
+                long bits = present[word];
+                if (word == word(from)) {
+                    bits &= -1L >>> ((from - 1) & 63);
+                }
+                if (bits != 0) {
+                    return (word << 6) + Long.numberOfLeadingZeros(bits) + 1;
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * Created only when reached as removing a low key through its iterator would invalidate it.
+         */
+        private Iterator<Entry<Integer, Object>> highOverflow() {
+            if (highOverflow == null && overflow != null) {
+                highOverflow = overflow.tailMap(1).entrySet().iterator();
+            }
+            return highOverflow;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return (lowOverflow != null && lowOverflow.hasNext()) || nextKey > 0 ||
+                    (highOverflow() != null && highOverflow.hasNext());
+        }
+
+        @Override
+        public Entry<Integer, Object> next() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            lastKey = 0;
+            lastOverflow = null;
+            if (lowOverflow != null && lowOverflow.hasNext()) {
+                lastOverflow = lowOverflow;
+                return lowOverflow.next();
+            } else if (nextKey > 0) {
+                lastKey = nextKey;
+                nextKey = nextKey < MAX_DIRECT_KEY ? nextDirectKey(nextKey + 1) : 0;
+                return new ComponentEntry(lastKey);
+            } else if (highOverflow() != null && highOverflow.hasNext()) {
+                lastOverflow = highOverflow;
+                return highOverflow.next();
+            } else {
+                throw new NoSuchElementException();
+            }
+        }
+
+        @Override
+        public void remove() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (lastOverflow != null) {
+                lastOverflow.remove();
+                if (lastOverflow == lowOverflow) {
+                    // nothing has been read from it yet
+                    highOverflow = null;
+                }
+                modCount++;
+            } else if (lastKey > 0) {
+                unSet(lastKey);
+            } else {
+                throw new IllegalStateException();
+            }
+            expectedModCount = modCount;
+            lastKey = 0;
+            lastOverflow = null;
+        }
+    }
+
+}
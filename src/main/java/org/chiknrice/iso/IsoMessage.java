@@ -36,16 +36,23 @@ import static java.lang.String.format;
 @SuppressWarnings("unchecked")
 public class IsoMessage {
 
-    private final Map<Integer, Object> header;
+    private final ComponentMap header;
 
     private final Integer mti;
 
-    private final Map<Integer, Object> fields;
+    private final ComponentMap fields;
 
     public IsoMessage(int mti) {
-        header = new TreeMap<>();
+        this(mti, new ComponentMap(), new ComponentMap());
+    }
+
+    /**
+     * Used by the codec to adopt the maps it decoded instead of copying them.
+     */
+    IsoMessage(int mti, ComponentMap header, ComponentMap fields) {
+        this.header = header;
         this.mti = mti;
-        fields = new TreeMap<>();
+        this.fields = fields;
     }
 
     /**
@@ -142,6 +149,14 @@ public class IsoMessage {
         return Collections.unmodifiableMap(fields);
     }
 
+    ComponentMap headerMap() {
+        return header;
+    }
+
+    ComponentMap fieldMap() {
+        return fields;
+    }
+
     public Map<String, Object> getAllFields() {
         Map<String, Object> fields = new LinkedHashMap<>();
         recordFieldMap(null, this.fields, fields);
@@ -169,9 +184,9 @@ public class IsoMessage {
      */
     public void setField(Integer index, Object value) {
         if (value == null) {
-            fields.remove(index);
+            fields.unSet(index);
         } else {
-            fields.put(index, value);
+            fields.set(index, value);
         }
     }
 
@@ -203,14 +218,14 @@ public class IsoMessage {
                     Integer key = Integer.valueOf(indexes[i]);
                     Object currentValue = components.get(key);
                     if (currentValue == null) {
-                        currentValue = new TreeMap<>();
+                        currentValue = new ComponentMap();
                         components.put(key, currentValue);
                     }
 
                     if (currentValue instanceof Map) {
                         components = (Map<Integer, Object>) currentValue;
                     } else {
-                        // TODO: warn overwriting non TreeMap value
+                        // TODO: warn overwriting non Map value
                         break;
                     }
                 }
@@ -263,7 +278,9 @@ public class IsoMessage {
                 appendFields((Map<?, ?>) value, sb, level + 1);
             } else {
                 if (value instanceof byte[]) {
-                    sb.append(" 0x").append(Hex.encode((byte[]) value)).append(System.lineSeparator());
+                    sb.append(" 0x");
+                    Hex.encode((byte[]) value, sb);
+                    sb.append(System.lineSeparator());
                 } else {
                     sb.append(' ').append(value).append(System.lineSeparator());
                 }
@@ -15,13 +15,22 @@
  */
 package org.chiknrice.iso;
 
+import org.chiknrice.iso.codec.Codec;
+import org.chiknrice.iso.codec.CompositeCodec;
+import org.chiknrice.iso.codec.FixedCompositeCodec;
+import org.chiknrice.iso.codec.NumericCodec;
+import org.chiknrice.iso.codec.TlvCompositeCodec;
+import org.chiknrice.iso.codec.VarCompositeCodec;
 import org.chiknrice.iso.config.CompositeDef;
 import org.chiknrice.iso.config.IsoMessageDef;
+import org.chiknrice.iso.util.BufferPool;
 
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Map;
-import java.util.Map.Entry;
+
+import static java.lang.String.format;
 
 /**
  * The main codec class which encodes and decodes an IsoMessage to and from a byte[]. The byte[] doesn't include the
@@ -31,21 +40,79 @@ import java.util.Map.Entry;
  */
 public class IsoMessageCodec {
 
+    /**
+     * The size of the scratch buffer used by codecs which can only tell the length of a value by encoding it.
+     */
+    public static final int MAX_MESSAGE_LENGTH = 0x7FFF;
+
     private final IsoMessageDef config;
+    private final BufferPool bufferPool;
+    private final boolean lazy;
 
     /**
      * The only constructor of the codec which accepts a configuration read from an xml which conforms to iso8583.xsd.
      * The codec is thread safe but is limited to encoding/decoding messages defined by the config. A separate instance
      * would be required if different config needs to be used.
      *
-     * @param config the IsoMessageDef instance which represents 1 xml config.
+     * @param config     the IsoMessageDef instance which represents 1 xml config.
+     * @param bufferPool the optional pool of scratch buffers used by {@link #encode(IsoMessage)}, without it the
+     *                   message is encoded straight to an array of its exact length.
+     * @param lazy       true if fields should only be decoded when accessed.
      */
-    private IsoMessageCodec(IsoMessageDef config) {
+    private IsoMessageCodec(IsoMessageDef config, BufferPool bufferPool, boolean lazy) {
         this.config = config;
+        this.bufferPool = bufferPool;
+        this.lazy = lazy;
     }
 
     public static IsoMessageCodec build(String configXml) {
-        return new IsoMessageCodec(IsoMessageDef.build(configXml));
+        return build(configXml, null);
+    }
+
+    /**
+     * Builds a codec which borrows its scratch buffers from the pool instead of allocating one for every message
+     * encoded via {@link #encode(IsoMessage)}.
+     *
+     * @param configXml  the config file in the classpath.
+     * @param bufferPool the pool of scratch buffers, the buffer size limits the size of the messages encoded.
+     * @return the codec.
+     */
+    public static IsoMessageCodec build(String configXml, BufferPool bufferPool) {
+        return new IsoMessageCodec(IsoMessageDef.build(configXml), bufferPool, false);
+    }
+
+    /**
+     * Builds a codec from a definition which was already built (e.g. loaded from a snapshot).
+     *
+     * @param config     the definition.
+     * @param bufferPool the optional pool of scratch buffers.
+     * @return the codec.
+     */
+    public static IsoMessageCodec build(IsoMessageDef config, BufferPool bufferPool) {
+        return new IsoMessageCodec(config, bufferPool, false);
+    }
+
+    /**
+     * Returns a codec with the same config which decodes messages lazily. Decoding only walks the bitmap and the length
+     * of each field to record where the field is and a field is only decoded when it's first accessed from the
+     * IsoMessage. This suits services which only inspect a few fields of a message. Since the decoded message refers to
+     * the bytes it was decoded from, the byte[] or ByteBuffer should not be modified (e.g. reused for the next read)
+     * while the message is in use. Failures decoding a field are only reported when the field is accessed.
+     * The encoded bytes of each field are retained as well so that when the message is encoded again (e.g. forwarded
+     * after changing a few fields), fields which were not set, removed or accessed as mutable values (e.g. Date or
+     * composite) are copied as is instead of being encoded.
+     *
+     * @return the lazy codec.
+     */
+    public IsoMessageCodec withLazyDecoding() {
+        return new IsoMessageCodec(config, bufferPool, true);
+    }
+
+    /**
+     * @return true if this codec decodes fields only when they are accessed.
+     */
+    public boolean isLazyDecoding() {
+        return lazy;
     }
 
     /**
@@ -55,27 +122,93 @@ public class IsoMessageCodec {
      * @return the decoded IsoMessage.
      */
     public IsoMessage decode(byte[] isoBytes) {
-        ByteBuffer buf = ByteBuffer.wrap(isoBytes);
-        Map<Integer, Object> header = null;
+        return decode(isoBytes, 0, isoBytes.length);
+    }
+
+    /**
+     * Decodes the message found in a slice of the isoBytes without copying the slice.
+     *
+     * @param isoBytes the bytes containing the message.
+     * @param offset   the index of the first byte of the message.
+     * @param length   the number of bytes available for the message.
+     * @return the decoded IsoMessage.
+     * @see #decode(ByteBuffer)
+     */
+    public IsoMessage decode(byte[] isoBytes, int offset, int length) {
+        return decode(ByteBuffer.wrap(isoBytes, offset, length));
+    }
+
+    /**
+     * Decodes a message from the current position of the buffer (heap or direct) up to its limit without copying the
+     * bytes. On success, the position of the buffer is advanced by the number of bytes consumed which allows multiple
+     * messages to be decoded back to back from the same buffer. On failure, the position of the buffer is left as is.
+     *
+     * @param buf the buffer containing the message.
+     * @return the decoded IsoMessage.
+     */
+    public IsoMessage decode(ByteBuffer buf) {
+        // a duplicate keeps the byte order and mark of the caller's buffer intact
+        ByteBuffer src = buf.duplicate();
+        ComponentMap header = new ComponentMap();
         if (config.getHeaderDef() != null) {
-            header = config.getHeaderDef().getCodec().decode(buf);
-        }
-        Integer mti = config.getMtiCodec().decode(buf).intValue();
-        IsoMessage m = new IsoMessage(mti);
-        if (header != null) {
-            m.setHeader(new ArrayList<>(header.values()));
+            header = toComponentMap(config.getHeaderDef(), config.getHeaderDef().getCodec().decode(src));
         }
+        int mti = decodeMti(src);
 
         CompositeDef fieldsDef = config.getFieldsDef().get(mti);
 
         if (fieldsDef != null) {
-            Map<Integer, Object> fields = fieldsDef.getCodec().decode(buf);
-            for (Entry<Integer, Object> field : fields.entrySet()) {
-                m.setField(field.getKey(), field.getValue());
+            ComponentMap fields;
+            if (lazy && fieldsDef.getCompositeCodec() instanceof VarCompositeCodec) {
+                fields = ((VarCompositeCodec) fieldsDef.getCompositeCodec()).decode(src, fieldsDef.getPlan(), true);
+            } else {
+                fields = toComponentMap(fieldsDef, fieldsDef.getCodec().decode(src));
             }
-            return m;
+            buf.position(src.position());
+            return new IsoMessage(mti, header, fields);
         } else {
-            throw new CodecException(String.format("Missing fields definition for mti %d", mti));
+            throw new CodecException(format("Missing fields definition for mti %d", mti));
+        }
+    }
+
+    /**
+     * The built in composite codecs already decode to a ComponentMap, only the values of custom ones are copied. Null
+     * values are not copied as they would still be present in a bitmap when the message is encoded.
+     */
+    private static ComponentMap toComponentMap(CompositeDef def, Map<Integer, Object> values) {
+        CompositeCodec codec = def.getCompositeCodec();
+        if (values instanceof ComponentMap && (codec instanceof VarCompositeCodec
+                || codec instanceof FixedCompositeCodec || codec instanceof TlvCompositeCodec)) {
+            return (ComponentMap) values;
+        } else {
+            ComponentMap map = new ComponentMap();
+            for (Map.Entry<Integer, Object> entry : values.entrySet()) {
+                if (entry.getValue() != null) {
+                    map.put(entry.getKey(), entry.getValue());
+                }
+            }
+            return map;
+        }
+    }
+
+    /**
+     * The built in mti codec is numeric which is called through its primitive methods to avoid boxing.
+     */
+    private int decodeMti(ByteBuffer src) {
+        Codec<Number> mtiCodec = config.getMtiCodec();
+        if (mtiCodec instanceof NumericCodec) {
+            return (int) ((NumericCodec) mtiCodec).decodeLong(src);
+        } else {
+            return mtiCodec.decode(src).intValue();
+        }
+    }
+
+    private void encodeMti(ByteBuffer dst, int mti) {
+        Codec<Number> mtiCodec = config.getMtiCodec();
+        if (mtiCodec instanceof NumericCodec) {
+            ((NumericCodec) mtiCodec).encodeLong(dst, mti);
+        } else {
+            mtiCodec.encode(dst, mti);
         }
     }
 
@@ -86,23 +219,74 @@ public class IsoMessageCodec {
      * @return the encoded bytes.
      */
     public byte[] encode(IsoMessage msg) {
-        // TODO: use buffer pool
-        ByteBuffer buf = ByteBuffer.allocate(0x7FFF);
+        if (bufferPool == null) {
+            byte[] encoded = new byte[encodedLength(msg)];
+            int written = encode(msg, ByteBuffer.wrap(encoded));
+            return written == encoded.length ? encoded : Arrays.copyOf(encoded, written);
+        }
+        ByteBuffer buf = bufferPool.acquire();
+        try {
+            byte[] encoded = new byte[encode(msg, buf)];
+            buf.flip();
+            buf.get(encoded);
+            return encoded;
+        } finally {
+            bufferPool.release(buf);
+        }
+    }
+
+    /**
+     * Computes the exact number of bytes the IsoMessage would be encoded to without encoding it (e.g. to allocate the
+     * target buffer, write the length prefix first or reject oversized messages). Fields of a lazily decoded message
+     * which would be copied as is are counted without being decoded. Values are not validated, any issue with them is
+     * only reported when the message is encoded.
+     *
+     * @param msg the message to be encoded.
+     * @return the number of bytes the encoded message would take.
+     */
+    public int encodedLength(IsoMessage msg) {
+        CompositeDef fieldsDef = config.getFieldsDef().get(msg.getMti());
+        if (fieldsDef == null) {
+            throw new CodecException(format("Missing fields definition for mti %d", msg.getMti()));
+        }
+
+        int length = 0;
         if (config.getHeaderDef() != null) {
-            config.getHeaderDef().getCodec().encode(buf, msg.getHeader());
+            length += config.getHeaderDef().getCodec().encodedLength(msg.headerMap());
         }
-        config.getMtiCodec().encode(buf, msg.getMti().longValue());
+        length += config.getMtiCodec().encodedLength(msg.getMti());
+        return length + fieldsDef.getCodec().encodedLength(msg.fieldMap());
+    }
 
+    /**
+     * Encodes the IsoMessage to the buffer starting from its current position. The position of the buffer is advanced
+     * by the number of bytes written. If encoding fails, the position of the buffer is left as is.
+     *
+     * @param msg the message to be encoded.
+     * @param buf the target buffer (heap or direct).
+     * @return the number of bytes written.
+     */
+    public int encode(IsoMessage msg, ByteBuffer buf) {
         CompositeDef fieldsDef = config.getFieldsDef().get(msg.getMti());
+        if (fieldsDef == null) {
+            throw new CodecException(format("Missing fields definition for mti %d", msg.getMti()));
+        }
 
-        if (fieldsDef != null) {
-            fieldsDef.getCodec().encode(buf, msg.getFields());
-            byte[] encoded = new byte[buf.position()];
-            System.arraycopy(buf.array(), 0, encoded, 0, encoded.length);
-            return encoded;
-        } else {
-            throw new CodecException(String.format("Missing fields definition for mti %d", msg.getMti()));
+        // a duplicate keeps the byte order and mark of the caller's buffer intact
+        ByteBuffer dst = buf.duplicate();
+        int start = dst.position();
+        try {
+            if (config.getHeaderDef() != null) {
+                config.getHeaderDef().getCodec().encode(dst, msg.headerMap());
+            }
+            encodeMti(dst, msg.getMti());
+            fieldsDef.getCodec().encode(dst, msg.fieldMap());
+        } catch (BufferOverflowException e) {
+            throw new CodecException(
+                    format("Message %d exceeds the %d bytes available", msg.getMti(), dst.limit() - start), e);
         }
+        buf.position(dst.position());
+        return dst.position() - start;
     }
 
 }
@@ -0,0 +1,234 @@
+/*
+ * Copyright (c) 2014 Ian Bondoc
+ *
+ * This file is part of Jen8583
+ *
+ * Jen8583 is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the License, or(at your option) any later version.
+ *
+ * Jen8583 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.chiknrice.iso.batch;
+
+import org.chiknrice.iso.CodecException;
+import org.chiknrice.iso.IsoMessage;
+import org.chiknrice.iso.IsoMessageCodec;
+import org.chiknrice.iso.net.FrameCodec;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static java.lang.String.format;
+
+/**
+ * Reads a file of length framed messages (e.g. a clearing or settlement file). The file is memory mapped and the
+ * boundaries of all the records are indexed in a single pass when the reader is created, records are then decoded
+ * straight from the mapped file (no bytes are copied) in any order and in parallel. Files larger than 2GB are mapped in
+ * segments which always end at a record boundary. The reader is thread safe.
+ *
+ * @author <a href="mailto:chiknrice@gmail.com">Ian Bondoc</a>
+ */
+public class BatchReader implements Closeable {
+
+    static final int MAX_SEGMENT_SIZE = Integer.MAX_VALUE;
+
+    /**
+     * The number of records decoded by a single fork/join task.
+     */
+    static final int RECORDS_PER_TASK = 1024;
+
+    private final IsoMessageCodec codec;
+    private final FileChannel channel;
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    private int[] recordSegments = new int[1024];
+    private int[] recordPositions = new int[1024];
+    private int[] recordLengths = new int[1024];
+    private int size;
+
+    /**
+     * Maps the file and indexes its records.
+     *
+     * @param file       the file to read.
+     * @param frameCodec the framing of the records.
+     * @param codec      the codec of the messages, a lazy codec decodes fields from the mapped file as they are
+     *                   accessed.
+     * @throws IOException    if the file can't be read.
+     * @throws CodecException if a record has an invalid length or the file ends with an incomplete record.
+     */
+    public BatchReader(Path file, FrameCodec frameCodec, IsoMessageCodec codec) throws IOException {
+        this(file, frameCodec, codec, MAX_SEGMENT_SIZE);
+    }
+
+    BatchReader(Path file, FrameCodec frameCodec, IsoMessageCodec codec, int maxSegmentSize) throws IOException {
+        this.codec = codec;
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            index(frameCodec, maxSegmentSize);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private void index(FrameCodec frameCodec, int maxSegmentSize) throws IOException {
+        long fileSize = channel.size();
+        long segmentStart = 0;
+        while (segmentStart < fileSize) {
+            long segmentEnd = Math.min(fileSize, segmentStart + maxSegmentSize);
+            MappedByteBuffer segment = channel.map(MapMode.READ_ONLY, segmentStart, segmentEnd - segmentStart);
+            int segmentIndex = segments.size();
+            segments.add(segment);
+            int pos = 0;
+            int limit = segment.limit();
+            while (pos < limit) {
+                segment.position(pos);
+                int frameLength = frameCodec.frameLength(segment);
+                if (frameLength < 0 || frameLength > limit - pos) {
+                    if (segmentEnd == fileSize) {
+                        throw new CodecException(format("Incomplete record at offset %d", segmentStart + pos));
+                    } else if (pos == 0) {
+                        throw new CodecException(format("Record at offset %d exceeds %d bytes", segmentStart,
+                                maxSegmentSize));
+                    }
+                    break;
+                }
+                int prefixLength = frameCodec.prefixLength();
+                add(segmentIndex, pos + prefixLength, frameLength - prefixLength);
+                pos += frameLength;
+            }
+            segment.position(0);
+            segmentStart += pos;
+        }
+    }
+
+    private void add(int segment, int position, int length) {
+        if (size == recordLengths.length) {
+            int capacity = size * 2;
+            recordSegments = Arrays.copyOf(recordSegments, capacity);
+            recordPositions = Arrays.copyOf(recordPositions, capacity);
+            recordLengths = Arrays.copyOf(recordLengths, capacity);
+        }
+        recordSegments[size] = segment;
+        recordPositions[size] = position;
+        recordLengths[size] = length;
+        size++;
+    }
+
+    /**
+     * @return the number of records in the file.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param record the index of the record starting with 0.
+     * @return the bytes of the message (without the length prefix) as a read only view of the mapped file.
+     */
+    public ByteBuffer getRecord(int record) {
+        if (record < 0 || record >= size) {
+            throw new IndexOutOfBoundsException(format("Record %d of %d", record, size));
+        }
+        ByteBuffer buf = segments.get(recordSegments[record]).duplicate();
+        int position = recordPositions[record];
+        buf.limit(position + recordLengths[record]);
+        buf.position(position);
+        return buf.slice();
+    }
+
+    /**
+     * @param record the index of the record starting with 0.
+     * @return the decoded message.
+     * @throws CodecException if the record can't be decoded.
+     */
+    public IsoMessage decode(int record) {
+        try {
+            return codec.decode(getRecord(record));
+        } catch (RuntimeException e) {
+            throw new CodecException(format("Failed to decode record %d", record), e);
+        }
+    }
+
+    /**
+     * Decodes all the records in parallel in the common fork/join pool.
+     *
+     * @return the messages in the order of the records.
+     */
+    public List<IsoMessage> decodeAll() {
+        return decodeAll(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Decodes all the records in parallel.
+     *
+     * @param pool the pool which runs the decoding.
+     * @return the messages in the order of the records.
+     */
+    public List<IsoMessage> decodeAll(ForkJoinPool pool) {
+        IsoMessage[] messages = new IsoMessage[size];
+        pool.invoke(new DecodeTask(messages, 0, size));
+        return Arrays.asList(messages);
+    }
+
+    /**
+     * @return a parallel stream of the decoded messages which are not in the order of the records.
+     */
+    public Stream<IsoMessage> stream() {
+        return IntStream.range(0, size).parallel().unordered().mapToObj(this::decode);
+    }
+
+    private class DecodeTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final IsoMessage[] messages;
+        private final int from;
+        private final int to;
+
+        private DecodeTask(IsoMessage[] messages, int from, int to) {
+            this.messages = messages;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= RECORDS_PER_TASK) {
+                for (int i = from; i < to; i++) {
+                    messages[i] = decode(i);
+                }
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new DecodeTask(messages, from, mid), new DecodeTask(messages, mid, to));
+            }
+        }
+    }
+
+    /**
+     * Closes the file, messages already decoded (even lazily) remain valid.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright (c) 2014 Ian Bondoc
+ *
+ * This file is part of Jen8583
+ *
+ * Jen8583 is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the License, or(at your option) any later version.
+ *
+ * Jen8583 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.chiknrice.iso.batch;
+
+import org.chiknrice.iso.CodecException;
+import org.chiknrice.iso.ConfigException;
+import org.chiknrice.iso.IsoMessage;
+import org.chiknrice.iso.IsoMessageCodec;
+import org.chiknrice.iso.net.FrameCodec;
+import org.chiknrice.iso.util.BufferPool;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.Stream;
+
+import static java.lang.String.format;
+
+/**
+ * Writes length framed messages to a file (e.g. an outgoing clearing file). Messages are written in batches, each batch
+ * is encoded in parallel (fork/join) into buffers borrowed from a {@link BufferPool}, with the frames of consecutive
+ * messages packed in each buffer, and the buffers are then written in the order of the messages with gathering writes.
+ * The file can be synced at the end of each batch. A BatchWriter is not thread safe.
+ *
+ * @author <a href="mailto:chiknrice@gmail.com">Ian Bondoc</a>
+ */
+public class BatchWriter implements Closeable {
+
+    /**
+     * The number of messages encoded by a single fork/join task.
+     */
+    static final int MESSAGES_PER_TASK = 1024;
+
+    private final FrameCodec frameCodec;
+    private final IsoMessageCodec codec;
+    private final BufferPool bufferPool;
+    private final int batchSize;
+    private final boolean sync;
+    private final ForkJoinPool pool;
+    private final FileChannel channel;
+    private long count;
+
+    /**
+     * Creates (or truncates) the file.
+     *
+     * @param file       the file to write.
+     * @param frameCodec the framing of the records.
+     * @param codec      the codec of the messages.
+     * @param bufferPool the pool of the buffers the messages are encoded to, a framed message can't be larger than the
+     *                   buffer size.
+     * @param batchSize  the number of messages encoded and written together when writing a stream.
+     * @param sync       true if the file should be synced to the storage device after each batch.
+     * @throws IOException if the file can't be opened.
+     */
+    public BatchWriter(Path file, FrameCodec frameCodec, IsoMessageCodec codec, BufferPool bufferPool, int batchSize,
+                       boolean sync) throws IOException {
+        this(file, frameCodec, codec, bufferPool, batchSize, sync, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param pool the pool which runs the encoding.
+     * @see #BatchWriter(Path, FrameCodec, IsoMessageCodec, BufferPool, int, boolean)
+     */
+    public BatchWriter(Path file, FrameCodec frameCodec, IsoMessageCodec codec, BufferPool bufferPool, int batchSize,
+                       boolean sync, ForkJoinPool pool) throws IOException {
+        if (batchSize < 1) {
+            throw new ConfigException(format("Invalid batch size %d", batchSize));
+        }
+        this.frameCodec = frameCodec;
+        this.codec = codec;
+        this.bufferPool = bufferPool;
+        this.batchSize = batchSize;
+        this.sync = sync;
+        this.pool = pool;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /**
+     * Writes all the messages of the stream in batches.
+     *
+     * @param messages the messages to write.
+     * @throws IOException    if writing to the file fails.
+     * @throws CodecException if a message can't be encoded, the messages of the batch are not written.
+     */
+    public void write(Stream<IsoMessage> messages) throws IOException {
+        Iterator<IsoMessage> iterator = messages.iterator();
+        List<IsoMessage> batch = new ArrayList<>(batchSize);
+        while (iterator.hasNext()) {
+            batch.add(iterator.next());
+            if (batch.size() == batchSize) {
+                writeBatch(batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            writeBatch(batch);
+        }
+    }
+
+    /**
+     * Writes the messages as a single batch.
+     *
+     * @param batch the messages to write.
+     * @throws IOException    if writing to the file fails.
+     * @throws CodecException if a message can't be encoded, none of the messages are written.
+     */
+    public void writeBatch(List<IsoMessage> batch) throws IOException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<ByteBuffer> buffers = pool.invoke(new EncodeTask(batch, 0, batch.size()));
+        try {
+            ByteBuffer[] gather = buffers.toArray(new ByteBuffer[buffers.size()]);
+            int offset = 0;
+            while (offset < gather.length) {
+                channel.write(gather, offset, gather.length - offset);
+                while (offset < gather.length && !gather[offset].hasRemaining()) {
+                    offset++;
+                }
+            }
+            if (sync) {
+                channel.force(false);
+            }
+            count += batch.size();
+        } finally {
+            release(buffers);
+        }
+    }
+
+    private void release(List<ByteBuffer> buffers) {
+        for (ByteBuffer buf : buffers) {
+            bufferPool.release(buf);
+        }
+    }
+
+    private class EncodeTask extends RecursiveTask<List<ByteBuffer>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<IsoMessage> batch;
+        private final int from;
+        private final int to;
+
+        private EncodeTask(List<IsoMessage> batch, int from, int to) {
+            this.batch = batch;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected List<ByteBuffer> compute() {
+            if (to - from <= MESSAGES_PER_TASK) {
+                return encode();
+            }
+            int mid = (from + to) >>> 1;
+            EncodeTask first = new EncodeTask(batch, from, mid);
+            EncodeTask second = new EncodeTask(batch, mid, to);
+            invokeAll(first, second);
+            List<ByteBuffer> buffers = first.join();
+            buffers.addAll(second.join());
+            return buffers;
+        }
+
+        private List<ByteBuffer> encode() {
+            List<ByteBuffer> buffers = new ArrayList<>();
+            int prefixLength = frameCodec.prefixLength();
+            ByteBuffer buf = null;
+            try {
+                for (int i = from; i < to; i++) {
+                    IsoMessage message = batch.get(i);
+                    int frameLength = prefixLength + codec.encodedLength(message);
+                    if (frameLength > bufferPool.getBufferSize()) {
+                        throw new CodecException(format("Message %d of %d bytes exceeds buffer size %d", i,
+                                frameLength, bufferPool.getBufferSize()));
+                    }
+                    if (buf == null || buf.remaining() < frameLength) {
+                        if (buf != null) {
+                            buf.flip();
+                        }
+                        buf = bufferPool.acquire();
+                        buffers.add(buf);
+                    }
+                    int frameStart = buf.position();
+                    buf.position(frameStart + prefixLength);
+                    codec.encode(message, buf);
+                    ByteBuffer encoded = buf.duplicate();
+                    encoded.flip();
+                    encoded.position(frameStart + prefixLength);
+                    ByteBuffer prefix = buf.duplicate();
+                    prefix.position(frameStart);
+                    frameCodec.encodeLength(prefix, encoded);
+                }
+                if (buf != null) {
+                    buf.flip();
+                }
+                return buffers;
+            } catch (RuntimeException e) {
+                release(buffers);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * @return the number of messages written.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Syncs (if the writer syncs batches) and closes the file.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (sync && channel.isOpen()) {
+                channel.force(true);
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+}
@@ -20,55 +20,121 @@ import org.chiknrice.iso.ConfigException;
 import org.chiknrice.iso.config.ComponentDef.Encoding;
 import org.chiknrice.iso.util.EqualsBuilder;
 import org.chiknrice.iso.util.Hash;
+import org.chiknrice.iso.util.SingleByteCharset;
 
+import java.io.Serializable;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 
 import static java.lang.String.format;
 
 /**
- * A codec implementation for alphanumeric fields. The only supported character set is ISO 8859-1 (single byte character
- * set) to encode/decode the string to and from byte[]. The codec can be configured to be fixed length where option for
- * left justified when padding is available. Trim option is also available after decoding.
+ * A codec implementation for alphanumeric fields. The string is translated to and from bytes of a single byte character
+ * set (ISO 8859-1 by default, EBCDIC code pages like cp037 or cp500 can be configured) directly on the buffer. The
+ * codec can be configured to be fixed length where option for left justified when padding is available. Trim option is
+ * also available after decoding.
  *
  * @author <a href="mailto:chiknrice@gmail.com">Ian Bondoc</a>
  */
-public class AlphaCodec implements Codec<String> {
+public class AlphaCodec implements Codec<String>, Skippable, Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     private final Boolean trim;
     private final Boolean leftJustified;
     private final Integer fixedLength;
+    private final SingleByteCharset charset;
 
     public AlphaCodec(Boolean trim) {
         this(trim, null, null);
     }
 
     public AlphaCodec(Boolean trim, Boolean leftJustified, Integer fixedLength) {
+        this(trim, leftJustified, fixedLength, SingleByteCharset.ISO_8859_1);
+    }
+
+    public AlphaCodec(Boolean trim, Boolean leftJustified, Integer fixedLength, SingleByteCharset charset) {
         this.trim = trim;
         if (fixedLength != null && leftJustified == null) {
             throw new ConfigException("Fixed length config requires justified flag");
         }
         this.leftJustified = leftJustified;
         this.fixedLength = fixedLength;
+        this.charset = charset;
     }
 
     public String decode(ByteBuffer buf) {
-        byte[] bytes = new byte[fixedLength != null ? fixedLength : buf.limit() - buf.position()];
-        buf.get(bytes);
-        String value = new String(bytes, StandardCharsets.ISO_8859_1);
-        return trim ? value.trim() : value;
+        int start = buf.position();
+        int length = fixedLength != null ? fixedLength : buf.limit() - start;
+        if (buf.remaining() < length) {
+            throw new BufferUnderflowException();
+        }
+        int from = start;
+        int to = start + length;
+        if (trim) {
+            // same as String.trim()
+            while (from < to && charset.toChar(buf.get(from)) <= ' ') {
+                from++;
+            }
+            while (to > from && charset.toChar(buf.get(to - 1)) <= ' ') {
+                to--;
+            }
+        }
+        String value;
+        if (charset == SingleByteCharset.ISO_8859_1 && buf.hasArray()) {
+            value = new String(buf.array(), buf.arrayOffset() + from, to - from, StandardCharsets.ISO_8859_1);
+        } else {
+            char[] chars = new char[to - from];
+            for (int i = 0; i < chars.length; i++) {
+                chars[i] = charset.toChar(buf.get(from + i));
+            }
+            value = new String(chars);
+        }
+        buf.position(start + length);
+        return value;
+    }
+
+    @Override
+    public void skip(ByteBuffer buf) {
+        buf.position(fixedLength != null ? buf.position() + fixedLength : buf.limit());
     }
 
     public void encode(ByteBuffer buf, String value) {
+        int length = value.length();
+        int padding = 0;
         if (fixedLength != null) {
-            if (value.length() > fixedLength) {
+            if (length > fixedLength) {
                 throw new CodecException(
                         format("Length of value (%s) exceeds allowed length (%d)", value, fixedLength));
-            } else {
-                value = format("%" + (leftJustified ? "-" : "") + fixedLength + "s", value);
             }
+            padding = fixedLength - length;
+        }
+        if (buf.remaining() < length + padding) {
+            throw new BufferOverflowException();
+        }
+        byte space = charset.toByte(' ');
+        if (padding > 0 && !leftJustified) {
+            pad(buf, space, padding);
+        }
+        for (int i = 0; i < length; i++) {
+            buf.put(charset.toByte(value.charAt(i)));
+        }
+        if (padding > 0 && leftJustified) {
+            pad(buf, space, padding);
+        }
+    }
+
+    @Override
+    public int encodedLength(String value) {
+        return fixedLength != null ? fixedLength : value.length();
+    }
+
+    private static void pad(ByteBuffer buf, byte space, int padding) {
+        for (int i = 0; i < padding; i++) {
+            buf.put(space);
         }
-        buf.put(value.getBytes(StandardCharsets.ISO_8859_1));
     }
 
     @Override
@@ -78,7 +144,7 @@ public class AlphaCodec implements Codec<String> {
 
     @Override
     public int hashCode() {
-        return Hash.build(this, trim, leftJustified, fixedLength);
+        return Hash.build(this, trim, leftJustified, fixedLength, charset);
     }
 
     @Override
@@ -92,7 +158,7 @@ public class AlphaCodec implements Codec<String> {
         } else {
             AlphaCodec other = (AlphaCodec) o;
             return EqualsBuilder.newInstance(other.trim, trim).append(other.leftJustified, leftJustified)
-                    .append(other.fixedLength, fixedLength).isEqual();
+                    .append(other.fixedLength, fixedLength).append(other.charset, charset).isEqual();
         }
     }
 
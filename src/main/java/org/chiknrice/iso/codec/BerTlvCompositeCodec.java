@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2014 Ian Bondoc
+ *
+ * This file is part of Jen8583
+ *
+ * Jen8583 is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the License, or(at your option) any later version.
+ *
+ * Jen8583 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.chiknrice.iso.codec;
+
+import org.chiknrice.iso.CodecException;
+import org.chiknrice.iso.util.Binary;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+import static java.lang.String.format;
+import static org.chiknrice.iso.config.ComponentDef.Encoding;
+
+/**
+ * A TLV composite codec which follows the BER-TLV rules used by EMV (e.g. ISO8583 field 55). Tags are 1 to 4 bytes
+ * where the subsequent tag bytes are flagged in the first byte (low 5 bits all set) and every subsequent byte except
+ * the last (bit 8 set), e.g. 0x9F26 or 0x5F2A. The tag value configured is the int value of the tag bytes. Lengths are
+ * always the number of bytes of the value and are either in short form (1 byte up to 127) or long form (0x81 to 0x84
+ * followed by 1 to 4 length bytes). Constructed tags are configured as a nested composite-tlv so their value is decoded
+ * recursively. As allowed by EMV, 0x00 padding bytes before, between or after the tags are skipped.
+ *
+ * @author <a href="mailto:chiknrice@gmail.com">Ian Bondoc</a>
+ */
+public class BerTlvCompositeCodec extends TlvCompositeCodec {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int MAX_TAG_BYTES = 4;
+    private static final int MAX_LENGTH_BYTES = 4;
+
+    public BerTlvCompositeCodec(boolean failFast) {
+        super(Encoding.BINARY, Encoding.BINARY, failFast);
+    }
+
+    @Override
+    protected int decodeTag(ByteBuffer buf) {
+        int b;
+        do {
+            if (!buf.hasRemaining()) {
+                return NO_TAG;
+            }
+            b = 0xFF & buf.get();
+        } while (b == 0);
+
+        int tag = b;
+        if ((b & 0x1F) == 0x1F) {
+            int tagBytes = 1;
+            do {
+                if (++tagBytes > MAX_TAG_BYTES) {
+                    throw new CodecException(format("Tag %X... exceeds %d bytes", tag, MAX_TAG_BYTES));
+                }
+                if (!buf.hasRemaining()) {
+                    throw new CodecException(format("Incomplete tag %X", tag));
+                }
+                b = 0xFF & buf.get();
+                tag = tag << 8 | b;
+            } while ((b & 0x80) != 0);
+        }
+        return tag;
+    }
+
+    @Override
+    protected int decodeLength(ByteBuffer buf, Codec codec) {
+        int b = 0xFF & buf.get();
+        if (b < 0x80) {
+            return b;
+        }
+        int lengthBytes = b & 0x7F;
+        if (lengthBytes == 0 || lengthBytes > MAX_LENGTH_BYTES) {
+            throw new CodecException(format("Invalid length prefix %02X", b));
+        }
+        long length = Binary.getLong(buf, lengthBytes);
+        if (length > Integer.MAX_VALUE) {
+            throw new CodecException(format("Length %d exceeds int range", length));
+        }
+        return (int) length;
+    }
+
+    @Override
+    protected void encodeTag(ByteBuffer buf, int tag) {
+        Binary.putLong(buf, 0xFFFFFFFFL & tag, Binary.width(0xFFFFFFFFL & tag));
+    }
+
+    @Override
+    protected int tagSize(int tag) {
+        return Binary.width(0xFFFFFFFFL & tag);
+    }
+
+    @Override
+    protected int lengthSize() {
+        return 1;
+    }
+
+    @Override
+    protected int lengthSize(int length) {
+        return length < 0x80 ? 1 : 1 + Binary.width(length);
+    }
+
+    @Override
+    protected void encodeLength(ByteBuffer buf, int lengthPos, int valuePos, Codec codec) {
+        int endPos = buf.position();
+        int length = endPos - valuePos;
+        if (length < 0x80) {
+            buf.put(lengthPos, (byte) length);
+        } else {
+            // long form, the value is moved to make room for the length bytes which is rare enough for EMV data
+            int lengthBytes = Binary.width(length);
+            if (endPos + lengthBytes > buf.limit()) {
+                throw new BufferOverflowException();
+            }
+            for (int i = endPos - 1; i >= valuePos; i--) {
+                buf.put(i + lengthBytes, buf.get(i));
+            }
+            buf.put(lengthPos, (byte) (0x80 | lengthBytes));
+            Binary.putLong(buf, lengthPos + 1, length, lengthBytes);
+            buf.position(endPos + lengthBytes);
+        }
+    }
+
+}
@@ -20,6 +20,7 @@ import org.chiknrice.iso.config.ComponentDef.Encoding;
 import org.chiknrice.iso.util.EqualsBuilder;
 import org.chiknrice.iso.util.Hash;
 
+import java.io.Serializable;
 import java.nio.ByteBuffer;
 
 /**
@@ -27,7 +28,9 @@ import java.nio.ByteBuffer;
  *
  * @author <a href="mailto:chiknrice@gmail.com">Ian Bondoc</a>
  */
-public class BinaryCodec implements Codec<byte[]> {
+public class BinaryCodec implements Codec<byte[]>, Skippable, Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     private final Integer fixedLength;
 
@@ -45,6 +48,11 @@ public class BinaryCodec implements Codec<byte[]> {
         return bytes;
     }
 
+    @Override
+    public void skip(ByteBuffer buf) {
+        buf.position(fixedLength != null ? buf.position() + fixedLength : buf.limit());
+    }
+
     public void encode(ByteBuffer buf, byte[] bytes) {
         if (fixedLength != null) {
             if (fixedLength > bytes.length) {
@@ -56,6 +64,11 @@ public class BinaryCodec implements Codec<byte[]> {
         buf.put(bytes);
     }
 
+    @Override
+    public int encodedLength(byte[] bytes) {
+        return fixedLength != null ? fixedLength : bytes.length;
+    }
+
     @Override
     public Encoding getEncoding() {
         return Encoding.BINARY;
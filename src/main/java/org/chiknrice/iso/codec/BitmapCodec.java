@@ -17,20 +17,27 @@ package org.chiknrice.iso.codec;
 
 import org.chiknrice.iso.CodecException;
 import org.chiknrice.iso.codec.BitmapCodec.Bitmap.Type;
+import org.chiknrice.iso.util.Binary;
 import org.chiknrice.iso.util.EqualsBuilder;
 import org.chiknrice.iso.util.Hash;
 import org.chiknrice.iso.util.Hex;
 
+import java.io.Serializable;
 import java.nio.ByteBuffer;
-import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.Set;
-import java.util.TreeSet;
+
+import static java.lang.String.format;
 
 /**
+ * Encodes and decodes bitmaps directly against the ByteBuffer. Bits are held in 64 bit words with bit 1 being the most
+ * significant bit of word 0 so no intermediate arrays or strings are created other than the decoded Bitmap itself.
+ *
  * @author <a href="mailto:chiknrice@gmail.com">Ian Bondoc</a>
  */
-public class BitmapCodec {
+public class BitmapCodec implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     private final Type type;
 
@@ -43,42 +50,31 @@ public class BitmapCodec {
      * @return the decoded bitmap
      */
     public Bitmap decode(ByteBuffer buf) {
-        byte[] bytes;
+        long[] words;
         if (Type.BINARY.equals(type)) {
-            buf.mark();
-            if ((buf.get() & 0x80) == 0) {
-                bytes = new byte[8];
-            } else {
-                bytes = new byte[16];
+            words = new long[(buf.get(buf.position()) & 0x80) == 0 ? 1 : 2];
+            for (int i = 0; i < words.length; i++) {
+                words[i] = Binary.getLong(buf, 8);
             }
-            buf.reset();
-            buf.get(bytes);
         } else if (Type.HEX.equals(type)) {
-            buf.mark();
-            if ((Hex.value((char) buf.get()) & 0x8) == 0) {
-                bytes = new byte[16];
-            } else {
-                bytes = new byte[32];
+            words = new long[(hexValue(buf.get(buf.position())) & 0x8) == 0 ? 1 : 2];
+            for (int i = 0; i < words.length; i++) {
+                words[i] = Hex.getHex(buf, 16);
             }
-            buf.reset();
-            buf.get(bytes);
-            bytes = Hex.decode(new String(bytes, StandardCharsets.ISO_8859_1));
         } else {
-            buf.mark();
-            int total = 0;
-            bytes = new byte[2];
-            boolean hasNext;
-            do {
-                buf.get(bytes);
-                total += bytes.length;
-                hasNext = (bytes[0] & 0x80) > 0;
-                bytes = new byte[1];
-            } while (hasNext);
-            buf.reset();
-            bytes = new byte[total];
-            buf.get(bytes);
-        }
-        return new Bitmap(bytes, type);
+            int start = buf.position();
+            int total = 2;
+            if ((buf.get(start) & 0x80) != 0) {
+                do {
+                    total++;
+                } while ((buf.get(start + total - 1) & 0x80) != 0);
+            }
+            words = new long[(total + 7) >>> 3];
+            for (int i = 0; i < total; i++) {
+                words[i >>> 3] |= (buf.get() & 0xFFL) << (56 - ((i & 7) << 3));
+            }
+        }
+        return new Bitmap(words, type);
     }
 
     /**
@@ -86,47 +82,115 @@ public class BitmapCodec {
      * @param bitsParam
      */
     public void encode(ByteBuffer buf, Set<Integer> bitsParam) {
-        TreeSet<Integer> bits;
-        if (bitsParam instanceof TreeSet) {
-            bits = (TreeSet<Integer>) bitsParam;
-        } else {
-            bits = new TreeSet<>(bitsParam);
+        encode(buf, toWords(bitsParam));
+    }
+
+    private static long[] toWords(Set<Integer> bitsParam) {
+        int maxBit = 0;
+        for (Integer bit : bitsParam) {
+            if (bit < 1) {
+                throw new CodecException(format("Invalid bit %d", bit));
+            }
+            maxBit = Math.max(maxBit, bit);
         }
-        if (Type.COMPRESSED.equals(type)) {
-            writeBytes(buf, bits, new byte[2], 1, false);
-        } else {
-            writeBytes(buf, bits, new byte[8], 8, Type.HEX.equals(type));
+        long[] bits = new long[maxBit > 0 ? ((maxBit - 1) >>> 6) + 1 : 1];
+        for (Integer bit : bitsParam) {
+            bits[(bit - 1) >>> 6] |= Long.MIN_VALUE >>> ((bit - 1) & 63);
         }
+        return bits;
     }
 
-    private static void writeBytes(ByteBuffer buf, TreeSet<Integer> bits, byte[] primaryBitmap, int extendedSize, boolean hex) {
-        int offset = 0;
-        byte[] bytes = primaryBitmap;
-        for (Integer bit : bits) {
-            int byteIndex = byteIndex(bit);
-            while (byteIndex >= (bytes.length + offset)) {
-                if ((bytes[0] & 0x80) > 0) {
+    /**
+     * Encodes the bits given as 64 bit words with bit 1 being the most significant bit of word 0 (e.g. a presence mask
+     * of a message). The extension bits are set by the codec and should not be set in the words.
+     *
+     * @param buf
+     * @param bits
+     */
+    public void encode(ByteBuffer buf, long[] bits) {
+        int lastWord = lastWord(bits);
+        if (Type.COMPRESSED.equals(type)) {
+            int total = compressedBytes(bits, lastWord);
+            for (int i = 0; i < total; i++) {
+                int b = lastWord >= 0 ? (int) (bits[i >>> 3] >>> (56 - ((i & 7) << 3))) & 0xFF : 0;
+                if (i != 1) {
+                    if ((b & 0x80) != 0) {
+                        throw new CodecException("Extension bit should not be set");
+                    }
+                    if ((i == 0 ? 1 : i) < total - 1) {
+                        b |= 0x80;
+                    }
+                }
+                buf.put((byte) b);
+            }
+        } else {
+            boolean hex = Type.HEX.equals(type);
+            for (int i = 0; i <= Math.max(lastWord, 0); i++) {
+                long word = i <= lastWord ? bits[i] : 0L;
+                if (word < 0) {
                     throw new CodecException("Extension bit should not be set");
                 }
-                bytes[0] |= 0x80;
-                buf.put(hex ? Hex.encode(bytes).getBytes(StandardCharsets.ISO_8859_1) : bytes);
-                offset += bytes.length;
-                bytes = new byte[extendedSize];
+                if (i < lastWord) {
+                    word |= Long.MIN_VALUE;
+                }
+                if (hex) {
+                    Hex.putHex(buf, word, 16);
+                } else {
+                    Binary.putLong(buf, word, 8);
+                }
             }
-            bytes[byteIndex - offset] |= mask(bit);
         }
-        if ((bytes[0] & 0x80) > 0) {
-            throw new CodecException("Extension bit should not be set");
+    }
+
+    /**
+     * @param bitsParam
+     * @return the number of bytes the bitmap would be encoded to.
+     */
+    public int encodedLength(Set<Integer> bitsParam) {
+        return encodedLength(toWords(bitsParam));
+    }
+
+    /**
+     * @param bits the bits as 64 bit words with bit 1 being the most significant bit of word 0.
+     * @return the number of bytes the bitmap would be encoded to.
+     */
+    public int encodedLength(long[] bits) {
+        int lastWord = lastWord(bits);
+        if (Type.COMPRESSED.equals(type)) {
+            return compressedBytes(bits, lastWord);
+        } else {
+            return (Math.max(lastWord, 0) + 1) * (Type.HEX.equals(type) ? 16 : 8);
+        }
+    }
+
+    private static int lastWord(long[] bits) {
+        int lastWord = bits.length - 1;
+        while (lastWord > 0 && bits[lastWord] == 0) {
+            lastWord--;
+        }
+        return lastWord;
+    }
+
+    private static int compressedBytes(long[] bits, int lastWord) {
+        int lastByte = lastWord >= 0 && bits[lastWord] != 0 ?
+                (lastWord << 3) + ((63 - Long.numberOfTrailingZeros(bits[lastWord])) >>> 3) : 0;
+        return Math.max(2, lastByte + 1);
+    }
+
+    private static int hexValue(byte c) {
+        int value = Hex.value((char) (c & 0xFF));
+        if (value < 0) {
+            throw new CodecException(format("Invalid hex char %s", (char) (c & 0xFF)));
         }
-        buf.put(hex ? Hex.encode(bytes).getBytes(StandardCharsets.ISO_8859_1) : bytes);
+        return value;
     }
 
-    private static int mask(int bit) {
-        return 128 >> ((bit - 1) % 8);
+    private static int wordIndex(int bit) {
+        return (bit - 1) >>> 6;
     }
 
-    private static int byteIndex(int bit) {
-        return (bit - 1) / 8;
+    private static long mask(int bit) {
+        return Long.MIN_VALUE >>> ((bit - 1) & 63);
     }
 
     @Override
@@ -151,64 +215,99 @@ public class BitmapCodec {
     public static class Bitmap {
 
         public enum Type {
-            BINARY, HEX, COMPRESSED
+            BINARY, HEX, COMPRESSED;
+
+            /**
+             * Returns the bits which only flag the presence of an extension and are not data elements. For BINARY and
+             * HEX it's the first bit of the primary bitmap while for COMPRESSED it's the first bit of the primary
+             * bitmap and the first bit of every extension byte (17, 25, 33 and so on).
+             *
+             * @param word the index of the 64 bit word starting with 0.
+             * @return the control bits of the word with bit 1 being the most significant bit of word 0.
+             */
+            public long getControlBits(int word) {
+                switch (this) {
+                    case COMPRESSED:
+                        return word == 0 ? 0x8000808080808080L : 0x8080808080808080L;
+                    default:
+                        return word == 0 ? Long.MIN_VALUE : 0L;
+                }
+            }
         }
 
-        private final byte[] bytes;
+        private final long[] words;
         private final Type type;
 
-        private Bitmap(byte[] bytes, Type type) {
-            this.bytes = bytes;
+        /**
+         * @param words the bits as 64 bit words with bit 1 being the most significant bit of word 0.
+         * @param type  the type of bitmap.
+         */
+        public Bitmap(long[] words, Type type) {
+            this.words = words;
             this.type = type;
         }
 
         public boolean isSet(int bit) {
-            int byteIndex = byteIndex(bit);
-            return byteIndex < bytes.length && (bytes[byteIndex] & mask(bit)) > 0;
+            int wordIndex = wordIndex(bit);
+            return bit > 0 && wordIndex < words.length && (words[wordIndex] & mask(bit)) != 0;
         }
 
         public boolean isControlBit(int bit) {
-            boolean controlBit = false;
-            switch (type) {
-                case HEX:
-                case BINARY:
-                    if (bit == 1) {
-                        controlBit = true;
-                    }
-                    break;
-                case COMPRESSED:
-                    if (bit == 1 || bit == 17 || bit == 25) {
-                        controlBit = true;
-                    }
-                    break;
-                default:
-            }
-            return controlBit;
+            return (type.getControlBits(wordIndex(bit)) & mask(bit)) != 0;
+        }
+
+        /**
+         * @return the number of 64 bit words holding the bitmap.
+         */
+        public int getWordCount() {
+            return words.length;
+        }
+
+        /**
+         * @param word the index of the 64 bit word starting with 0.
+         * @return the bits of the word with bit 1 being the most significant bit of word 0.
+         */
+        public long getWord(int word) {
+            return word < words.length ? words[word] : 0L;
+        }
+
+        /**
+         * @param word the index of the 64 bit word starting with 0.
+         * @return the control bits of the word.
+         * @see Type#getControlBits(int)
+         */
+        public long getControlBits(int word) {
+            return type.getControlBits(word);
         }
 
         public void set(int bit) {
-            bytes[byteIndex(bit)] = (byte) (bytes[byteIndex(bit)] | mask(bit));
+            words[wordIndex(bit)] |= mask(bit);
         }
 
         public void unSet(int bit) {
-            bytes[byteIndex(bit)] = (byte) (bytes[byteIndex(bit)] & (mask(bit) ^ 0xFF));
+            words[wordIndex(bit)] &= ~mask(bit);
         }
 
         @Override
         public String toString() {
-            Set<Integer> setBits = new TreeSet<>();
-            int bits = bytes.length * 8;
-            for (int i = 1; i <= bits; i++) {
-                if (isSet(i)) {
-                    setBits.add(i);
+            StringBuilder sb = new StringBuilder("[");
+            for (int i = 0; i < words.length; i++) {
+                long bits = words[i];
+                while (bits != 0) {
+                    int offset = Long.numberOfLeadingZeros(bits);
+                    if (sb.length() > 1) {
+                        sb.append(", ");
+                    }
+                    sb.append((i << 6) + offset + 1);
+                    bits &= ~(Long.MIN_VALUE >>> offset);
                 }
             }
-            return setBits.toString();
+            return sb.append(']').toString();
         }
 
         @Override
         public int hashCode() {
-            return Arrays.hashCode(bytes) ^ type.hashCode();
+            return Arrays.hashCode(words) ^ type.hashCode();
         }
 
         @Override
@@ -221,7 +320,7 @@ public class BitmapCodec {
                 return false;
             } else {
                 Bitmap other = (Bitmap) o;
-                return Arrays.equals(bytes, other.bytes) && type.equals(other.type);
+                return Arrays.equals(words, other.words) && type.equals(other.type);
             }
         }
     }
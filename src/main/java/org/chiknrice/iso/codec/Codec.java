@@ -15,6 +15,7 @@
  */
 package org.chiknrice.iso.codec;
 
+import org.chiknrice.iso.IsoMessageCodec;
 import org.chiknrice.iso.config.ComponentDef.Encoding;
 
 import java.nio.ByteBuffer;
@@ -49,6 +50,20 @@ public interface Codec<T> {
      */
     void encode(ByteBuffer buf, T value);
 
+    /**
+     * Computes the exact number of bytes encode would write for the value. Implementations should compute it without
+     * encoding, the default implementation encodes the value to a scratch buffer and is only meant for codecs which
+     * have no cheaper way of knowing.
+     *
+     * @param value the value to be encoded
+     * @return the number of bytes the encoded value would take
+     */
+    default int encodedLength(T value) {
+        ByteBuffer buf = ByteBuffer.allocate(IsoMessageCodec.MAX_MESSAGE_LENGTH);
+        encode(buf, value);
+        return buf.position();
+    }
+
     /**
      * Defines how the value should be encoded/decoded.
      *
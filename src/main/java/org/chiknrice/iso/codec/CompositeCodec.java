@@ -16,21 +16,37 @@
 
 package org.chiknrice.iso.codec;
 
-import org.chiknrice.iso.config.ComponentDef;
+import org.chiknrice.iso.IsoMessageCodec;
+import org.chiknrice.iso.config.CompositePlan;
 
 import java.nio.ByteBuffer;
 import java.util.Map;
-import java.util.SortedMap;
 
 /**
- * Composite codecs are raw/binary codecs which encodes/decodes sub fields
+ * Composite codecs are raw/binary codecs which encodes/decodes sub fields. The sub fields are described by the plan
+ * compiled from the sub component defs of the composite.
  *
  * @author <a href="mailto:chiknrice@gmail.com">Ian Bondoc</a>
  */
 public interface CompositeCodec {
 
-    Map<Integer, Object> decode(ByteBuffer buf, SortedMap<Integer, ComponentDef> subComponentDefs);
+    Map<Integer, Object> decode(ByteBuffer buf, CompositePlan plan);
 
-    void encode(ByteBuffer buf, Map<Integer, Object> values, SortedMap<Integer, ComponentDef> subComponentDefs);
+    void encode(ByteBuffer buf, Map<Integer, Object> values, CompositePlan plan);
+
+    /**
+     * Computes the exact number of bytes encode would write for the values without checking if the values can be
+     * encoded (e.g. missing mandatory or unexpected components are only reported by encode).
+     *
+     * @param values the values of the sub components.
+     * @param plan   the plan of the composite.
+     * @return the number of bytes the encoded values would take.
+     * @see Codec#encodedLength(Object)
+     */
+    default int encodedLength(Map<Integer, Object> values, CompositePlan plan) {
+        ByteBuffer buf = ByteBuffer.allocate(IsoMessageCodec.MAX_MESSAGE_LENGTH);
+        encode(buf, values, plan);
+        return buf.position();
+    }
 
 }
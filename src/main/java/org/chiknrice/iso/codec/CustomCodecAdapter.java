@@ -19,13 +19,16 @@ import org.chiknrice.iso.config.ComponentDef.Encoding;
 import org.chiknrice.iso.util.EqualsBuilder;
 import org.chiknrice.iso.util.Hash;
 
+import java.io.Serializable;
 import java.nio.ByteBuffer;
 
 /**
  * @author <a href="mailto:chiknrice@gmail.com">Ian Bondoc</a>
  */
 @SuppressWarnings("unchecked")
-public class CustomCodecAdapter implements Codec<Object> {
+public class CustomCodecAdapter implements Codec<Object>, Skippable, Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     private final CustomCodec customCodec;
     private final Integer fixedLength;
@@ -41,11 +44,24 @@ public class CustomCodecAdapter implements Codec<Object> {
         return customCodec.decode(bytes);
     }
 
+    @Override
+    public final void skip(ByteBuffer buf) {
+        buf.position(fixedLength != null ? buf.position() + fixedLength : buf.limit());
+    }
+
     public final void encode(ByteBuffer buf, Object value) {
         byte[] bytes = customCodec.encode(value);
         buf.put(bytes);
     }
 
+    /**
+     * Custom codecs can only tell the length of the value by encoding it.
+     */
+    @Override
+    public int encodedLength(Object value) {
+        return customCodec.encode(value).length;
+    }
+
     @Override
     public Encoding getEncoding() {
         return Encoding.BINARY;
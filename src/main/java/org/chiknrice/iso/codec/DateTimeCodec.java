@@ -22,21 +22,56 @@ import org.chiknrice.iso.util.Bcd;
 import org.chiknrice.iso.util.EqualsBuilder;
 import org.chiknrice.iso.util.Hash;
 
+import java.io.Serializable;
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.MonthDay;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
 import java.util.Date;
 import java.util.TimeZone;
 
 /**
+ * Encodes and decodes fixed length date/time values based on a SimpleDateFormat pattern. Patterns which are only made
+ * of 2 digit months, days, hours, minutes and seconds and 2 or 4 digit years (e.g. MMddHHmmss, HHmmss, MMdd or yyMM)
+ * are compiled to digit positions which are parsed and written directly on the buffer. Any other pattern is handled by
+ * a SimpleDateFormat kept per thread. Aside from Date, values can be decoded and encoded as epoch millis, LocalDateTime
+ * or MonthDay which avoids allocating a Date and a Calendar for each value.
+ *
  * @author <a href="mailto:chiknrice@gmail.com">Ian Bondoc</a>
  */
-public class DateTimeCodec implements Codec<Date> {
+public class DateTimeCodec implements Codec<Date>, Skippable, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int YEAR = 0;
+    private static final int MONTH = 1;
+    private static final int DAY = 2;
+    private static final int HOUR = 3;
+    private static final int MINUTE = 4;
+    private static final int SECOND = 5;
 
     private final String pattern;
     private final TimeZone timeZone;
     private final Encoding encoding;
+    private final transient ZoneId zone;
+    private final transient ZoneOffset fixedOffset;
+
+    /**
+     * The digit offset and width of each field (indexed by YEAR to SECOND) or null if the pattern has to be handled by
+     * SimpleDateFormat. A field missing from the pattern has a width of 0.
+     */
+    private final transient int[] offsets;
+    private final transient int[] widths;
+    private final transient boolean clockHour;
+    private final transient LocalDateTime centuryStart;
+    private final transient ThreadLocal<SimpleDateFormat> formats;
 
     public DateTimeCodec(String pattern, TimeZone timeZone, Encoding encoding) {
         this.pattern = pattern;
@@ -49,32 +84,294 @@ public class DateTimeCodec implements Codec<Date> {
             default:
                 throw new ConfigException(String.format("Unsupported encoding %s", encoding));
         }
+        this.zone = timeZone.toZoneId();
+        this.fixedOffset = zone.getRules().isFixedOffset() ? zone.getRules().getOffset(Instant.EPOCH) : null;
+
+        int[] offsets = new int[6];
+        int[] widths = new int[6];
+        boolean clockHour = false;
+        for (int i = 0; i < pattern.length() && offsets != null; ) {
+            char letter = pattern.charAt(i);
+            int width = 1;
+            while (i + width < pattern.length() && pattern.charAt(i + width) == letter) {
+                width++;
+            }
+            int field = field(letter);
+            if (field < 0 || widths[field] > 0 || (width != 2 && !(field == YEAR && width == 4))) {
+                offsets = null;
+            } else {
+                offsets[field] = i;
+                widths[field] = width;
+                clockHour |= letter == 'h';
+            }
+            i += width;
+        }
+        this.offsets = offsets;
+        this.widths = offsets != null ? widths : null;
+        this.clockHour = clockHour;
+
+        // same as SimpleDateFormat, 2 digit years are within 80 years before and 20 years after the codec is created
+        this.centuryStart = LocalDateTime.now(zone).minusYears(80);
+        this.formats = offsets != null ? null : ThreadLocal.withInitial(() -> {
+            SimpleDateFormat format = new SimpleDateFormat(pattern);
+            format.setLenient(false);
+            format.setTimeZone(timeZone);
+            return format;
+        });
+    }
+
+    private static int field(char letter) {
+        switch (letter) {
+            case 'y':
+                return YEAR;
+            case 'M':
+                return MONTH;
+            case 'd':
+                return DAY;
+            case 'H':
+            case 'h':
+                return HOUR;
+            case 'm':
+                return MINUTE;
+            case 's':
+                return SECOND;
+            default:
+                return -1;
+        }
     }
 
     public Date decode(ByteBuffer buf) {
-        int length = pattern.length();
-        byte[] bytes = new byte[Encoding.BCD == encoding ? (length / 2 + length % 2) : length];
-        buf.get(bytes);
-        String dateTimeString = encoding.equals(Encoding.CHAR) ? new String(bytes, StandardCharsets.ISO_8859_1) : Bcd
-                .decode(bytes);
+        return new Date(decodeEpochMillis(buf));
+    }
 
-        SimpleDateFormat format = new SimpleDateFormat(pattern);
-        format.setLenient(false);
-        format.setTimeZone(timeZone);
+    /**
+     * @param buf
+     * @return the decoded value as milliseconds since epoch.
+     */
+    public long decodeEpochMillis(ByteBuffer buf) {
+        if (offsets != null) {
+            return toEpochMillis(decodeLocalDateTime(buf));
+        } else {
+            String dateTimeString = decodeString(buf);
+            try {
+                return formats.get().parse(dateTimeString).getTime();
+            } catch (ParseException e) {
+                throw new CodecException(e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * @param buf
+     * @return the decoded value as a local date time in the time zone of the codec.
+     */
+    public LocalDateTime decodeLocalDateTime(ByteBuffer buf) {
+        if (offsets == null) {
+            return LocalDateTime.ofInstant(Instant.ofEpochMilli(decodeEpochMillis(buf)), zone);
+        }
+        int start = buf.position();
+        int bytes = byteLength();
+        if (buf.remaining() < bytes) {
+            throw new CodecException(String.format("Expecting %d bytes, only %d remaining", bytes, buf.remaining()));
+        }
+        int year = parseField(buf, start, YEAR, 1970);
+        int hour = parseField(buf, start, HOUR, 0);
+        if (clockHour) {
+            // hour in am/pm (1-12) without an am/pm marker is always am
+            hour = hour == 12 ? 0 : hour > 12 ? -1 : hour;
+        }
         try {
-            return format.parse(dateTimeString);
-        } catch (ParseException e) {
-            throw new CodecException(e.getMessage(), e);
+            LocalDateTime value = LocalDateTime.of(year, parseField(buf, start, MONTH, 1),
+                    parseField(buf, start, DAY, 1), hour, parseField(buf, start, MINUTE, 0),
+                    parseField(buf, start, SECOND, 0));
+            if (widths[YEAR] == 2 && value.isBefore(centuryStart)) {
+                value = value.withYear(year + 100);
+            }
+            buf.position(start + bytes);
+            return value;
+        } catch (DateTimeException e) {
+            throw unparseable(buf, start);
+        }
+    }
+
+    /**
+     * Decodes only the month and day of the value, unlike a full date February 29 is accepted when the pattern has no
+     * year.
+     *
+     * @param buf
+     * @return the decoded month and day.
+     */
+    public MonthDay decodeMonthDay(ByteBuffer buf) {
+        if (offsets == null || widths[YEAR] > 0) {
+            return MonthDay.from(decodeLocalDateTime(buf));
+        }
+        int start = buf.position();
+        int bytes = byteLength();
+        if (buf.remaining() < bytes) {
+            throw new CodecException(String.format("Expecting %d bytes, only %d remaining", bytes, buf.remaining()));
+        }
+        try {
+            MonthDay value = MonthDay.of(parseField(buf, start, MONTH, 1), parseField(buf, start, DAY, 1));
+            buf.position(start + bytes);
+            return value;
+        } catch (DateTimeException e) {
+            throw unparseable(buf, start);
+        }
+    }
+
+    private int parseField(ByteBuffer buf, int start, int field, int defaultValue) {
+        int width = widths[field];
+        if (width == 0) {
+            return defaultValue;
+        }
+        int value = 0;
+        for (int i = offsets[field], end = i + width; i < end; i++) {
+            int digit = digitAt(buf, start, i);
+            if (digit < 0 || digit > 9) {
+                throw unparseable(buf, start);
+            }
+            value = value * 10 + digit;
+        }
+        if (field == YEAR && width == 2) {
+            value += centuryStart.getYear() / 100 * 100;
         }
+        return value;
+    }
+
+    private int digitAt(ByteBuffer buf, int start, int i) {
+        if (Encoding.CHAR == encoding) {
+            return buf.get(start + i) - '0';
+        } else {
+            // odd length patterns are left padded with 0
+            int nibble = i + pattern.length() % 2;
+            int b = buf.get(start + (nibble >> 1));
+            return ((nibble & 1) == 0 ? b >> 4 : b) & 0x0F;
+        }
+    }
+
+    private CodecException unparseable(ByteBuffer buf, int start) {
+        ByteBuffer encoded = buf.duplicate();
+        encoded.position(start);
+        String dateTimeString = decodeString(encoded);
+        ParseException e = new ParseException(String.format("Unparseable date: \"%s\"", dateTimeString), 0);
+        return new CodecException(e.getMessage(), e);
+    }
+
+    private String decodeString(ByteBuffer buf) {
+        byte[] bytes = new byte[byteLength()];
+        buf.get(bytes);
+        return encoding.equals(Encoding.CHAR) ? new String(bytes, StandardCharsets.ISO_8859_1) : Bcd.decode(bytes);
+    }
+
+    private long toEpochMillis(LocalDateTime value) {
+        if (fixedOffset != null) {
+            return value.toEpochSecond(fixedOffset) * 1000 + value.getNano() / 1000000;
+        } else {
+            return value.atZone(zone).toInstant().toEpochMilli();
+        }
+    }
+
+    /**
+     * @return the number of bytes of the encoded value which only depends on the pattern.
+     */
+    int byteLength() {
+        int length = pattern.length();
+        return Encoding.BCD == encoding ? (length / 2 + length % 2) : length;
+    }
+
+    @Override
+    public void skip(ByteBuffer buf) {
+        buf.position(buf.position() + byteLength());
     }
 
     public void encode(ByteBuffer buf, Date value) {
-        SimpleDateFormat format = new SimpleDateFormat(pattern);
-        format.setLenient(false);
-        format.setTimeZone(timeZone);
-        String stringValue = format.format(value);
-        buf.put(encoding.equals(Encoding.CHAR) ? stringValue.getBytes(StandardCharsets.ISO_8859_1) : Bcd
-                .encode(stringValue));
+        encodeEpochMillis(buf, value.getTime());
+    }
+
+    /**
+     * @param buf
+     * @param value the milliseconds since epoch to be encoded.
+     */
+    public void encodeEpochMillis(ByteBuffer buf, long value) {
+        if (offsets != null) {
+            LocalDateTime dateTime;
+            if (fixedOffset != null) {
+                dateTime = LocalDateTime.ofEpochSecond(Math.floorDiv(value, 1000L),
+                        (int) Math.floorMod(value, 1000L) * 1000000, fixedOffset);
+            } else {
+                dateTime = LocalDateTime.ofInstant(Instant.ofEpochMilli(value), zone);
+            }
+            encodeLocalDateTime(buf, dateTime);
+        } else {
+            encodeString(buf, formats.get().format(new Date(value)));
+        }
+    }
+
+    /**
+     * @param buf
+     * @param value the local date time (in the time zone of the codec) to be encoded.
+     */
+    public void encodeLocalDateTime(ByteBuffer buf, LocalDateTime value) {
+        if (offsets == null) {
+            encodeEpochMillis(buf, toEpochMillis(value));
+            return;
+        }
+        int start = buf.position();
+        int bytes = byteLength();
+        if (buf.remaining() < bytes) {
+            throw new BufferOverflowException();
+        }
+        if (Encoding.BCD == encoding) {
+            for (int i = 0; i < bytes; i++) {
+                buf.put(start + i, (byte) 0);
+            }
+        }
+        int hour = value.getHour();
+        writeField(buf, start, YEAR, value.getYear());
+        writeField(buf, start, MONTH, value.getMonthValue());
+        writeField(buf, start, DAY, value.getDayOfMonth());
+        writeField(buf, start, HOUR, clockHour && hour % 12 == 0 ? 12 : clockHour ? hour % 12 : hour);
+        writeField(buf, start, MINUTE, value.getMinute());
+        writeField(buf, start, SECOND, value.getSecond());
+        buf.position(start + bytes);
+    }
+
+    /**
+     * Encodes the month and day, any other field in the pattern is encoded as the start of the day in 1972.
+     *
+     * @param buf
+     * @param value the month and day to be encoded.
+     */
+    public void encodeMonthDay(ByteBuffer buf, MonthDay value) {
+        // a leap year so February 29 is kept
+        encodeLocalDateTime(buf, value.atYear(1972).atStartOfDay());
+    }
+
+    private void writeField(ByteBuffer buf, int start, int field, int value) {
+        for (int i = offsets[field] + widths[field] - 1; i >= offsets[field]; i--) {
+            int digit = value % 10;
+            value /= 10;
+            if (Encoding.CHAR == encoding) {
+                buf.put(start + i, (byte) ('0' + digit));
+            } else {
+                int nibble = i + pattern.length() % 2;
+                int index = start + (nibble >> 1);
+                buf.put(index, (byte) (buf.get(index) | ((nibble & 1) == 0 ? digit << 4 : digit)));
+            }
+        }
+    }
+
+    @Override
+    public int encodedLength(Date value) {
+        return byteLength();
+    }
+
+    private void encodeString(ByteBuffer buf, String stringValue) {
+        if (encoding.equals(Encoding.CHAR)) {
+            buf.put(stringValue.getBytes(StandardCharsets.ISO_8859_1));
+        } else {
+            Bcd.encode(buf, stringValue, true, 0);
+        }
     }
 
     @Override
@@ -82,6 +379,13 @@ public class DateTimeCodec implements Codec<Date> {
         return encoding;
     }
 
+    /**
+     * Only the pattern, timezone and encoding are serialized, the rest is compiled again when deserialized.
+     */
+    private Object readResolve() {
+        return new DateTimeCodec(pattern, timeZone, encoding);
+    }
+
     @Override
     public int hashCode() {
         return Hash.build(this, pattern, timeZone, encoding);
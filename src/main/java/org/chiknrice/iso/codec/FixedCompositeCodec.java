@@ -17,13 +17,12 @@
 package org.chiknrice.iso.codec;
 
 import org.chiknrice.iso.CodecException;
-import org.chiknrice.iso.config.ComponentDef;
+import org.chiknrice.iso.ComponentMap;
+import org.chiknrice.iso.config.CompositePlan;
 
+import java.io.Serializable;
 import java.nio.ByteBuffer;
-import java.util.HashMap;
 import java.util.Map;
-import java.util.SortedMap;
-import java.util.TreeMap;
 
 import static java.lang.String.format;
 
@@ -31,63 +30,70 @@ import static java.lang.String.format;
  * @author <a href="mailto:chiknrice@gmail.com">Ian Bondoc</a>
  */
 @SuppressWarnings("unchecked")
-public class FixedCompositeCodec implements CompositeCodec {
+public class FixedCompositeCodec implements CompositeCodec, Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     @Override
-    public Map<Integer, Object> decode(ByteBuffer buf, SortedMap<Integer, ComponentDef> subComponentDefs) {
-        Map<Integer, Object> values = new TreeMap<>();
-        Integer index = 1;
-        while (true) {
-            ComponentDef def = subComponentDefs.get(index);
-
-            if (def == null) {
-                if (subComponentDefs.lastKey() > index) {
-                    throw new CodecException(format("Missing configuration for sub component %d", index));
-                } else {
-                    break;
-                }
+    public Map<Integer, Object> decode(ByteBuffer buf, CompositePlan plan) {
+        Map<Integer, Object> values = new ComponentMap(plan.getLastDirectIndex());
+        for (int ordinal = 0; ordinal < plan.size(); ordinal++) {
+            int index = ordinal + 1;
+            if (plan.indexAt(ordinal) != index) {
+                throw new CodecException(format("Missing configuration for sub component %d", index));
             }
 
             Object value;
             try {
-                value = def.getCodec().decode(buf);
+                value = plan.codecAt(ordinal).decode(buf);
             } catch (CodecException e) {
-                throw new CodecException(format("Failed to decode %s", def), e);
+                throw new CodecException(format("Failed to decode %s", plan.defAt(ordinal)), e);
             }
 
             if (value == null) {
-                throw new CodecException(format("Null component %s", def));
+                throw new CodecException(format("Null component %s", plan.defAt(ordinal)));
             }
 
             values.put(index, value);
-            index++;
         }
 
         return values;
     }
 
     @Override
-    public void encode(ByteBuffer buf, Map<Integer, Object> values, SortedMap<Integer, ComponentDef> subComponentDefs) {
-        Map<Integer, Object> toEncodeMap = new HashMap<>(values);
-        for (Map.Entry<Integer, ComponentDef> defEntry : subComponentDefs.entrySet()) {
-            Integer index = defEntry.getKey();
-            ComponentDef def = defEntry.getValue();
-            Object value = toEncodeMap.remove(index);
+    public void encode(ByteBuffer buf, Map<Integer, Object> values, CompositePlan plan) {
+        for (int ordinal = 0; ordinal < plan.size(); ordinal++) {
+            Object value = values.get(plan.indexAt(ordinal));
 
             if (value == null) {
-                throw new CodecException(format("Missing mandatory component %s", def));
+                throw new CodecException(format("Missing mandatory component %s", plan.defAt(ordinal)));
             }
 
             try {
-                def.getCodec().encode(buf, value);
+                plan.codecAt(ordinal).encode(buf, value);
             } catch (Exception e) {
-                throw new CodecException(format("Failed to encode %s", def), e);
+                throw new CodecException(format("Failed to encode %s", plan.defAt(ordinal)), e);
             }
         }
 
-        if (toEncodeMap.size() > 0) {
-            throw new CodecException(format("Unexpected component(s) to encode %s", toEncodeMap));
+        if (plan.size() < values.size()) {
+            Map<Integer, Object> unexpected = plan.unexpected(values);
+            if (unexpected.size() > 0) {
+                throw new CodecException(format("Unexpected component(s) to encode %s", unexpected));
+            }
+        }
+    }
+
+    @Override
+    public int encodedLength(Map<Integer, Object> values, CompositePlan plan) {
+        int length = 0;
+        for (int ordinal = 0; ordinal < plan.size(); ordinal++) {
+            Object value = values.get(plan.indexAt(ordinal));
+            if (value != null) {
+                length += plan.codecAt(ordinal).encodedLength(value);
+            }
         }
+        return length;
     }
 
     @Override
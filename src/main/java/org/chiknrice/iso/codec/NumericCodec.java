@@ -18,28 +18,58 @@ package org.chiknrice.iso.codec;
 import org.chiknrice.iso.CodecException;
 import org.chiknrice.iso.ConfigException;
 import org.chiknrice.iso.config.ComponentDef.Encoding;
-import org.chiknrice.iso.util.*;
+import org.chiknrice.iso.util.Bcd;
+import org.chiknrice.iso.util.Binary;
+import org.chiknrice.iso.util.EqualsBuilder;
+import org.chiknrice.iso.util.Hash;
 
+import java.io.Serializable;
 import java.math.BigInteger;
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 
 /**
  * @author <a href="mailto:chiknrice@gmail.com">Ian Bondoc</a>
  */
-public class NumericCodec implements Codec<Number> {
+public class NumericCodec implements Codec<Number>, Skippable, Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     private final Encoding encoding;
     private final Integer fixedLength;
     private final boolean supportsBigInteger;
+    private final boolean leftPadded;
+    private final int filler;
 
     public NumericCodec(Encoding encoding) {
         this(encoding, null);
     }
 
     public NumericCodec(Encoding encoding, Integer fixedLength) {
+        this(encoding, fixedLength, true, 0);
+    }
+
+    /**
+     * @param encoding
+     * @param fixedLength the number of digits (or bytes if BINARY) or null if the length is variable.
+     * @param leftPadded  if an odd number of BCD digits is padded on the left (the first nibble), otherwise on the
+     *                    right (the last nibble).
+     * @param filler      the BCD pad nibble (e.g. 0xF for a PAN). A variable length value only has a pad nibble when
+     *                    decoding if the filler is not a decimal digit and the nibble on the padded side is the filler.
+     */
+    public NumericCodec(Encoding encoding, Integer fixedLength, boolean leftPadded, int filler) {
         this.encoding = encoding;
         this.fixedLength = fixedLength;
+        this.leftPadded = leftPadded;
+        this.filler = filler;
+        if (filler < 0 || filler > 0xF) {
+            throw new ConfigException(String.format("Invalid BCD filler %X", filler));
+        }
+        if (Encoding.BCD.equals(encoding) && fixedLength == null && !leftPadded && filler < 10) {
+            throw new ConfigException(
+                    String.format("Variable length numeric field padded on the right with %X is ambiguous", filler));
+        }
         if (Encoding.BINARY.equals(encoding)) {
             if (fixedLength == null) {
                 throw new ConfigException(
@@ -58,6 +88,142 @@ public class NumericCodec implements Codec<Number> {
     }
 
     public Number decode(ByteBuffer buf) {
+        if (Encoding.BINARY == encoding) {
+            return decodeLong(buf);
+        } else if (Encoding.BCD == encoding) {
+            return decodeBcd(buf);
+        }
+
+        int bytes = bytesToDecode(buf);
+        int start = buf.position();
+        int length = bytes;
+        boolean signed = isSigned(buf, start, length);
+
+        long value = 0;
+        int leadingZeros = 0;
+        int significantDigits = 0;
+        for (int i = signed ? 1 : 0; i < length; i++) {
+            int digit = digit(buf, start, bytes, i);
+            if (significantDigits == 0 && digit == 0) {
+                leadingZeros++;
+            } else if (++significantDigits <= 18) {
+                value = value * 10 + digit;
+            }
+        }
+        buf.position(start + bytes);
+
+        // leading zeros are stripped leaving at least 2 digits, the type depends on how many digits are left
+        int digits = signed ? length : length - Math.min(leadingZeros, Math.max(length - 2, 0));
+        if (significantDigits > 18) {
+            return new BigInteger(digitString(buf, start, bytes));
+        }
+        if (signed && buf.get(start) == '-') {
+            value = -value;
+        }
+        if (digits < 10) {
+            return Integer.valueOf((int) value);
+        } else {
+            return Long.valueOf(value);
+        }
+    }
+
+    /**
+     * Decodes the value without boxing.
+     *
+     * @param buf
+     * @return the decoded value
+     * @throws CodecException if the value doesn't fit in a long.
+     */
+    public long decodeLong(ByteBuffer buf) {
+        int bytes = bytesToDecode(buf);
+        int start = buf.position();
+        long value = 0;
+        if (Encoding.BINARY == encoding) {
+            value = Binary.getLong(buf, start, bytes);
+            if (value < 0) {
+                throw new CodecException(String.format("Value exceeds long type %016X", value));
+            }
+        } else if (Encoding.BCD == encoding) {
+            int digits = bcdDigits(buf, start, bytes);
+            if (digits <= 18) {
+                return Bcd.decodeLong(buf, digits, leftPadded);
+            }
+            BigInteger bigValue = new BigInteger(decodeBcdDigits(buf, digits));
+            if (bigValue.bitLength() > 63) {
+                throw new CodecException(String.format("Value exceeds long type %s", bigValue));
+            }
+            return bigValue.longValue();
+        } else {
+            int length = bytes;
+            boolean signed = isSigned(buf, start, length);
+            for (int i = signed ? 1 : 0; i < length; i++) {
+                int digit = digit(buf, start, bytes, i);
+                if (value > (Long.MAX_VALUE - digit) / 10) {
+                    throw new CodecException(
+                            String.format("Value exceeds long type %s", digitString(buf, start, bytes)));
+                }
+                value = value * 10 + digit;
+            }
+            if (signed && buf.get(start) == '-') {
+                value = -value;
+            }
+        }
+        buf.position(start + bytes);
+        return value;
+    }
+
+    private Number decodeBcd(ByteBuffer buf) {
+        int bytes = bytesToDecode(buf);
+        int start = buf.position();
+        int digits = bcdDigits(buf, start, bytes);
+        int significantDigits;
+        Number value;
+        if (digits <= 18) {
+            long longValue = Bcd.decodeLong(buf, digits, leftPadded);
+            significantDigits = 0;
+            for (long remaining = longValue; remaining > 0; remaining /= 10) {
+                significantDigits++;
+            }
+            value = longValue;
+        } else {
+            BigInteger bigValue = new BigInteger(decodeBcdDigits(buf, digits));
+            significantDigits = bigValue.signum() == 0 ? 0 : bigValue.toString().length();
+            value = bigValue;
+        }
+
+        // leading zeros are stripped leaving at least 2 digits, the type depends on how many digits are left
+        int length = digits - Math.min(digits - significantDigits, Math.max(digits - 2, 0));
+        if (length < 10) {
+            return value.intValue();
+        } else if (length < 19) {
+            return value.longValue();
+        } else {
+            return value;
+        }
+    }
+
+    /**
+     * The number of digits excluding the pad nibble. A fixed length value is padded if the length is odd while a
+     * variable length value is only padded if the nibble on the padded side is the filler.
+     */
+    private int bcdDigits(ByteBuffer buf, int start, int bytes) {
+        if (bytes == 0) {
+            throw new CodecException("Invalid numeric value []");
+        }
+        if (fixedLength != null) {
+            return fixedLength;
+        }
+        int pad = leftPadded ? (buf.get(start) & 0xF0) >>> 4 : buf.get(start + bytes - 1) & 0x0F;
+        return bytes * 2 - (filler > 9 && pad == filler ? 1 : 0);
+    }
+
+    private String decodeBcdDigits(ByteBuffer buf, int digits) {
+        StringBuilder digitString = new StringBuilder(digits);
+        Bcd.decode(buf, digits, leftPadded, digitString);
+        return digitString.toString();
+    }
+
+    private int bytesToDecode(ByteBuffer buf) {
         int bytesToDecode;
         if (fixedLength != null) {
             if (Encoding.BCD == encoding) {
@@ -72,41 +238,48 @@ public class NumericCodec implements Codec<Number> {
         } else {
             bytesToDecode = buf.limit() - buf.position();
         }
+        return bytesToDecode;
+    }
 
-        byte[] bytes = new byte[bytesToDecode];
-        buf.get(bytes);
-        Object value;
-        if (Encoding.CHAR.equals(encoding)) {
-            value = new String(bytes, StandardCharsets.ISO_8859_1);
-        } else if (Encoding.BCD.equals(encoding)) {
-            value = Bcd.decode(bytes);
-        } else {
-            if (bytes.length == 8 && (bytes[0] & 0x80) > 0) {
-                throw new CodecException(String.format("Value exceeds long type %s", Hex.encode(bytes)));
+    /**
+     * Only CHAR values can have a sign.
+     */
+    private boolean isSigned(ByteBuffer buf, int start, int length) {
+        if (length == 0) {
+            throw new CodecException("Invalid numeric value []");
+        }
+        byte first = buf.get(start);
+        if (first == '-' || first == '+') {
+            if (length == 1) {
+                throw new CodecException(String.format("Invalid numeric value [%s]", (char) first));
             }
-            value = Binary.decodeLong(bytes);
+            return true;
         }
+        return false;
+    }
 
-        if (value instanceof String) {
-            String numericString = ((String) value);
-            int stringLength = numericString.length();
-            int pos = 0;
-            while (pos < stringLength - 2 && numericString.charAt(pos) == '0') {
-                pos++;
-            }
-            if (pos > 0) {
-                numericString = numericString.substring(pos);
-            }
-            int digits = numericString.length();
-            if (digits < 10) {
-                return Integer.valueOf(numericString);
-            } else if (digits < 19) {
-                return Long.valueOf(numericString);
-            } else {
-                return new BigInteger(numericString);
-            }
+    private int digit(ByteBuffer buf, int start, int bytes, int i) {
+        int digit = buf.get(start + i) - '0';
+        if (digit < 0 || digit > 9) {
+            throw new CodecException(String.format("Invalid numeric value [%s]", digitString(buf, start, bytes)));
+        }
+        return digit;
+    }
+
+    private String digitString(ByteBuffer buf, int start, int bytes) {
+        byte[] encoded = new byte[bytes];
+        for (int i = 0; i < bytes; i++) {
+            encoded[i] = buf.get(start + i);
+        }
+        return new String(encoded, StandardCharsets.ISO_8859_1);
+    }
+
+    @Override
+    public void skip(ByteBuffer buf) {
+        if (fixedLength != null) {
+            buf.position(buf.position() + (Encoding.BCD == encoding ? fixedLength / 2 + fixedLength % 2 : fixedLength));
         } else {
-            return (Long) value;
+            buf.position(buf.limit());
         }
     }
 
@@ -114,13 +287,15 @@ public class NumericCodec implements Codec<Number> {
         if (!supportsBigInteger && !((value instanceof Long) || (value instanceof Integer))) {
             throw new CodecException(String.format("Value %s exceeds capacity of field", value));
         }
-        if (Encoding.BINARY == encoding) {
-            Long longValue = value.longValue();
-            buf.put(Binary.encode(longValue, fixedLength));
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            encodeLong(buf, value.longValue());
         } else {
             String stringValue;
             if (fixedLength != null) {
                 stringValue = String.format("%0" + fixedLength + "d", value);
+                if (stringValue.length() > fixedLength) {
+                    throw new CodecException(String.format("Value %s exceeds capacity of field", value));
+                }
             } else {
                 stringValue = value.toString();
             }
@@ -128,9 +303,88 @@ public class NumericCodec implements Codec<Number> {
             if (Encoding.CHAR.equals(encoding)) {
                 buf.put(stringValue.getBytes(StandardCharsets.ISO_8859_1));
             } else {
-                buf.put(Bcd.encode(stringValue));
+                Bcd.encode(buf, stringValue, leftPadded, filler);
+            }
+        }
+    }
+
+    /**
+     * Encodes the value without boxing.
+     *
+     * @param buf
+     * @param value the value to be encoded
+     */
+    public void encodeLong(ByteBuffer buf, long value) {
+        if (Encoding.BINARY == encoding) {
+            if (value < 0) {
+                throw new CodecException(String.format("Invalid numeric value [%d]", value));
+            }
+            Binary.putLong(buf, value, fixedLength);
+            return;
+        }
+
+        if (value < 0 && (Encoding.BCD == encoding || value == Long.MIN_VALUE)) {
+            if (Encoding.BCD == encoding) {
+                throw new CodecException(String.format("Invalid numeric value [%d]", value));
             }
+            encode(buf, BigInteger.valueOf(value));
+            return;
+        }
+
+        long magnitude = Math.abs(value);
+        int digits = digits(magnitude);
+        int sign = value < 0 ? 1 : 0;
+        int length = fixedLength != null ? fixedLength : digits + sign;
+        if (digits + sign > length) {
+            throw new CodecException(String.format("Value %d exceeds capacity of field", value));
+        }
+
+        int start = buf.position();
+        if (Encoding.CHAR == encoding) {
+            if (buf.remaining() < length) {
+                throw new BufferOverflowException();
+            }
+            for (int i = length - 1; i >= sign; i--) {
+                buf.put(start + i, (byte) ('0' + magnitude % 10));
+                magnitude /= 10;
+            }
+            if (sign > 0) {
+                buf.put(start, (byte) '-');
+            }
+            buf.position(start + length);
+        } else {
+            Bcd.encodeLong(buf, magnitude, length, leftPadded, filler);
+        }
+    }
+
+    @Override
+    public int encodedLength(Number value) {
+        int length = encodedDigits(value);
+        return Encoding.BCD == encoding ? length / 2 + length % 2 : length;
+    }
+
+    /**
+     * @param value the value to be encoded.
+     * @return the number of digits (including a sign) the value is encoded to, excluding any BCD pad nibble.
+     */
+    public int encodedDigits(Number value) {
+        if (fixedLength != null) {
+            return fixedLength;
+        } else if (value instanceof Long || value instanceof Integer || value instanceof Short
+                || value instanceof Byte) {
+            long longValue = value.longValue();
+            return longValue == Long.MIN_VALUE ? 20 : digits(Math.abs(longValue)) + (longValue < 0 ? 1 : 0);
+        } else {
+            return value.toString().length();
+        }
+    }
+
+    private static int digits(long magnitude) {
+        int digits = 1;
+        for (long remaining = magnitude / 10; remaining > 0; remaining /= 10) {
+            digits++;
         }
+        return digits;
     }
 
     @Override
@@ -140,7 +394,7 @@ public class NumericCodec implements Codec<Number> {
 
     @Override
     public int hashCode() {
-        return Hash.build(this, encoding, fixedLength);
+        return Hash.build(this, encoding, fixedLength, leftPadded, filler);
     }
 
     @Override
@@ -153,7 +407,8 @@ public class NumericCodec implements Codec<Number> {
             return false;
         } else {
             NumericCodec other = (NumericCodec) o;
-            return EqualsBuilder.newInstance(other.encoding, encoding).append(other.fixedLength, fixedLength).isEqual();
+            return EqualsBuilder.newInstance(other.encoding, encoding).append(other.fixedLength, fixedLength)
+                    .append(other.leftPadded, leftPadded).append(other.filler, filler).isEqual();
         }
     }
 
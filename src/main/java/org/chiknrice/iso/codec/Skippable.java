@@ -0,0 +1,36 @@
+/*
+ * Copyright (c) 2014 Ian Bondoc
+ *
+ * This file is part of Jen8583
+ *
+ * Jen8583 is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the License, or(at your option) any later version.
+ *
+ * Jen8583 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.chiknrice.iso.codec;
+
+import java.nio.ByteBuffer;
+
+/**
+ * An optional contract for codecs which can step over an encoded value without decoding it. Lazy decoding uses it to
+ * index where each field is without materializing the values, codecs which don't implement it are simply decoded.
+ *
+ * @author <a href="mailto:chiknrice@gmail.com">Ian Bondoc</a>
+ */
+public interface Skippable {
+
+    /**
+     * Advances the position of the ByteBuffer past the encoded value, consuming exactly the bytes decode would.
+     *
+     * @param buf
+     */
+    void skip(ByteBuffer buf);
+
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2014 Ian Bondoc
+ *
+ * This file is part of Jen8583
+ *
+ * Jen8583 is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the License, or(at your option) any later version.
+ *
+ * Jen8583 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.chiknrice.iso.codec;
+
+import org.chiknrice.iso.CodecException;
+import org.chiknrice.iso.config.ComponentDef.Encoding;
+import org.chiknrice.iso.util.EqualsBuilder;
+import org.chiknrice.iso.util.Hash;
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.time.MonthDay;
+import java.util.Date;
+
+import static java.lang.String.format;
+
+/**
+ * Adapts a DateTimeCodec to decode values as java.time types or epoch millis instead of Date. Any of the supported
+ * types (including Date) is accepted when encoding.
+ *
+ * @author <a href="mailto:chiknrice@gmail.com">Ian Bondoc</a>
+ */
+public class TemporalCodec implements Codec<Object>, Skippable, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public enum Type {
+        LOCAL_DATE_TIME, MONTH_DAY, EPOCH_MILLIS
+    }
+
+    private final DateTimeCodec codec;
+    private final Type type;
+
+    public TemporalCodec(DateTimeCodec codec, Type type) {
+        this.codec = codec;
+        this.type = type;
+    }
+
+    @Override
+    public Object decode(ByteBuffer buf) {
+        switch (type) {
+            case LOCAL_DATE_TIME:
+                return codec.decodeLocalDateTime(buf);
+            case MONTH_DAY:
+                return codec.decodeMonthDay(buf);
+            default:
+                return codec.decodeEpochMillis(buf);
+        }
+    }
+
+    @Override
+    public void skip(ByteBuffer buf) {
+        codec.skip(buf);
+    }
+
+    @Override
+    public void encode(ByteBuffer buf, Object value) {
+        if (value instanceof LocalDateTime) {
+            codec.encodeLocalDateTime(buf, (LocalDateTime) value);
+        } else if (value instanceof MonthDay) {
+            codec.encodeMonthDay(buf, (MonthDay) value);
+        } else if (value instanceof Long) {
+            codec.encodeEpochMillis(buf, (Long) value);
+        } else if (value instanceof Date) {
+            codec.encode(buf, (Date) value);
+        } else {
+            throw new CodecException(format("Unsupported date value %s", value));
+        }
+    }
+
+    @Override
+    public int encodedLength(Object value) {
+        return codec.byteLength();
+    }
+
+    @Override
+    public Encoding getEncoding() {
+        return codec.getEncoding();
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    @Override
+    public int hashCode() {
+        return Hash.build(this, codec, type);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == null) {
+            return false;
+        } else if (o == this) {
+            return true;
+        } else if (o.getClass() != getClass()) {
+            return false;
+        } else {
+            TemporalCodec other = (TemporalCodec) o;
+            return EqualsBuilder.newInstance(other.codec, codec).append(other.type, type).isEqual();
+        }
+    }
+
+}
@@ -17,7 +17,9 @@
 package org.chiknrice.iso.codec;
 
 import org.chiknrice.iso.CodecException;
+import org.chiknrice.iso.ComponentMap;
 import org.chiknrice.iso.config.ComponentDef;
+import org.chiknrice.iso.config.CompositePlan;
 import org.chiknrice.iso.util.Bcd;
 import org.chiknrice.iso.util.Binary;
 import org.chiknrice.iso.util.EqualsBuilder;
@@ -25,8 +27,12 @@ import org.chiknrice.iso.util.Hash;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.Serializable;
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
-import java.util.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
 import static java.lang.String.format;
 import static org.chiknrice.iso.config.ComponentDef.Encoding;
@@ -35,10 +41,17 @@ import static org.chiknrice.iso.config.ComponentDef.Encoding;
  * @author <a href="mailto:chiknrice@gmail.com">Ian Bondoc</a>
  */
 @SuppressWarnings("unchecked")
-public class TlvCompositeCodec implements CompositeCodec {
+public class TlvCompositeCodec implements CompositeCodec, Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     private static final Logger LOG = LoggerFactory.getLogger(TlvCompositeCodec.class);
 
+    /**
+     * Returned by {@link #decodeTag(ByteBuffer)} when there are no more tags to decode.
+     */
+    protected static final int NO_TAG = -1;
+
     private final Encoding tagEncoding;
     private final Encoding lengthEncoding;
     private final boolean failFast;
@@ -50,27 +63,34 @@ public class TlvCompositeCodec implements CompositeCodec {
     }
 
     @Override
-    public Map<Integer, Object> decode(ByteBuffer buf, SortedMap<Integer, ComponentDef> subComponentDefs) {
-        Map<Integer, ComponentDef> possibleSubComponents = new TreeMap<>(subComponentDefs);
-        Map<Integer, Object> values = new TreeMap<>();
+    public Map<Integer, Object> decode(ByteBuffer buf, CompositePlan plan) {
+        boolean[] decoded = new boolean[plan.size()];
+        Map<Integer, Object> values = new ComponentMap(plan.getLastDirectIndex());
 
         while (buf.hasRemaining()) {
-            Integer tag = decodeTag(buf);
-            ComponentDef def = possibleSubComponents.remove(tag);
-            if (def == null) {
+            int tag = decodeTag(buf);
+            if (tag == NO_TAG) {
+                break;
+            }
+            int ordinal = plan.ordinalOf(tag);
+            if (ordinal < 0 || decoded[ordinal]) {
                 throw new CodecException(format("Missing configuration for %d", tag));
             }
+            decoded[ordinal] = true;
 
-            Codec codec = def.getCodec();
+            ComponentDef def = plan.defAt(ordinal);
+            Codec codec = plan.codecAt(ordinal);
 
-            Integer length = decodeLength(buf);
-            int limit = codec.getEncoding() == ComponentDef.Encoding.BCD ? length / 2 + length % 2 : length;
+            int limit = decodeLength(buf, codec);
+            if (limit > buf.remaining()) {
+                throw new CodecException(format("Length of tag %d exceeds remaining %d bytes", tag, buf.remaining()));
+            }
             ByteBuffer valueBuf = buf.slice();
             valueBuf.limit(limit);
             buf.position(buf.position() + limit);
 
             Object value = null;
-            if (length > 0) {
+            if (limit > 0) {
                 value = codec.decode(valueBuf);
             }
 
@@ -89,13 +109,16 @@ public class TlvCompositeCodec implements CompositeCodec {
             values.put(tag, value);
         }
 
-        Set<Integer> missingTags = new HashSet<>();
-        for (Map.Entry<Integer, ComponentDef> defEntry : possibleSubComponents.entrySet()) {
-            if (defEntry.getValue().isMandatory()) {
-                missingTags.add(defEntry.getKey());
+        List<Integer> missingTags = null;
+        for (int ordinal = 0; ordinal < decoded.length; ordinal++) {
+            if (!decoded[ordinal] && plan.defAt(ordinal).isMandatory()) {
+                if (missingTags == null) {
+                    missingTags = new ArrayList<>();
+                }
+                missingTags.add(plan.indexAt(ordinal));
             }
         }
-        if (missingTags.size() > 0) {
+        if (missingTags != null) {
             if (failFast) {
                 throw new CodecException(format("Missing mandatory tags %s", missingTags));
             } else {
@@ -106,40 +129,47 @@ public class TlvCompositeCodec implements CompositeCodec {
         return values;
     }
 
-    // TODO: properly decode using BER
-    private Integer decodeTag(ByteBuffer buf) {
+    /**
+     * Decodes the next tag.
+     *
+     * @param buf the buffer positioned at the start of the tag.
+     * @return the tag or {@link #NO_TAG} if only padding is left in the buffer.
+     */
+    protected int decodeTag(ByteBuffer buf) {
         if (tagEncoding == Encoding.BCD) {
-            byte[] bcdBytes = new byte[1];
-            buf.get(bcdBytes);
-            return Integer.valueOf(Bcd.decode(bcdBytes));
+            return (int) Bcd.decodeLong(buf, 2, true);
         } else {
             return 0xFF & buf.get();
         }
     }
 
-    // TODO: properly decode using BER
-    private Integer decodeLength(ByteBuffer buf) {
+    /**
+     * Decodes the length of the value that follows.
+     *
+     * @param buf   the buffer positioned at the start of the length.
+     * @param codec the codec of the value.
+     * @return the number of bytes of the value.
+     */
+    protected int decodeLength(ByteBuffer buf, Codec codec) {
+        int length;
         if (lengthEncoding == Encoding.BCD) {
-            byte[] bcdBytes = new byte[1];
-            buf.get(bcdBytes);
-            return Integer.valueOf(Bcd.decode(bcdBytes));
+            length = (int) Bcd.decodeLong(buf, 2, true);
         } else {
-            byte[] bytes = new byte[2];
-            buf.get(bytes);
-            return Binary.decodeInt(bytes);
+            length = (int) Binary.getLong(buf, 2);
         }
+        return codec.getEncoding() == Encoding.BCD ? length / 2 + length % 2 : length;
     }
 
     @Override
-    public void encode(ByteBuffer buf, Map<Integer, Object> values, SortedMap<Integer, ComponentDef> subComponentDefs) {
-        Map<Integer, Object> toEncodeMap = new TreeMap<>(values);
-        for (Map.Entry<Integer, ComponentDef> defEntry : subComponentDefs.entrySet()) {
-            Integer tag = defEntry.getKey();
-            ComponentDef def = defEntry.getValue();
-            Object value = toEncodeMap.remove(tag);
+    public void encode(ByteBuffer buf, Map<Integer, Object> values, CompositePlan plan) {
+        int encoded = 0;
+        for (int ordinal = 0; ordinal < plan.size(); ordinal++) {
+            int tag = plan.indexAt(ordinal);
+            Object value = values.get(tag);
 
             // TODO: allow encoding of 0 length TLV?
             if (value == null) {
+                ComponentDef def = plan.defAt(ordinal);
                 if (def.isMandatory()) {
                     if (failFast) {
                         throw new CodecException(format("Missing mandatory component %s", def));
@@ -152,41 +182,99 @@ public class TlvCompositeCodec implements CompositeCodec {
 
             encodeTag(buf, tag);
 
-            // TODO: use a ByteBuffer pool
-            ByteBuffer valueBuf = ByteBuffer.allocate(0x7FFF);
-            def.getCodec().encode(valueBuf, value);
-
-            encodeLength(buf, valueBuf.position());
+            // the value is encoded in place after a reserved length slot which is filled in afterwards
+            int lengthPos = buf.position();
+            int valuePos = lengthPos + lengthSize();
+            if (valuePos > buf.limit()) {
+                throw new BufferOverflowException();
+            }
+            buf.position(valuePos);
+            Codec codec = plan.codecAt(ordinal);
+            codec.encode(buf, value);
+            encodeLength(buf, lengthPos, valuePos, codec);
+            encoded++;
+        }
 
-            buf.put(valueBuf.array(), 0, valueBuf.position());
+        if (encoded < values.size()) {
+            Map<Integer, Object> unexpected = plan.unexpected(values);
+            if (unexpected.size() > 0) {
+                if (failFast) {
+                    throw new CodecException(format("Unexpected component(s) to encode %s", unexpected));
+                } else {
+                    LOG.warn("Unexpected component(s) to encode {}", unexpected);
+                }
+            }
         }
+    }
 
-        if (toEncodeMap.size() > 0) {
-            if (failFast) {
-                throw new CodecException(format("Unexpected component(s) to encode %s", toEncodeMap));
-            } else {
-                LOG.warn("Unexpected component(s) to encode {}", toEncodeMap);
+    @Override
+    public int encodedLength(Map<Integer, Object> values, CompositePlan plan) {
+        int length = 0;
+        for (int ordinal = 0; ordinal < plan.size(); ordinal++) {
+            int tag = plan.indexAt(ordinal);
+            Object value = values.get(tag);
+            if (value != null) {
+                int valueLength = plan.codecAt(ordinal).encodedLength(value);
+                length += tagSize(tag) + lengthSize(valueLength) + valueLength;
             }
         }
+        return length;
+    }
+
+    /**
+     * @param tag the tag to be encoded.
+     * @return the number of bytes of the encoded tag.
+     */
+    protected int tagSize(int tag) {
+        return 1;
     }
 
-    // TODO: properly encode using BER
-    private void encodeTag(ByteBuffer buf, Integer tag) {
+    protected void encodeTag(ByteBuffer buf, int tag) {
         if (tagEncoding == Encoding.BCD) {
-            buf.put(Bcd.encode(tag.toString()));
+            Bcd.encodeLong(buf, tag, 2, true, 0);
         } else {
-            buf.put(tag.byteValue());
+            buf.put((byte) tag);
         }
     }
 
-    // TODO: properly encode using BER
-    private void encodeLength(ByteBuffer buf, Integer length) {
+    /**
+     * @return the number of bytes reserved for the length before the value is encoded.
+     */
+    protected int lengthSize() {
+        return lengthEncoding == Encoding.BCD ? 1 : 2;
+    }
+
+    /**
+     * @param length the number of bytes of the value.
+     * @return the number of bytes of the encoded length once the value is encoded.
+     */
+    protected int lengthSize(int length) {
+        return lengthSize();
+    }
+
+    /**
+     * Fills in the length slot reserved before the value once the value has been encoded.
+     *
+     * @param buf       the buffer positioned at the end of the value, it should be left there (or after the value if
+     *                  it had to be moved).
+     * @param lengthPos the position of the reserved length slot.
+     * @param valuePos  the position of the value right after the reserved length slot.
+     * @param codec     the codec of the value.
+     */
+    protected void encodeLength(ByteBuffer buf, int lengthPos, int valuePos, Codec codec) {
+        int endPos = buf.position();
+        int length = endPos - valuePos;
+        if (codec.getEncoding() == Encoding.BCD) {
+            length *= 2;
+        }
+        buf.position(lengthPos);
         if (lengthEncoding == Encoding.BCD) {
-            buf.put(Bcd.encode(length.toString()));
+            Bcd.encodeLong(buf, length, 2, true, 0);
         } else {
             // for now 2 bytes - how we make this configurable for GB?
-            buf.put(Binary.encode(length, 2));
+            Binary.putLong(buf, length, 2);
         }
+        buf.position(endPos);
     }
 
     @Override
@@ -17,13 +17,18 @@
 package org.chiknrice.iso.codec;
 
 import org.chiknrice.iso.config.ComponentDef;
+import org.chiknrice.iso.util.EqualsBuilder;
+import org.chiknrice.iso.util.Hash;
 
+import java.io.Serializable;
 import java.nio.ByteBuffer;
 
 /**
  * @author <a href="mailto:chiknrice@gmail.com">Ian Bondoc</a>
  */
-public class VarCodec<T> implements Codec<T> {
+public class VarCodec<T> implements Codec<T>, Skippable, Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     private final Codec<Number> lengthCodec;
     private final Codec<T> codec;
@@ -37,7 +42,7 @@ public class VarCodec<T> implements Codec<T> {
     public T decode(ByteBuffer buf) {
         ByteBuffer valueBuf;
         if (lengthCodec != null) {
-            int varLength = lengthCodec.decode(buf).intValue();
+            int varLength = decodeLength(buf);
             int limit = codec.getEncoding() == ComponentDef.Encoding.BCD ? varLength / 2 + varLength % 2 : varLength;
             valueBuf = buf.slice();
             valueBuf.limit(limit);
@@ -50,30 +55,77 @@ public class VarCodec<T> implements Codec<T> {
     }
 
     @Override
-    public void encode(ByteBuffer buf, T value) {
-        ByteBuffer valueBuf;
+    public void skip(ByteBuffer buf) {
         if (lengthCodec != null) {
-            buf.mark();
-            // this is just to consume part of the buffer which would later be filled with correct length data
-            lengthCodec.encode(buf, 0);
-            valueBuf = buf.slice();
+            int varLength = decodeLength(buf);
+            int limit = codec.getEncoding() == ComponentDef.Encoding.BCD ? varLength / 2 + varLength % 2 : varLength;
+            buf.position(buf.position() + limit);
+        } else if (codec instanceof Skippable) {
+            ((Skippable) codec).skip(buf);
         } else {
-            valueBuf = buf;
+            codec.decode(buf);
+        }
+    }
+
+    @Override
+    public void encode(ByteBuffer buf, T value) {
+        if (lengthCodec == null) {
+            codec.encode(buf, value);
+            return;
         }
 
-        codec.encode(valueBuf, value);
+        // the length prefix is reserved and filled in once the value is encoded in place
+        int lengthPos = buf.position();
+        encodeLength(buf, 0);
+        int valuePos = buf.position();
 
-        if (lengthCodec != null) {
-            int endPos = buf.position() + valueBuf.position();
-            buf.reset();
-            int valueLength;
-            if (ComponentDef.Encoding.BINARY == codec.getEncoding()) {
-                valueLength = valueBuf.position();
-            } else {
-                valueLength = value.toString().length();
+        codec.encode(buf, value);
+
+        int endPos = buf.position();
+        buf.position(lengthPos);
+        encodeLength(buf, valueLength(buf, valuePos, endPos, value));
+        buf.position(endPos);
+    }
+
+    /**
+     * The length of a BCD value is the number of digits written excluding the pad nibble which a numeric codec reports
+     * itself. Any other BCD value with an odd number of digits is assumed to be left padded with a 0 nibble. Any other
+     * value is measured in bytes.
+     */
+    private int valueLength(ByteBuffer buf, int valuePos, int endPos, T value) {
+        int bytes = endPos - valuePos;
+        if (ComponentDef.Encoding.BCD == codec.getEncoding() && bytes > 0) {
+            if (codec instanceof NumericCodec) {
+                return ((NumericCodec) codec).encodedDigits((Number) value);
             }
-            lengthCodec.encode(buf, valueLength);
-            buf.position(endPos);
+            return (buf.get(valuePos) & 0xF0) == 0 ? bytes * 2 - 1 : bytes * 2;
+        } else {
+            return bytes;
+        }
+    }
+
+    @Override
+    public int encodedLength(T value) {
+        // the length prefix is fixed length so the value it holds doesn't matter
+        return (lengthCodec != null ? lengthCodec.encodedLength(0) : 0) + codec.encodedLength(value);
+    }
+
+    /**
+     * Numeric length codecs are called through their primitive methods to avoid boxing the length.
+     */
+    private int decodeLength(ByteBuffer buf) {
+        if (lengthCodec instanceof NumericCodec) {
+            return (int) ((NumericCodec) lengthCodec).decodeLong(buf);
+        } else {
+            return lengthCodec.decode(buf).intValue();
+        }
+    }
+
+    private void encodeLength(ByteBuffer buf, int length) {
+        if (lengthCodec instanceof NumericCodec) {
+            ((NumericCodec) lengthCodec).encodeLong(buf, length);
+        } else {
+            lengthCodec.encode(buf, length);
         }
     }
 
@@ -81,4 +133,23 @@ public class VarCodec<T> implements Codec<T> {
     public ComponentDef.Encoding getEncoding() {
         return codec.getEncoding();
     }
+
+    @Override
+    public int hashCode() {
+        return Hash.build(this, lengthCodec, codec);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == null) {
+            return false;
+        } else if (o == this) {
+            return true;
+        } else if (o.getClass() != getClass()) {
+            return false;
+        } else {
+            VarCodec<?> other = (VarCodec<?>) o;
+            return EqualsBuilder.newInstance(other.lengthCodec, lengthCodec).append(other.codec, codec).isEqual();
+        }
+    }
 }
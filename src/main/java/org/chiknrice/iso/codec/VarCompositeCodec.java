@@ -17,16 +17,17 @@
 package org.chiknrice.iso.codec;
 
 import org.chiknrice.iso.CodecException;
+import org.chiknrice.iso.ComponentMap;
 import org.chiknrice.iso.config.ComponentDef;
+import org.chiknrice.iso.config.CompositePlan;
 import org.chiknrice.iso.util.EqualsBuilder;
 import org.chiknrice.iso.util.Hash;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.Serializable;
 import java.nio.ByteBuffer;
 import java.util.Map;
-import java.util.SortedMap;
-import java.util.TreeMap;
 
 import static java.lang.String.format;
 
@@ -34,7 +35,9 @@ import static java.lang.String.format;
  * @author <a href="mailto:chiknrice@gmail.com">Ian Bondoc</a>
  */
 @SuppressWarnings("unchecked")
-public class VarCompositeCodec implements CompositeCodec {
+public class VarCompositeCodec implements CompositeCodec, Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     private static final Logger LOG = LoggerFactory.getLogger(VarCompositeCodec.class);
 
@@ -48,7 +51,21 @@ public class VarCompositeCodec implements CompositeCodec {
 
 
     @Override
-    public Map<Integer, Object> decode(ByteBuffer buf, SortedMap<Integer, ComponentDef> subComponentDefs) {
+    public Map<Integer, Object> decode(ByteBuffer buf, CompositePlan plan) {
+        return decode(buf, plan, false);
+    }
+
+    /**
+     * Decodes the composite optionally leaving the values of components which can be skipped in their encoded form
+     * (see {@link ComponentMap#setEncoded(int, Codec, ByteBuffer, int, int)}). When lazy, a component is only decoded
+     * when it's accessed so any failure decoding its value (or a missing mandatory value) is only reported then.
+     *
+     * @param buf  the buffer to decode from.
+     * @param plan the plan of the composite.
+     * @param lazy true if the values of components should be decoded only when accessed.
+     * @return the decoded components.
+     */
+    public ComponentMap decode(ByteBuffer buf, CompositePlan plan, boolean lazy) {
         BitmapCodec.Bitmap bitmap;
         try {
             bitmap = bitmapCodec != null ? bitmapCodec.decode(buf) : null;
@@ -56,62 +73,107 @@ public class VarCompositeCodec implements CompositeCodec {
             throw new CodecException("Failed to decode bitmap", e);
         }
 
-        Map<Integer, Object> values = new TreeMap<>();
+        ComponentMap values = new ComponentMap(plan.getLastDirectIndex());
 
-        Integer index = 1;
-        while (buf.hasRemaining()) {
-            try {
-                ComponentDef def = subComponentDefs.get(index);
-
-                if (def == null) {
-                    if (bitmap != null && bitmap.isSet(index) && !bitmap.isControlBit(index)) {
-                        throw new CodecException(format("Missing configuration for %d", index));
-                    } else if (subComponentDefs.lastKey() < index) {
-                        break;
-                    } else {
-                        continue;
-                    }
+        if (bitmap == null) {
+            for (int ordinal = 0; ordinal < plan.size() && buf.hasRemaining(); ordinal++) {
+                decodeComponent(buf, plan, ordinal, plan.indexAt(ordinal), values, lazy);
+            }
+        } else {
+            int words = bitmap.getWordCount();
+            for (int word = 0; word < words && buf.hasRemaining(); word++) {
+                long bits = bitmap.getWord(word) & ~bitmap.getControlBits(word);
+
+                long unconfigured = bits & ~plan.getConfiguredWord(word);
+                if (unconfigured != 0) {
+                    throw new CodecException(format("Missing configuration for %d",
+                            (word << 6) + Long.numberOfLeadingZeros(unconfigured) + 1));
                 }
 
-                if (bitmap != null && !bitmap.isSet(index)) {
-                    continue;
+                while (bits != 0 && buf.hasRemaining()) {
+                    int offset = Long.numberOfLeadingZeros(bits);
+                    int index = (word << 6) + offset + 1;
+                    decodeComponent(buf, plan, plan.ordinalOf(index), index, values, lazy);
+                    bits &= ~(Long.MIN_VALUE >>> offset);
                 }
+            }
 
-                Object value = def.getCodec().decode(buf);
-
-                if (value == null && def.isMandatory()) {
+            int planWords = plan.getWordCount();
+            for (int word = 0; word < planWords; word++) {
+                long missing = plan.getMandatoryWord(word) & ~bitmap.getWord(word);
+                while (missing != 0) {
+                    int offset = Long.numberOfLeadingZeros(missing);
+                    ComponentDef def = plan.getDef((word << 6) + offset + 1);
                     if (failFast) {
                         throw new CodecException(format("Missing mandatory component %s", def));
                     } else {
                         LOG.warn("Missing mandatory component {}", def);
                     }
+                    missing &= ~(Long.MIN_VALUE >>> offset);
                 }
-
-                values.put(index, value);
-            } finally {
-                index++;
             }
         }
 
         return values;
     }
 
+    private void decodeComponent(ByteBuffer buf, CompositePlan plan, int ordinal, int index, ComponentMap values,
+                                 boolean lazy) {
+        Codec<?> codec = plan.codecAt(ordinal);
+        if (lazy && codec instanceof Skippable) {
+            int offset = buf.position();
+            ((Skippable) codec).skip(buf);
+            values.setEncoded(index, codec, buf, offset, buf.position() - offset);
+            return;
+        }
+
+        Object value = codec.decode(buf);
+
+        if (value == null) {
+            ComponentDef def = plan.defAt(ordinal);
+            if (def.isMandatory()) {
+                if (failFast) {
+                    throw new CodecException(format("Missing mandatory component %s", def));
+                } else {
+                    LOG.warn("Missing mandatory component {}", def);
+                }
+            }
+            // a null value is left out so that it won't be present in the bitmap when encoded again
+            return;
+        }
+
+        values.set(index, value);
+    }
+
     @Override
-    public void encode(ByteBuffer buf, Map<Integer, Object> values, SortedMap<Integer, ComponentDef> subComponentDefs) {
+    public void encode(ByteBuffer buf, Map<Integer, Object> values, CompositePlan plan) {
         if (bitmapCodec != null) {
             try {
-                bitmapCodec.encode(buf, values.keySet());
+                if (values instanceof ComponentMap && !((ComponentMap) values).hasOverflow()) {
+                    bitmapCodec.encode(buf, ((ComponentMap) values).getPresenceMask());
+                } else {
+                    bitmapCodec.encode(buf, values.keySet());
+                }
             } catch (Exception e) {
                 throw new CodecException(format("Failed to encode bitmap for %s", this), e);
             }
         }
-        Map<Integer, Object> toEncodeMap = new TreeMap<>(values);
-        for (Map.Entry<Integer, ComponentDef> defEntry : subComponentDefs.entrySet()) {
-            Integer index = defEntry.getKey();
-            ComponentDef def = defEntry.getValue();
-            Object value = toEncodeMap.remove(index);
+
+        ComponentMap components = values instanceof ComponentMap ? (ComponentMap) values : null;
+        int encoded = 0;
+        for (int ordinal = 0; ordinal < plan.size(); ordinal++) {
+            int index = plan.indexAt(ordinal);
+
+            // untouched components of a decoded message are copied as is
+            if (components != null && components.copyEncoded(index, plan.codecAt(ordinal), buf)) {
+                encoded++;
+                continue;
+            }
+
+            Object value = values.get(index);
 
             if (value == null) {
+                ComponentDef def = plan.defAt(ordinal);
                 if (def.isMandatory()) {
                     if (failFast) {
                         throw new CodecException(format("Missing mandatory component %s", def));
@@ -123,15 +185,50 @@ public class VarCompositeCodec implements CompositeCodec {
             }
 
             try {
-                def.getCodec().encode(buf, value);
+                plan.codecAt(ordinal).encode(buf, value);
             } catch (Exception e) {
-                throw new CodecException(format("Failed to encode %s", def), e);
+                throw new CodecException(format("Failed to encode %s", plan.defAt(ordinal)), e);
+            }
+            encoded++;
+        }
+
+        if (encoded < values.size()) {
+            Map<Integer, Object> unexpected = plan.unexpected(values);
+            if (unexpected.size() > 0) {
+                throw new CodecException(format("Unexpected component(s) to encode %s", unexpected));
+            }
+        }
+    }
+
+    @Override
+    public int encodedLength(Map<Integer, Object> values, CompositePlan plan) {
+        ComponentMap components = values instanceof ComponentMap ? (ComponentMap) values : null;
+        int length = 0;
+        if (bitmapCodec != null) {
+            if (components != null && !components.hasOverflow()) {
+                length += bitmapCodec.encodedLength(components.getPresenceMask());
+            } else {
+                length += bitmapCodec.encodedLength(values.keySet());
             }
         }
 
-        if (toEncodeMap.size() > 0) {
-            throw new CodecException(format("Unexpected component(s) to encode %s", toEncodeMap));
+        for (int ordinal = 0; ordinal < plan.size(); ordinal++) {
+            int index = plan.indexAt(ordinal);
+            Codec codec = plan.codecAt(ordinal);
+
+            // untouched components of a decoded message would be copied as is
+            int encodedLength = components != null ? components.encodedLength(index, codec) : -1;
+            if (encodedLength >= 0) {
+                length += encodedLength;
+                continue;
+            }
+
+            Object value = values.get(index);
+            if (value != null) {
+                length += codec.encodedLength(value);
+            }
         }
+        return length;
     }
 
     @Override
@@ -20,6 +20,7 @@ import org.chiknrice.iso.codec.Codec;
 import org.chiknrice.iso.util.EqualsBuilder;
 import org.chiknrice.iso.util.Hash;
 
+import java.io.Serializable;
 import java.util.Map;
 import java.util.Map.Entry;
 
@@ -29,7 +30,9 @@ import static java.lang.String.format;
  * @author <a href="mailto:chiknrice@gmail.com">Ian Bondoc</a>
  */
 @SuppressWarnings("rawtypes")
-public class ComponentDef {
+public class ComponentDef implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     private final Codec codec;
     private final boolean mandatory;
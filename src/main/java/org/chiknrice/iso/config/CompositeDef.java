@@ -18,10 +18,13 @@ package org.chiknrice.iso.config;
 
 import org.chiknrice.iso.codec.Codec;
 import org.chiknrice.iso.codec.CompositeCodec;
+import org.chiknrice.iso.codec.FixedCompositeCodec;
+import org.chiknrice.iso.codec.Skippable;
 import org.chiknrice.iso.codec.VarCodec;
 import org.chiknrice.iso.util.EqualsBuilder;
 import org.chiknrice.iso.util.Hash;
 
+import java.io.Serializable;
 import java.nio.ByteBuffer;
 import java.util.Map;
 import java.util.SortedMap;
@@ -31,12 +34,16 @@ import java.util.SortedMap;
  */
 public class CompositeDef extends ComponentDef {
 
+    private static final long serialVersionUID = 1L;
+
     private final SortedMap<Integer, ComponentDef> subComponentDefs;
     private final CompositeCodec compositeCodec;
     private final Codec<Number> lengthCodec;
 
     private final Codec<Map<Integer, Object>> codec;
 
+    private transient volatile CompositePlan plan;
+
     public CompositeDef(final SortedMap<Integer, ComponentDef> subComponentDefs, final CompositeCodec compositeCodec, final boolean mandatory) {
         this(subComponentDefs, compositeCodec, mandatory, null);
     }
@@ -48,22 +55,7 @@ public class CompositeDef extends ComponentDef {
         this.compositeCodec = compositeCodec;
         this.lengthCodec = lengthCodec;
 
-        Codec<Map<Integer, Object>> codec = new Codec<Map<Integer, Object>>() {
-            @Override
-            public Map<Integer, Object> decode(ByteBuffer buf) {
-                return getCompositeCodec().decode(buf, getSubComponentDefs());
-            }
-
-            @Override
-            public void encode(ByteBuffer buf, Map<Integer, Object> value) {
-                getCompositeCodec().encode(buf, value, getSubComponentDefs());
-            }
-
-            @Override
-            public Encoding getEncoding() {
-                return Encoding.BINARY;
-            }
-        };
+        Codec<Map<Integer, Object>> codec = new CompositeValueCodec();
 
         if (lengthCodec != null) {
             codec = new VarCodec<>(lengthCodec, codec);
@@ -76,7 +68,53 @@ public class CompositeDef extends ComponentDef {
         }
     }
 
-    CompositeCodec getCompositeCodec() {
+    /**
+     * Delegates to the composite codec using the compiled plan. A fixed composite can be skipped by skipping each of
+     * its sub components while any other composite has to be decoded to know where it ends.
+     */
+    class CompositeValueCodec implements Codec<Map<Integer, Object>>, Skippable, Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public Map<Integer, Object> decode(ByteBuffer buf) {
+            return getCompositeCodec().decode(buf, getPlan());
+        }
+
+        @Override
+        public void encode(ByteBuffer buf, Map<Integer, Object> value) {
+            getCompositeCodec().encode(buf, value, getPlan());
+        }
+
+        @Override
+        public int encodedLength(Map<Integer, Object> value) {
+            return getCompositeCodec().encodedLength(value, getPlan());
+        }
+
+        @Override
+        public void skip(ByteBuffer buf) {
+            if (getCompositeCodec() instanceof FixedCompositeCodec) {
+                CompositePlan plan = getPlan();
+                for (int ordinal = 0; ordinal < plan.size(); ordinal++) {
+                    Codec<?> subCodec = plan.codecAt(ordinal);
+                    if (subCodec instanceof Skippable) {
+                        ((Skippable) subCodec).skip(buf);
+                    } else {
+                        subCodec.decode(buf);
+                    }
+                }
+            } else {
+                decode(buf);
+            }
+        }
+
+        @Override
+        public Encoding getEncoding() {
+            return Encoding.BINARY;
+        }
+    }
+
+    public CompositeCodec getCompositeCodec() {
         return compositeCodec;
     }
 
@@ -88,6 +126,34 @@ public class CompositeDef extends ComponentDef {
         return subComponentDefs;
     }
 
+    /**
+     * Returns the plan compiled from the sub component defs. The plan is compiled on first use if the def has not been
+     * compiled yet.
+     *
+     * @return the compiled plan.
+     */
+    public CompositePlan getPlan() {
+        CompositePlan plan = this.plan;
+        if (plan == null) {
+            plan = new CompositePlan(subComponentDefs);
+            this.plan = plan;
+        }
+        return plan;
+    }
+
+    /**
+     * Compiles the plan of this composite and all nested composites. This should be done once the sub component defs
+     * are final.
+     */
+    void compile() {
+        for (ComponentDef subComponentDef : subComponentDefs.values()) {
+            if (subComponentDef instanceof CompositeDef) {
+                ((CompositeDef) subComponentDef).compile();
+            }
+        }
+        plan = new CompositePlan(subComponentDefs);
+    }
+
     @Override
     public Codec<Map<Integer, Object>> getCodec() {
         return codec;
@@ -0,0 +1,236 @@
+/*
+ * Copyright (c) 2014 Ian Bondoc
+ *
+ * This file is part of Jen8583
+ *
+ * Jen8583 is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the License, or(at your option) any later version.
+ *
+ * Jen8583 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.chiknrice.iso.config;
+
+import org.chiknrice.iso.ComponentMap;
+import org.chiknrice.iso.codec.Codec;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * An immutable, array based view of the sub components of a composite which is what the composite codecs run when
+ * encoding/decoding. Sub components are kept in ascending order of their index (or tag) and are addressed either by
+ * their ordinal (position in that order) or by their index. When the indexes are small enough (which is always the case
+ * for fields and bitmap composites) an index to ordinal table and bit masks of the configured and mandatory indexes are
+ * also precomputed (otherwise the masks are computed on demand). Index n (starting with 1) of a mask is kept in word
+ * (n - 1) / 64 with the most significant bit first, the same order as an ISO8583 bitmap.
+ *
+ * @author <a href="mailto:chiknrice@gmail.com">Ian Bondoc</a>
+ */
+@SuppressWarnings("rawtypes")
+public final class CompositePlan {
+
+    /**
+     * The highest index which gets a direct lookup table and bit masks.
+     */
+    static final int MAX_DIRECT_INDEX = ComponentMap.MAX_DIRECT_KEY;
+
+    private final int[] indexes;
+    private final ComponentDef[] defs;
+    private final Codec[] codecs;
+    private final int[] ordinals;
+    private final long[] configuredMask;
+    private final long[] mandatoryMask;
+    private final int lastDirectIndex;
+
+    CompositePlan(SortedMap<Integer, ComponentDef> subComponentDefs) {
+        int size = subComponentDefs.size();
+        indexes = new int[size];
+        defs = new ComponentDef[size];
+        codecs = new Codec[size];
+
+        int ordinal = 0;
+        for (Entry<Integer, ComponentDef> defEntry : subComponentDefs.entrySet()) {
+            indexes[ordinal] = defEntry.getKey();
+            defs[ordinal] = defEntry.getValue();
+            codecs[ordinal] = defEntry.getValue().getCodec();
+            ordinal++;
+        }
+
+        int last = size - 1;
+        while (last >= 0 && indexes[last] > MAX_DIRECT_INDEX) {
+            last--;
+        }
+        lastDirectIndex = last >= 0 ? Math.max(indexes[last], 0) : 0;
+
+        if (size > 0 && indexes[0] >= 0 && indexes[size - 1] <= MAX_DIRECT_INDEX) {
+            int lastIndex = indexes[size - 1];
+            ordinals = new int[lastIndex + 1];
+            Arrays.fill(ordinals, -1);
+            configuredMask = new long[words(lastIndex)];
+            mandatoryMask = new long[configuredMask.length];
+            for (int i = 0; i < size; i++) {
+                int index = indexes[i];
+                ordinals[index] = i;
+                if (index > 0) {
+                    configuredMask[word(index)] |= bit(index);
+                    if (defs[i].isMandatory()) {
+                        mandatoryMask[word(index)] |= bit(index);
+                    }
+                }
+            }
+        } else {
+            ordinals = null;
+            configuredMask = null;
+            mandatoryMask = null;
+        }
+    }
+
+    /**
+     * @return the number of sub components.
+     */
+    public int size() {
+        return indexes.length;
+    }
+
+    /**
+     * @param ordinal the position of the sub component in ascending order of indexes.
+     * @return the index (or tag) of the sub component.
+     */
+    public int indexAt(int ordinal) {
+        return indexes[ordinal];
+    }
+
+    /**
+     * @param ordinal the position of the sub component in ascending order of indexes.
+     * @return the definition of the sub component.
+     */
+    public ComponentDef defAt(int ordinal) {
+        return defs[ordinal];
+    }
+
+    /**
+     * @param ordinal the position of the sub component in ascending order of indexes.
+     * @return the codec of the sub component.
+     */
+    public Codec codecAt(int ordinal) {
+        return codecs[ordinal];
+    }
+
+    /**
+     * @param index the index (or tag) of the sub component.
+     * @return the ordinal of the sub component or -1 if there's no sub component configured at the index.
+     */
+    public int ordinalOf(int index) {
+        if (ordinals != null) {
+            return index >= 0 && index < ordinals.length ? ordinals[index] : -1;
+        } else {
+            int ordinal = Arrays.binarySearch(indexes, index);
+            return ordinal >= 0 ? ordinal : -1;
+        }
+    }
+
+    /**
+     * @param index the index (or tag) of the sub component.
+     * @return the definition of the sub component or null if there's none configured at the index.
+     */
+    public ComponentDef getDef(int index) {
+        int ordinal = ordinalOf(index);
+        return ordinal >= 0 ? defs[ordinal] : null;
+    }
+
+    /**
+     * @return the highest index configured or 0 if there's none.
+     */
+    public int getLastIndex() {
+        return indexes.length > 0 ? indexes[indexes.length - 1] : 0;
+    }
+
+    /**
+     * @return the highest index up to {@value #MAX_DIRECT_INDEX} configured or 0 if there's none, the capacity of a
+     * {@link ComponentMap} which holds the sub components (higher indexes, e.g. EMV tags, are not
+     * kept in its slots).
+     */
+    public int getLastDirectIndex() {
+        return lastDirectIndex;
+    }
+
+    /**
+     * @return the number of 64 bit words needed to hold a mask of all the configured indexes.
+     */
+    public int getWordCount() {
+        return words(getLastIndex());
+    }
+
+    /**
+     * @param word the index of the 64 bit word starting with 0.
+     * @return the configured indexes within the word with index 1 being the most significant bit of word 0.
+     */
+    public long getConfiguredWord(int word) {
+        if (configuredMask != null) {
+            return word < configuredMask.length ? configuredMask[word] : 0L;
+        } else {
+            return scanWord(word, false);
+        }
+    }
+
+    /**
+     * @param word the index of the 64 bit word starting with 0.
+     * @return the mandatory indexes within the word with index 1 being the most significant bit of word 0.
+     */
+    public long getMandatoryWord(int word) {
+        if (mandatoryMask != null) {
+            return word < mandatoryMask.length ? mandatoryMask[word] : 0L;
+        } else {
+            return scanWord(word, true);
+        }
+    }
+
+    private long scanWord(int word, boolean mandatoryOnly) {
+        long bits = 0L;
+        for (int i = 0; i < 64; i++) {
+            int ordinal = ordinalOf((word << 6) + i + 1);
+            if (ordinal >= 0 && (!mandatoryOnly || defs[ordinal].isMandatory())) {
+                bits |= Long.MIN_VALUE >>> i;
+            }
+        }
+        return bits;
+    }
+
+    /**
+     * Collects the values which have no corresponding sub component. This is only used to report errors.
+     *
+     * @param values the values to check.
+     * @return the unexpected values keyed by their index.
+     */
+    public SortedMap<Integer, Object> unexpected(Map<Integer, Object> values) {
+        SortedMap<Integer, Object> unexpected = new TreeMap<>();
+        for (Entry<Integer, Object> value : values.entrySet()) {
+            if (ordinalOf(value.getKey()) < 0) {
+                unexpected.put(value.getKey(), value.getValue());
+            }
+        }
+        return unexpected;
+    }
+
+    static int words(int lastIndex) {
+        return lastIndex > 0 ? ((lastIndex - 1) >>> 6) + 1 : 0;
+    }
+
+    static int word(int index) {
+        return (index - 1) >>> 6;
+    }
+
+    static long bit(int index) {
+        return Long.MIN_VALUE >>> ((index - 1) & 63);
+    }
+
+}
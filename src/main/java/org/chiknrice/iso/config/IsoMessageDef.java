@@ -20,6 +20,7 @@ import org.chiknrice.iso.codec.*;
 import org.chiknrice.iso.codec.BitmapCodec.Bitmap;
 import org.chiknrice.iso.config.ComponentDef.Encoding;
 import org.chiknrice.iso.util.EqualsBuilder;
+import org.chiknrice.iso.util.SingleByteCharset;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
@@ -37,6 +38,8 @@ import javax.xml.validation.Schema;
 import javax.xml.validation.SchemaFactory;
 import javax.xml.validation.Validator;
 import java.io.InputStream;
+import java.io.Serializable;
+import java.nio.file.Path;
 import java.util.*;
 import java.util.Map.Entry;
 
@@ -45,7 +48,9 @@ import static java.lang.String.format;
 /**
  * @author <a href="mailto:chiknrice@gmail.com">Ian Bondoc</a>
  */
-public final class IsoMessageDef {
+public final class IsoMessageDef implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     private static final Logger LOG = LoggerFactory.getLogger(IsoMessageDef.class);
 
@@ -57,6 +62,20 @@ public final class IsoMessageDef {
         this.headerCodec = headerDef;
         this.mtiCodec = mtiCodec;
         this.fieldsCodec = Collections.unmodifiableMap(fieldsDef);
+
+        if (headerDef != null) {
+            headerDef.compile();
+        }
+        for (CompositeDef def : fieldsDef.values()) {
+            def.compile();
+        }
+    }
+
+    /**
+     * The compiled plans are not serialized, they are compiled again when deserialized.
+     */
+    private Object readResolve() {
+        return new IsoMessageDef(headerCodec, mtiCodec, fieldsCodec);
     }
 
     public CompositeDef getHeaderDef() {
@@ -79,6 +98,19 @@ public final class IsoMessageDef {
         return new ConfigBuilder(configXml).build();
     }
 
+    /**
+     * Loads the config from its snapshot in the directory, skipping XML parsing and validation, unless the snapshot is
+     * missing or stale in which case the config is built and its snapshot written.
+     *
+     * @param configXml   the name of the config XML resource.
+     * @param snapshotDir the directory of the snapshots.
+     * @return the definition.
+     * @see IsoMessageDefSnapshot
+     */
+    public static IsoMessageDef build(String configXml, Path snapshotDir) {
+        return IsoMessageDefSnapshot.load(configXml, snapshotDir);
+    }
+
     @SuppressWarnings("unchecked")
     private static class ConfigBuilder {
 
@@ -112,15 +144,19 @@ public final class IsoMessageDef {
         private static final String ATTR_EXTENDS = "extends";
         private static final String ATTR_TAG = "tag";
         private static final String ATTR_TAG_ENCODING = "tag-encoding";
+        private static final String ATTR_BER = "ber";
         private static final String ATTR_LENGTH_ENCODING = "length-encoding";
         private static final String ATTR_LENGTH = "length";
         private static final String ATTR_LENGTH_DIGITS = "length-digits";
         private static final String ATTR_MAX_LENGTH = "max-length";
         private static final String ATTR_TRIM = "trim";
         private static final String ATTR_JUSTIFIED = "justified";
+        private static final String ATTR_BCD_PAD = "bcd-pad";
+        private static final String ATTR_BCD_FILLER = "bcd-filler";
         private static final String ATTR_ENCODING = "encoding";
         private static final String ATTR_TIMEZONE = "timezone";
         private static final String ATTR_FORMAT = "format";
+        private static final String ATTR_CHARSET = "charset";
         private static final String ATTR_MANDATORY = "mandatory";
         private static final String ATTR_FAIL_FAST = "fail-fast";
         private static final String ATTR_TYPE = "type";
@@ -133,12 +169,15 @@ public final class IsoMessageDef {
         private static final String ATTR_CONST_LEFT = "LEFT";
         private static final String ATTR_CONST_RIGHT = "RIGHT";
         private static final String ATTR_CONST_SYSTEM = "SYSTEM";
+        private static final String ATTR_CONST_DATE = "DATE";
 
 
         private Encoding defaultLengthEncoding;
         private Encoding defaultTlvTagEncoding;
         private Encoding defaultTlvLengthEncoding;
+        private boolean defaultTlvBer;
         private boolean defaultTrim;
+        private SingleByteCharset defaultCharset = SingleByteCharset.ISO_8859_1;
         private boolean defaultLeftJustified;
         private Encoding defaultNumericEncoding;
         private Encoding defaultDateEncoding;
@@ -179,6 +218,8 @@ public final class IsoMessageDef {
                         LOG.info("Default tlv tag encoding: {}", defaultTlvTagEncoding);
                         defaultTlvLengthEncoding = Encoding.valueOf(getMandatoryAttribute(e, ATTR_LENGTH_ENCODING));
                         LOG.info("Default tlv length encoding: {}", defaultTlvLengthEncoding);
+                        defaultTlvBer = Boolean.valueOf(getOptionalAttribute(e, ATTR_BER));
+                        LOG.info("Default tlv ber: {}", defaultTlvBer);
                         break;
                     case ELEMENT_ALPHA:
                         defaultTrim = Boolean.valueOf(getMandatoryAttribute(e, ATTR_TRIM));
@@ -195,6 +236,11 @@ public final class IsoMessageDef {
                                 throw new ConfigException(format("Invalid value for justified: %s", stringJustify));
                         }
                         LOG.info("Default {} justified", defaultLeftJustified ? ATTR_CONST_LEFT : ATTR_CONST_RIGHT);
+                        String charset = getOptionalAttribute(e, ATTR_CHARSET);
+                        if (charset != null) {
+                            defaultCharset = SingleByteCharset.forName(charset);
+                        }
+                        LOG.info("Default charset: {}", defaultCharset);
                         break;
                     case ELEMENT_NUMERIC:
                         defaultNumericEncoding = Encoding.valueOf(getMandatoryAttribute(e, ATTR_ENCODING));
@@ -313,7 +359,7 @@ public final class IsoMessageDef {
             if (fields.size() > 0) {
                 fieldDefs = new TreeMap<>();
                 for (Element e : fields) {
-                    Integer tag = Integer.valueOf(getMandatoryAttribute(e, ATTR_TAG));
+                    Integer tag = getTag(e);
                     ComponentDef def = buildTlvComponent(e, getOrdinality(e));
                     if (fieldDefs.containsKey(tag)) {
                         throw new ConfigException(format("Duplicate component tag: %d", tag));
@@ -352,8 +398,7 @@ public final class IsoMessageDef {
             switch (e.getTagName()) {
                 case ELEMENT_COMPOSITE_TLV:
                     def = new CompositeDef(buildTlvComponents(e),
-                            new TlvCompositeCodec(getEncoding(e, ATTR_TAG_ENCODING, defaultTlvTagEncoding),
-                                    getEncoding(e, ATTR_LENGTH_ENCODING, defaultTlvLengthEncoding), defaultFailFast),
+                            buildTlvCodec(e),
                             mandatory);
                     break;
                 case ELEMENT_COMPOSITE:
@@ -363,11 +408,10 @@ public final class IsoMessageDef {
                             mandatory);
                     break;
                 case ELEMENT_ALPHA:
-                    def = new ComponentDef(new AlphaCodec(getTrim(e)), mandatory);
+                    def = new ComponentDef(new AlphaCodec(getTrim(e), null, null, getCharset(e)), mandatory);
                     break;
                 case ELEMENT_NUMERIC:
-                    def = new ComponentDef(new NumericCodec(getEncoding(e, ATTR_ENCODING, defaultNumericEncoding)),
-                            mandatory);
+                    def = new ComponentDef(buildNumericCodec(e, null), mandatory);
                     break;
                 case ELEMENT_BINARY:
                     def = new ComponentDef(new BinaryCodec(), mandatory);
@@ -401,29 +445,28 @@ public final class IsoMessageDef {
                     break;
                 case ELEMENT_COMPOSITE_TLV:
                     def = new CompositeDef(buildTlvComponents(e),
-                            new TlvCompositeCodec(getEncoding(e, ATTR_TAG_ENCODING, defaultTlvTagEncoding),
-                                    getEncoding(e, ATTR_LENGTH_ENCODING, defaultTlvLengthEncoding), defaultFailFast),
+                            buildTlvCodec(e),
                             mandatory,
                             buildVarLengthCodec(e));
                     break;
                 case ELEMENT_ALPHA:
                     def = new ComponentDef(new AlphaCodec(getTrim(e), getLeftJustified(e),
-                            Integer.valueOf(getMandatoryAttribute(e, ATTR_LENGTH))), mandatory);
+                            Integer.valueOf(getMandatoryAttribute(e, ATTR_LENGTH)), getCharset(e)), mandatory);
                     break;
                 case ELEMENT_ALPHA_VAR:
-                    def = new ComponentDef(new VarCodec(buildVarLengthCodec(e), new AlphaCodec(getTrim(e))), mandatory);
+                    def = new ComponentDef(new VarCodec(buildVarLengthCodec(e),
+                            new AlphaCodec(getTrim(e), null, null, getCharset(e))), mandatory);
                     break;
                 case ELEMENT_NUMERIC:
-                    def = new ComponentDef(new NumericCodec(getEncoding(e, ATTR_ENCODING, defaultNumericEncoding),
-                            Integer.valueOf(e.getAttribute(ATTR_LENGTH))), mandatory);
+                    def = new ComponentDef(buildNumericCodec(e, Integer.valueOf(e.getAttribute(ATTR_LENGTH))),
+                            mandatory);
                     break;
                 case ELEMENT_NUMERIC_VAR:
-                    def = new ComponentDef(new VarCodec(buildVarLengthCodec(e),
-                            new NumericCodec(getEncoding(e, ATTR_ENCODING, defaultNumericEncoding))), mandatory);
+                    def = new ComponentDef(new VarCodec(buildVarLengthCodec(e), buildNumericCodec(e, null)),
+                            mandatory);
                     break;
                 case ELEMENT_DATE:
-                    def = new ComponentDef(new DateTimeCodec(e.getAttribute(ATTR_FORMAT), getTimeZone(e),
-                            getEncoding(e, ATTR_ENCODING, defaultDateEncoding)), mandatory);
+                    def = new ComponentDef(buildDateCodec(e), mandatory);
                     break;
                 case ELEMENT_BINARY:
                     def = new ComponentDef(new BinaryCodec(Integer.valueOf(e.getAttribute(ATTR_LENGTH))), mandatory);
@@ -475,11 +518,44 @@ public final class IsoMessageDef {
                     Integer.valueOf(getMandatoryAttribute(e, ATTR_LENGTH_DIGITS)));
         }
 
+        private TlvCompositeCodec buildTlvCodec(Element e) {
+            String ber = getOptionalAttribute(e, ATTR_BER);
+            if (ber != null ? Boolean.valueOf(ber) : defaultTlvBer) {
+                return new BerTlvCompositeCodec(defaultFailFast);
+            } else {
+                return new TlvCompositeCodec(getEncoding(e, ATTR_TAG_ENCODING, defaultTlvTagEncoding),
+                        getEncoding(e, ATTR_LENGTH_ENCODING, defaultTlvLengthEncoding), defaultFailFast);
+            }
+        }
+
+        /**
+         * Tags can be configured in decimal or in hex (e.g. 0x9F26), tags of up to 4 bytes are kept as the int value of
+         * the tag bytes.
+         */
+        private Integer getTag(Element e) {
+            String value = getMandatoryAttribute(e, ATTR_TAG);
+            long tag;
+            try {
+                tag = Long.decode(value);
+            } catch (NumberFormatException ex) {
+                throw new ConfigException(format("Invalid tag %s", value), ex);
+            }
+            if (tag < 0 || tag > 0xFFFFFFFFL) {
+                throw new ConfigException(format("Invalid tag %s", value));
+            }
+            return (int) tag;
+        }
+
         private Boolean getTrim(Element e) {
             String value = getOptionalAttribute(e, ATTR_TRIM);
             return value != null ? ATTR_CONST_LEFT.equals(value) : defaultTrim;
         }
 
+        private SingleByteCharset getCharset(Element e) {
+            String value = getOptionalAttribute(e, ATTR_CHARSET);
+            return value != null ? SingleByteCharset.forName(value) : defaultCharset;
+        }
+
         private Boolean getLeftJustified(Element e) {
             String value = getOptionalAttribute(e, ATTR_JUSTIFIED);
             return value != null ? ATTR_CONST_LEFT.equals(value) : defaultLeftJustified;
@@ -490,6 +566,24 @@ public final class IsoMessageDef {
             return value != null ? TimeZone.getTimeZone(value) : defaultTimeZone;
         }
 
+        private NumericCodec buildNumericCodec(Element e, Integer fixedLength) {
+            String pad = getOptionalAttribute(e, ATTR_BCD_PAD);
+            String filler = getOptionalAttribute(e, ATTR_BCD_FILLER);
+            return new NumericCodec(getEncoding(e, ATTR_ENCODING, defaultNumericEncoding), fixedLength,
+                    pad == null || ATTR_CONST_LEFT.equals(pad), filler != null ? Integer.parseInt(filler, 16) : 0);
+        }
+
+        private Codec<?> buildDateCodec(Element e) {
+            DateTimeCodec codec = new DateTimeCodec(e.getAttribute(ATTR_FORMAT), getTimeZone(e),
+                    getEncoding(e, ATTR_ENCODING, defaultDateEncoding));
+            String type = getOptionalAttribute(e, ATTR_TYPE);
+            if (type == null || ATTR_CONST_DATE.equals(type)) {
+                return codec;
+            } else {
+                return new TemporalCodec(codec, TemporalCodec.Type.valueOf(type));
+            }
+        }
+
         private Encoding getEncoding(Element e, String attributeName, Encoding defaultEncoding) {
             String value = getOptionalAttribute(e, attributeName);
             return value != null ? Encoding.valueOf(value) : defaultEncoding;
@@ -636,8 +730,7 @@ public final class IsoMessageDef {
                 CompositeCodec newCompositeCodec;
                 Boolean newMandatory = getOrdinality(e);
                 if (ELEMENT_COMPOSITE_TLV.equals(e.getTagName())) {
-                    newCompositeCodec = new TlvCompositeCodec(getEncoding(e, ATTR_TAG_ENCODING, defaultTlvTagEncoding),
-                            getEncoding(e, ATTR_LENGTH_ENCODING, defaultTlvLengthEncoding), defaultFailFast);
+                    newCompositeCodec = buildTlvCodec(e);
                 } else {
                     Bitmap.Type bitmapType = getBitmapType(e);
                     BitmapCodec newBitmapCodec = bitmapType != null ? new BitmapCodec(bitmapType) : null;
@@ -662,7 +755,7 @@ public final class IsoMessageDef {
 
                 Integer index = getOptionalInteger(e, ATTR_INDEX);
                 if (index == null) {
-                    index = Integer.valueOf(getMandatoryAttribute(e, ATTR_TAG));
+                    index = getTag(e);
                 }
                 ComponentDef existingDef = components.get(index);
                 ComponentDef newDef = null;
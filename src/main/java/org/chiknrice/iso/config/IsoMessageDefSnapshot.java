@@ -0,0 +1,250 @@
+/*
+ * Copyright (c) 2014 Ian Bondoc
+ *
+ * This file is part of Jen8583
+ *
+ * Jen8583 is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the License, or(at your option) any later version.
+ *
+ * Jen8583 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.chiknrice.iso.config;
+
+import org.chiknrice.iso.ConfigException;
+import org.chiknrice.iso.codec.AlphaCodec;
+import org.chiknrice.iso.codec.BerTlvCompositeCodec;
+import org.chiknrice.iso.codec.BinaryCodec;
+import org.chiknrice.iso.codec.BitmapCodec;
+import org.chiknrice.iso.codec.CustomCodecAdapter;
+import org.chiknrice.iso.codec.DateTimeCodec;
+import org.chiknrice.iso.codec.FixedCompositeCodec;
+import org.chiknrice.iso.codec.NumericCodec;
+import org.chiknrice.iso.codec.TemporalCodec;
+import org.chiknrice.iso.codec.TlvCompositeCodec;
+import org.chiknrice.iso.codec.VarCodec;
+import org.chiknrice.iso.codec.VarCompositeCodec;
+import org.chiknrice.iso.util.Hex;
+import org.chiknrice.iso.util.SingleByteCharset;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.ObjectStreamField;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.TimeZone;
+
+import static java.lang.String.format;
+
+/**
+ * A serialized form of a built {@link IsoMessageDef} which loads without parsing the XML or validating it against the
+ * schema. A snapshot is stamped with a hash of the source XML (along with the snapshot version, the library version,
+ * the serialized field layout of the definition and codec classes and the system timezone which SYSTEM timezones
+ * resolve to) and is only used while the hash matches. As the library version isn't available when running from
+ * classes, a snapshot is also treated as stale when the field layout of any class it holds (including custom codecs)
+ * differs from the loaded class. Snapshots are deserialized so they should only be read from a trusted location. A
+ * config with a custom codec which is not Serializable can't have a snapshot and is always built from the XML.
+ *
+ * @author <a href="mailto:chiknrice@gmail.com">Ian Bondoc</a>
+ */
+public final class IsoMessageDefSnapshot {
+
+    private static final Logger LOG = LoggerFactory.getLogger(IsoMessageDefSnapshot.class);
+
+    /**
+     * Changed whenever the serialized form of the definition tree changes.
+     */
+    static final int VERSION = 1;
+
+    static final String SUFFIX = ".def";
+
+    /**
+     * The serialized field layout of the classes making up a definition built from XML.
+     */
+    static final String FINGERPRINT = fingerprint(IsoMessageDef.class, ComponentDef.class, CompositeDef.class,
+            CompositeDef.CompositeValueCodec.class, AlphaCodec.class, BinaryCodec.class, BitmapCodec.class,
+            CustomCodecAdapter.class, DateTimeCodec.class, FixedCompositeCodec.class, NumericCodec.class,
+            TemporalCodec.class, TlvCompositeCodec.class, BerTlvCompositeCodec.class, VarCodec.class,
+            VarCompositeCodec.class, SingleByteCharset.class);
+
+    private IsoMessageDefSnapshot() {
+    }
+
+    /**
+     * Loads the snapshot of the config from the directory or, if there's no snapshot or it's stale, builds the config
+     * from the XML and writes its snapshot for the next load.
+     *
+     * @param configXml   the name of the config XML resource.
+     * @param snapshotDir the directory of the snapshots.
+     * @return the definition.
+     */
+    public static IsoMessageDef load(String configXml, Path snapshotDir) {
+        byte[] xml = readResource(configXml);
+        String hash = hash(xml);
+        Path snapshot = snapshotDir.resolve(configXml.replaceAll("[^A-Za-z0-9._-]", "_") + SUFFIX);
+        if (Files.isRegularFile(snapshot)) {
+            try (InputStream in = new BufferedInputStream(Files.newInputStream(snapshot))) {
+                IsoMessageDef def = read(in, hash);
+                if (def != null) {
+                    LOG.info("Loaded snapshot {} of {}", snapshot, configXml);
+                    return def;
+                }
+                LOG.info("Snapshot {} of {} is stale", snapshot, configXml);
+            } catch (IOException | ClassNotFoundException | RuntimeException e) {
+                LOG.warn("Ignoring unreadable snapshot {} of {}", snapshot, configXml, e);
+            }
+        }
+        IsoMessageDef def = IsoMessageDef.build(new ByteArrayInputStream(xml));
+        try {
+            Files.createDirectories(snapshotDir);
+            Path temp = Files.createTempFile(snapshotDir, snapshot.getFileName().toString(), ".tmp");
+            try {
+                try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp))) {
+                    write(def, hash, out);
+                }
+                Files.move(temp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException e) {
+            LOG.warn("Failed to write snapshot {} of {}", snapshot, configXml, e);
+        }
+        return def;
+    }
+
+    /**
+     * Writes the snapshot of a definition.
+     *
+     * @param def  the definition.
+     * @param hash the hash of the source XML.
+     * @param out  the stream to write to.
+     * @throws IOException if writing fails or the definition has a codec which is not Serializable.
+     */
+    public static void write(IsoMessageDef def, String hash, OutputStream out) throws IOException {
+        ObjectOutputStream objectOut = new ObjectOutputStream(out);
+        objectOut.writeUTF(hash);
+        objectOut.writeObject(def);
+        objectOut.flush();
+    }
+
+    /**
+     * Reads the snapshot of a definition.
+     *
+     * @param in   the stream to read from.
+     * @param hash the hash of the source XML.
+     * @return the definition or null if the snapshot has a different hash or a class of the definition has changed.
+     * @throws IOException            if reading fails.
+     * @throws ClassNotFoundException if a class of the definition (e.g. a custom codec) is not available.
+     */
+    public static IsoMessageDef read(InputStream in, String hash) throws IOException, ClassNotFoundException {
+        ObjectInputStream objectIn = new LayoutCheckingInputStream(in);
+        if (!hash.equals(objectIn.readUTF())) {
+            return null;
+        }
+        try {
+            return (IsoMessageDef) objectIn.readObject();
+        } catch (InvalidClassException e) {
+            LOG.debug("Snapshot has a changed class", e);
+            return null;
+        }
+    }
+
+    /**
+     * @param xml the source XML.
+     * @return the hash a snapshot of the XML is stamped with.
+     */
+    public static String hash(byte[] xml) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        digest.update(xml);
+        String version = IsoMessageDef.class.getPackage().getImplementationVersion();
+        digest.update(format("|%d|%s|%s|%s", VERSION, version, FINGERPRINT, TimeZone.getDefault().getID())
+                .getBytes(StandardCharsets.UTF_8));
+        return Hex.encode(digest.digest());
+    }
+
+    private static String fingerprint(Class<?>... classes) {
+        StringBuilder fingerprint = new StringBuilder();
+        for (Class<?> cls : classes) {
+            fingerprint.append(layout(ObjectStreamClass.lookup(cls)));
+        }
+        return fingerprint.toString();
+    }
+
+    /**
+     * @param desc the class descriptor.
+     * @return the name, serialVersionUID and the name and type of each serialized field of the class.
+     */
+    static String layout(ObjectStreamClass desc) {
+        StringBuilder layout = new StringBuilder(desc.getName()).append(':').append(desc.getSerialVersionUID());
+        for (ObjectStreamField field : desc.getFields()) {
+            layout.append(field.isPrimitive() ? String.valueOf(field.getTypeCode()) : field.getTypeString());
+            layout.append(' ').append(field.getName()).append(';');
+        }
+        return layout.append('|').toString();
+    }
+
+    /**
+     * Rejects a class whose serialized fields differ from the fields written to the snapshot. Fields which are added or
+     * removed are otherwise silently defaulted or dropped when the serialVersionUID stays the same.
+     */
+    private static class LayoutCheckingInputStream extends ObjectInputStream {
+
+        LayoutCheckingInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            Class<?> cls = super.resolveClass(desc);
+            ObjectStreamClass local = ObjectStreamClass.lookup(cls);
+            if (local != null && !layout(local).equals(layout(desc))) {
+                throw new InvalidClassException(desc.getName(), "serialized fields have changed");
+            }
+            return cls;
+        }
+
+    }
+
+    private static byte[] readResource(String configXml) {
+        try (InputStream in = Thread.currentThread().getContextClassLoader().getResourceAsStream(configXml)) {
+            if (in == null) {
+                throw new ConfigException(format("Config %s not found", configXml));
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] chunk = new byte[8192];
+            int read;
+            while ((read = in.read(chunk)) >= 0) {
+                bytes.write(chunk, 0, read);
+            }
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new ConfigException(e.getMessage(), e);
+        }
+    }
+
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2014 Ian Bondoc
+ *
+ * This file is part of Jen8583
+ *
+ * Jen8583 is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the License, or(at your option) any later version.
+ *
+ * Jen8583 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.chiknrice.iso.net;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A connection registered with a {@link Reactor}. Messages can be sent from any thread, they are queued and written by
+ * the I/O thread with as few (gathering) writes as the channel allows.
+ *
+ * @author <a href="mailto:chiknrice@gmail.com">Ian Bondoc</a>
+ */
+final class Connection {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Connection.class);
+
+    private final Reactor reactor;
+    private final SocketChannel channel;
+    private final FrameReader reader;
+    private final FrameWriter writer;
+    private final Queue<ByteBuffer> outbound = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final Runnable flushTask = this::flush;
+    private volatile boolean closed;
+    private SelectionKey key;
+
+    Connection(Reactor reactor, SocketChannel channel, FrameReader reader, FrameWriter writer) {
+        this.reactor = reactor;
+        this.channel = channel;
+        this.reader = reader;
+        this.writer = writer;
+    }
+
+    void register(Selector selector) throws ClosedChannelException {
+        key = channel.register(selector, SelectionKey.OP_READ, this);
+    }
+
+    /**
+     * Queues an encoded message (without the length prefix) to be written, can be called from any thread.
+     *
+     * @return false if the connection is already closed.
+     */
+    boolean send(ByteBuffer message) {
+        if (closed) {
+            return false;
+        }
+        outbound.add(message);
+        if (flushScheduled.compareAndSet(false, true)) {
+            reactor.execute(flushTask);
+        }
+        return true;
+    }
+
+    void read() {
+        try {
+            if (reader.read(channel, frame -> reactor.received(this, frame)) < 0) {
+                close(new ClosedChannelException());
+            }
+        } catch (IOException | RuntimeException e) {
+            close(e);
+        }
+    }
+
+    void flush() {
+        flushScheduled.set(false);
+        if (key == null || !key.isValid()) {
+            return;
+        }
+        ByteBuffer message;
+        while ((message = outbound.poll()) != null) {
+            writer.add(message);
+        }
+        try {
+            boolean flushed = writer.flush(channel);
+            key.interestOps(flushed ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        } catch (IOException | RuntimeException e) {
+            close(e);
+        }
+    }
+
+    /**
+     * Closes the connection, only called in the I/O thread.
+     */
+    void close(Throwable cause) {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        LOG.debug("Closing connection {}", channel, cause);
+        if (key != null) {
+            key.cancel();
+        }
+        Reactor.closeQuietly(channel);
+        outbound.clear();
+        reactor.onClose(this, cause);
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+}
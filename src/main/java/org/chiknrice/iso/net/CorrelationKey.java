@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2014 Ian Bondoc
+ *
+ * This file is part of Jen8583
+ *
+ * Jen8583 is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the License, or(at your option) any later version.
+ *
+ * Jen8583 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.chiknrice.iso.net;
+
+import org.chiknrice.iso.IsoMessage;
+import org.chiknrice.iso.util.Hex;
+
+import java.util.Arrays;
+
+import static java.lang.String.format;
+
+/**
+ * The message class and the values of the fields which match a response to its request (e.g. STAN, RRN and terminal id,
+ * fields 11, 37 and 41). The message class (the version and class digits of the MTI) is part of the key so that a
+ * response only matches a request of its own class, e.g. a late 0210 never matches the 0400 sent to reverse its 0200
+ * even if the reversal has the same key fields. Numeric values are compared by their digits regardless of the Number
+ * type (a request set with a Long matches a response decoded as an Integer) and binary values by their content.
+ *
+ * @author <a href="mailto:chiknrice@gmail.com">Ian Bondoc</a>
+ */
+public final class CorrelationKey {
+
+    private final int messageClass;
+    private final Object[] values;
+
+    private CorrelationKey(int messageClass, Object[] values) {
+        this.messageClass = messageClass;
+        this.values = values;
+    }
+
+    /**
+     * @param message the request or response.
+     * @param fields  the indexes of the fields which make up the key.
+     * @return the key, a missing field is part of the key as null.
+     */
+    public static CorrelationKey of(IsoMessage message, int... fields) {
+        Object[] values = new Object[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            values[i] = normalize(message.getField(fields[i]));
+        }
+        return new CorrelationKey(message.getMti() / 100, values);
+    }
+
+    private static Object normalize(Object value) {
+        if (value instanceof Number) {
+            return value.toString();
+        } else if (value instanceof byte[]) {
+            return Hex.encode((byte[]) value);
+        } else {
+            return value;
+        }
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * messageClass + Arrays.hashCode(values);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == null) {
+            return false;
+        } else if (o == this) {
+            return true;
+        } else if (o.getClass() != getClass()) {
+            return false;
+        } else {
+            CorrelationKey other = (CorrelationKey) o;
+            return other.messageClass == messageClass && Arrays.equals(values, other.values);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return format("%02dxx%s", messageClass, Arrays.toString(values));
+    }
+
+}
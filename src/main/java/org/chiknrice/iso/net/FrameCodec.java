@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2014 Ian Bondoc
+ *
+ * This file is part of Jen8583
+ *
+ * Jen8583 is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the License, or(at your option) any later version.
+ *
+ * Jen8583 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.chiknrice.iso.net;
+
+import org.chiknrice.iso.CodecException;
+import org.chiknrice.iso.ConfigException;
+import org.chiknrice.iso.codec.NumericCodec;
+import org.chiknrice.iso.config.ComponentDef.Encoding;
+import org.chiknrice.iso.util.EqualsBuilder;
+import org.chiknrice.iso.util.Hash;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+import static java.lang.String.format;
+
+/**
+ * Defines how ISO messages are framed on a stream by a length field. The length field is either a prefix in front of
+ * the message (e.g. 2 byte binary, 2 byte BCD or 4 char ascii) which is not part of the message, or is embedded in the
+ * header of the message at a given offset. The value of the length field is the number of bytes which follow it less
+ * the length adjustment (e.g. a length which also counts the length field itself has an adjustment of -2 if the field
+ * is 2 bytes). Like the codecs, a FrameCodec is stateless and can be shared across connections.
+ *
+ * @author <a href="mailto:chiknrice@gmail.com">Ian Bondoc</a>
+ * @see FrameReader
+ * @see FrameWriter
+ */
+public class FrameCodec {
+
+    private final NumericCodec lengthCodec;
+    private final int lengthSize;
+    private final int lengthOffset;
+    private final int lengthAdjustment;
+    private final boolean prefix;
+
+    /**
+     * A length prefix which is not part of the message and only counts the message.
+     *
+     * @param lengthEncoding the encoding of the length prefix.
+     * @param lengthLength   the number of bytes (BINARY) or digits (CHAR and BCD) of the length prefix.
+     */
+    public FrameCodec(Encoding lengthEncoding, int lengthLength) {
+        this(lengthEncoding, lengthLength, 0, 0, true);
+    }
+
+    /**
+     * @param lengthEncoding   the encoding of the length field.
+     * @param lengthLength     the number of bytes (BINARY) or digits (CHAR and BCD) of the length field.
+     * @param lengthOffset     the number of bytes before the length field, only a length embedded in the message can
+     *                         have an offset.
+     * @param lengthAdjustment added to the value of the length field to get the number of bytes which follow it.
+     * @param prefix           true if the length field is a prefix which is not part of the message, false if it's
+     *                         embedded in the header of the message.
+     */
+    public FrameCodec(Encoding lengthEncoding, int lengthLength, int lengthOffset, int lengthAdjustment,
+                      boolean prefix) {
+        if (lengthLength < 1) {
+            throw new ConfigException(format("Invalid length field length %d", lengthLength));
+        }
+        if (lengthOffset < 0 || (prefix && lengthOffset > 0)) {
+            throw new ConfigException(format("Invalid length field offset %d", lengthOffset));
+        }
+        this.lengthCodec = new NumericCodec(lengthEncoding, lengthLength);
+        this.lengthSize = lengthCodec.encodedLength(0);
+        this.lengthOffset = lengthOffset;
+        this.lengthAdjustment = lengthAdjustment;
+        this.prefix = prefix;
+    }
+
+    /**
+     * Reads the length field of the frame starting at the position of the buffer without moving its position.
+     *
+     * @param buf the buffer positioned at the start of a frame.
+     * @return the number of bytes of the whole frame (including a length prefix) or -1 if the buffer doesn't have the
+     * length field yet.
+     */
+    public int frameLength(ByteBuffer buf) {
+        int start = buf.position();
+        int lengthEnd = lengthFieldEnd();
+        if (buf.remaining() < lengthEnd) {
+            return -1;
+        }
+        long length;
+        buf.position(start + lengthOffset);
+        try {
+            length = lengthCodec.decodeLong(buf) + lengthAdjustment;
+        } finally {
+            buf.position(start);
+        }
+        if (length < 0 || length > Integer.MAX_VALUE - lengthEnd) {
+            throw new CodecException(format("Invalid frame length %d", length - lengthAdjustment));
+        }
+        return lengthEnd + (int) length;
+    }
+
+    /**
+     * Decodes the next frame if the buffer has all of it. The message is returned as a slice of the buffer (no bytes
+     * are copied) so it's only valid until the buffer is reused.
+     *
+     * @param buf the buffer positioned at the start of a frame.
+     * @return the message (without the length prefix) or null if the frame is incomplete in which case the position of
+     * the buffer is left as is.
+     */
+    public ByteBuffer decode(ByteBuffer buf) {
+        int frameLength = frameLength(buf);
+        if (frameLength < 0 || buf.remaining() < frameLength) {
+            return null;
+        }
+        int start = buf.position();
+        int limit = buf.limit();
+        buf.position(prefix ? start + lengthSize : start);
+        buf.limit(start + frameLength);
+        ByteBuffer message = buf.slice();
+        buf.limit(limit);
+        buf.position(start + frameLength);
+        return message;
+    }
+
+    /**
+     * Encodes the length prefix of the message to the buffer or, if the length is embedded, fills in the length field
+     * of the message in place.
+     *
+     * @param dst     the buffer to write the length prefix to, not used if the length is embedded.
+     * @param message the encoded message from its position up to its limit, its position is not moved.
+     */
+    public void encodeLength(ByteBuffer dst, ByteBuffer message) {
+        if (prefix) {
+            lengthCodec.encodeLong(dst, message.remaining() - lengthAdjustment);
+        } else {
+            int start = message.position();
+            if (message.remaining() < lengthOffset + lengthSize) {
+                throw new BufferOverflowException();
+            }
+            message.position(start + lengthOffset);
+            try {
+                lengthCodec.encodeLong(message, message.limit() - start - lengthOffset - lengthSize - lengthAdjustment);
+            } finally {
+                message.position(start);
+            }
+        }
+    }
+
+    /**
+     * @return the number of bytes of the length prefix or 0 if the length is embedded in the message.
+     */
+    public int prefixLength() {
+        return prefix ? lengthSize : 0;
+    }
+
+    /**
+     * @return the number of bytes from the start of a frame up to the end of the length field, the least a read buffer
+     * has to hold to know the length of a frame.
+     */
+    public int lengthFieldEnd() {
+        return lengthOffset + lengthSize;
+    }
+
+    @Override
+    public int hashCode() {
+        return Hash.build(this, lengthCodec, lengthOffset, lengthAdjustment, prefix);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == null) {
+            return false;
+        } else if (o == this) {
+            return true;
+        } else if (o.getClass() != getClass()) {
+            return false;
+        } else {
+            FrameCodec other = (FrameCodec) o;
+            return EqualsBuilder.newInstance(other.lengthCodec, lengthCodec).append(other.lengthOffset, lengthOffset)
+                    .append(other.lengthAdjustment, lengthAdjustment).append(other.prefix, prefix).isEqual();
+        }
+    }
+
+}
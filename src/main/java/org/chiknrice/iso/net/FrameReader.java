@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2014 Ian Bondoc
+ *
+ * This file is part of Jen8583
+ *
+ * Jen8583 is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the License, or(at your option) any later version.
+ *
+ * Jen8583 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.chiknrice.iso.net;
+
+import org.chiknrice.iso.CodecException;
+import org.chiknrice.iso.ConfigException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.function.Consumer;
+
+import static java.lang.String.format;
+
+/**
+ * Reads length framed messages from a (blocking or non-blocking) channel. Each read can have any number of bytes, a
+ * partial frame is kept until the rest of it arrives and all the complete frames in a read are handed over in order.
+ * Frames are handed over as slices of the read buffer (no bytes are copied) which can be decoded directly by an
+ * {@link org.chiknrice.iso.IsoMessageCodec}. A slice is only valid until the handler returns, a message decoded lazily
+ * from it needs to be fully accessed (or the frame copied) before then. A FrameReader keeps the state of a single
+ * channel and is not thread safe.
+ *
+ * @author <a href="mailto:chiknrice@gmail.com">Ian Bondoc</a>
+ */
+public class FrameReader {
+
+    private final FrameCodec frameCodec;
+    private final int maxFrameLength;
+    private final boolean direct;
+    private ByteBuffer buf;
+
+    /**
+     * @param frameCodec     the framing of the messages.
+     * @param maxFrameLength the longest frame accepted (including a length prefix), also the most the read buffer grows
+     *                       to.
+     * @param bufferSize     the initial size of the read buffer, at least big enough for the length field (including
+     *                       any bytes before it).
+     * @param direct         true if the read buffer should be a direct buffer.
+     */
+    public FrameReader(FrameCodec frameCodec, int maxFrameLength, int bufferSize, boolean direct) {
+        if (bufferSize < Math.max(1, frameCodec.lengthFieldEnd()) || bufferSize > maxFrameLength) {
+            throw new ConfigException(format("Invalid buffer size %d", bufferSize));
+        }
+        this.frameCodec = frameCodec;
+        this.maxFrameLength = maxFrameLength;
+        this.direct = direct;
+        this.buf = direct ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize);
+    }
+
+    /**
+     * Reads once from the channel and hands over all the frames completed by the read.
+     *
+     * @param channel the channel to read from.
+     * @param handler called with each complete message (without the length prefix).
+     * @return the number of bytes read, possibly 0 for a non-blocking channel, or -1 if the channel has reached the end
+     * of stream.
+     * @throws IOException    if reading from the channel fails.
+     * @throws CodecException if a frame has an invalid length or is longer than the max frame length, the channel can't
+     * be read from any further.
+     */
+    public int read(ReadableByteChannel channel, Consumer<ByteBuffer> handler) throws IOException {
+        int read = channel.read(buf);
+        buf.flip();
+        try {
+            ByteBuffer message;
+            while ((message = frameCodec.decode(buf)) != null) {
+                handler.accept(message);
+            }
+            int frameLength = frameCodec.frameLength(buf);
+            if (frameLength > maxFrameLength) {
+                throw new CodecException(format("Frame length %d exceeds %d", frameLength, maxFrameLength));
+            } else if (frameLength > buf.capacity()) {
+                grow(frameLength);
+                return read;
+            }
+        } finally {
+            buf.compact();
+        }
+        return read;
+    }
+
+    private void grow(int frameLength) {
+        int capacity = Math.min(Math.max(frameLength, buf.capacity() * 2), maxFrameLength);
+        ByteBuffer grown = direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+        grown.put(buf);
+        grown.flip();
+        buf = grown;
+    }
+
+    /**
+     * @return the number of bytes read which are not yet part of a complete frame.
+     */
+    public int pending() {
+        return buf.position();
+    }
+
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) 2014 Ian Bondoc
+ *
+ * This file is part of Jen8583
+ *
+ * Jen8583 is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the License, or(at your option) any later version.
+ *
+ * Jen8583 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.chiknrice.iso.net;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+/**
+ * Writes length framed messages to a (blocking or non-blocking) channel. Messages are queued with their length prefix
+ * and all the queued buffers are written with a single gathering write so the prefix and the message are never copied
+ * together. A FrameWriter keeps the state of a single channel and is not thread safe.
+ *
+ * @author <a href="mailto:chiknrice@gmail.com">Ian Bondoc</a>
+ */
+public class FrameWriter {
+
+    private final FrameCodec frameCodec;
+    private final Deque<ByteBuffer> pending = new ArrayDeque<>();
+    private ByteBuffer[] gather = new ByteBuffer[16];
+
+    public FrameWriter(FrameCodec frameCodec) {
+        this.frameCodec = frameCodec;
+    }
+
+    /**
+     * Queues a message to be written by the next flush. The buffer is written from its position up to its limit and
+     * should not be modified until it's written. If the length is embedded in the message, the length field is filled
+     * in place.
+     *
+     * @param message the encoded message (without the length prefix).
+     */
+    public void add(ByteBuffer message) {
+        int prefixLength = frameCodec.prefixLength();
+        if (prefixLength > 0) {
+            ByteBuffer prefix = ByteBuffer.allocate(prefixLength);
+            frameCodec.encodeLength(prefix, message);
+            prefix.flip();
+            pending.add(prefix);
+        } else {
+            frameCodec.encodeLength(null, message);
+        }
+        pending.add(message);
+    }
+
+    /**
+     * Writes as much of the queued frames as the channel accepts. A blocking channel writes everything while a
+     * non-blocking channel may need to be flushed again when it's writable.
+     *
+     * @param channel the channel to write to.
+     * @return true if all the queued frames have been written.
+     * @throws IOException if writing to the channel fails.
+     */
+    public boolean flush(GatheringByteChannel channel) throws IOException {
+        while (!pending.isEmpty()) {
+            int size = pending.size();
+            if (gather.length < size) {
+                gather = new ByteBuffer[Math.max(size, gather.length * 2)];
+            }
+            ByteBuffer[] buffers = pending.toArray(gather);
+            long written = channel.write(buffers, 0, size);
+            Arrays.fill(gather, 0, size, null);
+            while (!pending.isEmpty() && !pending.peekFirst().hasRemaining()) {
+                pending.removeFirst();
+            }
+            if (written == 0 && !pending.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if there are no frames waiting to be written.
+     */
+    public boolean isEmpty() {
+        return pending.isEmpty();
+    }
+
+}
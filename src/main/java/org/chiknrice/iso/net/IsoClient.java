@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2014 Ian Bondoc
+ *
+ * This file is part of Jen8583
+ *
+ * Jen8583 is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the License, or(at your option) any later version.
+ *
+ * Jen8583 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.chiknrice.iso.net;
+
+import org.chiknrice.iso.ConfigException;
+import org.chiknrice.iso.IsoMessage;
+import org.chiknrice.iso.IsoMessageCodec;
+import org.chiknrice.iso.util.TimeoutWheel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static java.lang.String.format;
+
+/**
+ * Sends requests over a single persistent connection and matches the responses by the values of key fields (e.g. STAN,
+ * RRN and terminal id) so any number of requests can be in flight at the same time and responses can arrive in any
+ * order. The connection is served by a single I/O thread while requests can be sent from any thread. Requests in flight
+ * are tracked in a {@link TimeoutWheel} and the client can be set to send a reversal for each request which times out.
+ *
+ * @author <a href="mailto:chiknrice@gmail.com">Ian Bondoc</a>
+ */
+public class IsoClient extends Reactor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(IsoClient.class);
+
+    static final long TICK_MILLIS = 10;
+    static final int WHEEL_SIZE = 512;
+
+    private static final class Request {
+        private final CorrelationKey key;
+        private final IsoMessage message;
+        private final long timeout;
+        private final TimeUnit unit;
+        private final CompletableFuture<IsoMessage> response = new CompletableFuture<>();
+
+        private Request(CorrelationKey key, IsoMessage message, long timeout, TimeUnit unit) {
+            this.key = key;
+            this.message = message;
+            this.timeout = timeout;
+            this.unit = unit;
+        }
+    }
+
+    private final int[] keyFields;
+    private final TimeoutWheel<CorrelationKey, Request> inFlight;
+    private volatile Connection connection;
+    private volatile Function<IsoMessage, IsoMessage> reversalFactory;
+    private volatile long reversalTimeout;
+    private volatile TimeUnit reversalUnit;
+
+    /**
+     * @param codec      the codec of the requests and responses.
+     * @param frameCodec the framing of the messages on the connection.
+     * @param keyFields  the indexes of the fields which match a response to its request.
+     */
+    public IsoClient(IsoMessageCodec codec, FrameCodec frameCodec, int... keyFields) {
+        super("iso-client", codec, frameCodec);
+        if (keyFields.length == 0) {
+            throw new ConfigException("Key fields are required to match responses");
+        }
+        this.keyFields = keyFields.clone();
+        this.inFlight = new TimeoutWheel<>("iso-client-timeouts", TICK_MILLIS, TimeUnit.MILLISECONDS, WHEEL_SIZE,
+                this::expired);
+    }
+
+    /**
+     * Sends a reversal for each request which times out (e.g. a {@link ReversalFactory}). The reversal is sent like any
+     * other request and its future response is available from the {@link ResponseTimeoutException} of the request.
+     *
+     * @param reversalFactory builds the reversal of a request or returns null if the request is not reversed, null to
+     *                        stop sending reversals.
+     * @param timeout         how long to wait for the response to a reversal.
+     * @param unit            the unit of the timeout.
+     */
+    public void setReversals(Function<IsoMessage, IsoMessage> reversalFactory, long timeout, TimeUnit unit) {
+        this.reversalTimeout = timeout;
+        this.reversalUnit = unit;
+        this.reversalFactory = reversalFactory;
+    }
+
+    /**
+     * Connects to the server, blocking until the connection is established.
+     *
+     * @param address the address of the server.
+     * @throws IOException if the connection fails.
+     */
+    public void connect(SocketAddress address) throws IOException {
+        if (connection != null && !connection.isClosed()) {
+            throw new IllegalStateException("Already connected");
+        }
+        SocketChannel channel = SocketChannel.open(address);
+        try {
+            connection = register(channel);
+        } catch (IOException e) {
+            closeQuietly(channel);
+            throw e;
+        }
+    }
+
+    /**
+     * Sends a request and returns the future response. The future fails with a {@link ResponseTimeoutException} if the
+     * response doesn't arrive in time, with a {@link ClosedChannelException} (or the cause of the failure) if the
+     * connection is closed before then and with an {@link IllegalStateException} if a request with the same key is
+     * already in flight. Cancelling the future stops waiting for the response. Non-async dependent actions of the
+     * future run in the I/O thread (or the timeout thread) and should not block.
+     *
+     * @param request the request.
+     * @param timeout how long to wait for the response.
+     * @param unit    the unit of the timeout.
+     * @return the future response.
+     */
+    public CompletableFuture<IsoMessage> send(IsoMessage request, long timeout, TimeUnit unit) {
+        Request pending = new Request(CorrelationKey.of(request, keyFields), request, timeout, unit);
+        CompletableFuture<IsoMessage> response = pending.response;
+        ByteBuffer encoded;
+        try {
+            encoded = ByteBuffer.wrap(codec.encode(request));
+        } catch (RuntimeException e) {
+            response.completeExceptionally(e);
+            return response;
+        }
+        if (!inFlight.schedule(pending.key, pending, timeout, unit)) {
+            response.completeExceptionally(new IllegalStateException(format("Request %s already in flight",
+                    pending.key)));
+            return response;
+        }
+        response.whenComplete((r, e) -> inFlight.cancel(pending.key, pending));
+        Connection connection = this.connection;
+        if (connection == null || !connection.send(encoded)) {
+            response.completeExceptionally(new ClosedChannelException());
+        }
+        return response;
+    }
+
+    private void expired(List<Request> requests) {
+        Function<IsoMessage, IsoMessage> reversalFactory = this.reversalFactory;
+        for (Request request : requests) {
+            CompletableFuture<IsoMessage> reversalResponse = null;
+            if (reversalFactory != null) {
+                IsoMessage reversal = reversalFactory.apply(request.message);
+                if (reversal != null) {
+                    reversalResponse = send(reversal, reversalTimeout, reversalUnit);
+                }
+            }
+            request.response.completeExceptionally(new ResponseTimeoutException(format("No response to %s in %d %s",
+                    request.key, request.timeout, request.unit), reversalResponse));
+        }
+    }
+
+    /**
+     * @return the number of requests waiting for a response.
+     */
+    public int inFlight() {
+        return inFlight.size();
+    }
+
+    @Override
+    void onMessage(Connection connection, IsoMessage message) {
+        Request request = inFlight.cancel(CorrelationKey.of(message, keyFields));
+        if (request != null) {
+            request.response.complete(message);
+        } else {
+            LOG.warn("Dropping unmatched message {}", message);
+        }
+    }
+
+    @Override
+    void onClose(Connection connection, Throwable cause) {
+        for (Request request : inFlight.cancelAll()) {
+            request.response.completeExceptionally(cause);
+        }
+    }
+
+    /**
+     * Closes the connection, requests still in flight fail.
+     */
+    @Override
+    public void close() {
+        super.close();
+        inFlight.close();
+    }
+
+}
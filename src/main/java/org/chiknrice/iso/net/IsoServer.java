@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2014 Ian Bondoc
+ *
+ * This file is part of Jen8583
+ *
+ * Jen8583 is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the License, or(at your option) any later version.
+ *
+ * Jen8583 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.chiknrice.iso.net;
+
+import org.chiknrice.iso.IsoMessage;
+import org.chiknrice.iso.IsoMessageCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
+
+/**
+ * Accepts connections and hands each request to a handler which completes the response asynchronously so a connection
+ * can have any number of requests in flight and responses are written in the order they complete. Connections are
+ * served by a single I/O thread, handlers are called in the I/O thread and should hand off any blocking work.
+ *
+ * @author <a href="mailto:chiknrice@gmail.com">Ian Bondoc</a>
+ */
+public class IsoServer extends Reactor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(IsoServer.class);
+
+    private final Function<IsoMessage, CompletionStage<IsoMessage>> handler;
+
+    /**
+     * @param codec      the codec of the requests and responses.
+     * @param frameCodec the framing of the messages on the connections.
+     * @param handler    returns the future response to a request, the response can be null if there is none.
+     */
+    public IsoServer(IsoMessageCodec codec, FrameCodec frameCodec,
+                     Function<IsoMessage, CompletionStage<IsoMessage>> handler) {
+        super("iso-server", codec, frameCodec);
+        this.handler = handler;
+    }
+
+    /**
+     * Starts accepting connections.
+     *
+     * @param address the address to listen to, port 0 picks an available port.
+     * @return the address listened to.
+     * @throws IOException if the address can't be bound.
+     */
+    public InetSocketAddress bind(SocketAddress address) throws IOException {
+        ServerSocketChannel channel = ServerSocketChannel.open();
+        try {
+            channel.bind(address);
+            listen(channel);
+        } catch (IOException e) {
+            closeQuietly(channel);
+            throw e;
+        }
+        return (InetSocketAddress) channel.getLocalAddress();
+    }
+
+    @Override
+    void onMessage(Connection connection, IsoMessage request) {
+        CompletionStage<IsoMessage> response;
+        try {
+            response = handler.apply(request);
+        } catch (RuntimeException e) {
+            LOG.error("Failed to handle {}", request, e);
+            return;
+        }
+        response.whenComplete((m, e) -> {
+            if (e != null) {
+                LOG.error("Failed to handle {}", request, e);
+            } else if (m != null) {
+                ByteBuffer encoded;
+                try {
+                    encoded = ByteBuffer.wrap(codec.encode(m));
+                } catch (RuntimeException ex) {
+                    LOG.error("Failed to encode {}", m, ex);
+                    return;
+                }
+                if (!connection.send(encoded)) {
+                    LOG.warn("Connection closed before sending {}", m);
+                }
+            }
+        });
+    }
+
+    @Override
+    void onClose(Connection connection, Throwable cause) {
+    }
+
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright (c) 2014 Ian Bondoc
+ *
+ * This file is part of Jen8583
+ *
+ * Jen8583 is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the License, or(at your option) any later version.
+ *
+ * Jen8583 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.chiknrice.iso.net;
+
+import org.chiknrice.iso.IsoMessage;
+import org.chiknrice.iso.IsoMessageCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A single I/O thread which runs a Selector over the connections of a client or server. All the channel operations run
+ * in the I/O thread, other threads hand over work (e.g. registering a channel or flushing a connection) as tasks.
+ *
+ * @author <a href="mailto:chiknrice@gmail.com">Ian Bondoc</a>
+ */
+abstract class Reactor implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Reactor.class);
+
+    static final int READ_BUFFER_SIZE = 8192;
+
+    final IsoMessageCodec codec;
+    final FrameCodec frameCodec;
+    private final String name;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private volatile Selector selector;
+    private volatile Thread thread;
+    private volatile boolean running = true;
+
+    Reactor(String name, IsoMessageCodec codec, FrameCodec frameCodec) {
+        this.name = name;
+        this.codec = codec;
+        this.frameCodec = frameCodec;
+    }
+
+    /**
+     * Opens the selector and starts the I/O thread on the first channel registered so that nothing is left open if the
+     * constructor of a subclass fails.
+     */
+    private synchronized void start() throws IOException {
+        if (!running) {
+            throw new ClosedChannelException();
+        }
+        if (thread == null) {
+            selector = Selector.open();
+            thread = new Thread(this::run, name);
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Runs the task in the I/O thread.
+     */
+    void execute(Runnable task) {
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    /**
+     * Registers a connected channel from any thread.
+     */
+    Connection register(SocketChannel channel) throws IOException {
+        start();
+        channel.configureBlocking(false);
+        Connection connection = new Connection(this, channel,
+                new FrameReader(frameCodec, frameCodec.prefixLength() + IsoMessageCodec.MAX_MESSAGE_LENGTH,
+                        READ_BUFFER_SIZE, true), new FrameWriter(frameCodec));
+        execute(() -> {
+            try {
+                connection.register(selector);
+            } catch (ClosedChannelException e) {
+                connection.close(e);
+            }
+        });
+        return connection;
+    }
+
+    void listen(ServerSocketChannel channel) throws IOException {
+        start();
+        channel.configureBlocking(false);
+        execute(() -> {
+            try {
+                channel.register(selector, SelectionKey.OP_ACCEPT);
+            } catch (ClosedChannelException e) {
+                LOG.warn("Server channel closed before it was registered", e);
+            }
+        });
+    }
+
+    private void run() {
+        try {
+            while (running) {
+                selector.select();
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    task.run();
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept((ServerSocketChannel) key.channel());
+                    } else {
+                        handle(key);
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            LOG.error("I/O thread failed", e);
+        } finally {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                task.run();
+            }
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof Connection) {
+                    ((Connection) key.attachment()).close(new ClosedChannelException());
+                } else {
+                    closeQuietly(key.channel());
+                }
+            }
+            closeQuietly(selector);
+        }
+    }
+
+    /**
+     * Accepts all the pending connections of the server channel. A failure to accept or register a connection (e.g.
+     * running out of file descriptors or the peer resetting before it was registered) only drops that connection and
+     * leaves the I/O thread running.
+     */
+    private void accept(ServerSocketChannel serverChannel) {
+        while (true) {
+            SocketChannel channel;
+            try {
+                channel = serverChannel.accept();
+            } catch (IOException e) {
+                LOG.warn("Failed to accept connection", e);
+                return;
+            }
+            if (channel == null) {
+                return;
+            }
+            try {
+                LOG.debug("Accepted connection from {}", channel.getRemoteAddress());
+                register(channel);
+            } catch (IOException e) {
+                LOG.warn("Failed to register accepted connection", e);
+                closeQuietly(channel);
+            }
+        }
+    }
+
+    /**
+     * Reads from and flushes a connection which is ready. Any failure only closes that connection.
+     */
+    private void handle(SelectionKey key) {
+        Connection connection = (Connection) key.attachment();
+        try {
+            if (key.isReadable()) {
+                connection.read();
+            }
+            if (key.isValid() && key.isWritable()) {
+                connection.flush();
+            }
+        } catch (RuntimeException e) {
+            connection.close(e);
+        }
+    }
+
+    /**
+     * Called in the I/O thread with each complete frame read from a connection.
+     */
+    void received(Connection connection, ByteBuffer frame) {
+        IsoMessage message;
+        try {
+            message = codec.decode(codec.isLazyDecoding() ? copy(frame) : frame);
+        } catch (RuntimeException e) {
+            LOG.warn("Dropping undecodable message", e);
+            return;
+        }
+        onMessage(connection, message);
+    }
+
+    private static ByteBuffer copy(ByteBuffer frame) {
+        byte[] bytes = new byte[frame.remaining()];
+        frame.get(bytes);
+        return ByteBuffer.wrap(bytes);
+    }
+
+    /**
+     * Called in the I/O thread with each message received from a connection.
+     */
+    abstract void onMessage(Connection connection, IsoMessage message);
+
+    /**
+     * Called in the I/O thread when a connection is closed.
+     */
+    abstract void onClose(Connection connection, Throwable cause);
+
+    static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            LOG.debug("Failed to close {}", closeable, e);
+        }
+    }
+
+    /**
+     * Closes all the connections and stops the I/O thread.
+     */
+    @Override
+    public void close() {
+        Thread thread;
+        synchronized (this) {
+            running = false;
+            thread = this.thread;
+        }
+        if (thread == null) {
+            return;
+        }
+        selector.wakeup();
+        if (Thread.currentThread() != thread) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (c) 2014 Ian Bondoc
+ *
+ * This file is part of Jen8583
+ *
+ * Jen8583 is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the License, or(at your option) any later version.
+ *
+ * Jen8583 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.chiknrice.iso.net;
+
+import org.chiknrice.iso.IsoMessage;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Thrown when the response to a request doesn't arrive in time. If the client sends reversals, the future response to
+ * the reversal sent for the request is available.
+ *
+ * @author <a href="mailto:chiknrice@gmail.com">Ian Bondoc</a>
+ */
+public class ResponseTimeoutException extends TimeoutException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient CompletableFuture<IsoMessage> reversal;
+
+    public ResponseTimeoutException(String message, CompletableFuture<IsoMessage> reversal) {
+        super(message);
+        this.reversal = reversal;
+    }
+
+    /**
+     * @return the future response to the reversal or null if no reversal was sent.
+     */
+    public CompletableFuture<IsoMessage> getReversal() {
+        return reversal;
+    }
+
+}
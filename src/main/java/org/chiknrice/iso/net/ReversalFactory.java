@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2014 Ian Bondoc
+ *
+ * This file is part of Jen8583
+ *
+ * Jen8583 is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the License, or(at your option) any later version.
+ *
+ * Jen8583 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.chiknrice.iso.net;
+
+import org.chiknrice.iso.IsoMessage;
+
+import java.util.ArrayList;
+import java.util.function.Function;
+
+/**
+ * Builds the reversal (x400) of an authorization or financial request (x100 or x200) from the fields of the original
+ * request. The listed fields are copied as is and if an original data elements field is configured (field 90 in
+ * ISO8583:1987) its components are set to the MTI, STAN (field 11), transmission date and time (field 7), acquiring
+ * institution id (field 32) and forwarding institution id (field 33) of the original request, the ids being 0 if the
+ * original request doesn't have them.
+ *
+ * @author <a href="mailto:chiknrice@gmail.com">Ian Bondoc</a>
+ */
+public class ReversalFactory implements Function<IsoMessage, IsoMessage> {
+
+    private final Integer originalDataField;
+    private final int[] copiedFields;
+
+    /**
+     * @param originalDataField the index of the original data elements field or null if the reversal doesn't have it.
+     * @param copiedFields      the indexes of the fields copied from the original request.
+     */
+    public ReversalFactory(Integer originalDataField, int... copiedFields) {
+        this.originalDataField = originalDataField;
+        this.copiedFields = copiedFields.clone();
+    }
+
+    /**
+     * @param original the original request.
+     * @return the reversal or null if the original is not an authorization or financial request.
+     */
+    @Override
+    public IsoMessage apply(IsoMessage original) {
+        int mti = original.getMti();
+        int messageClass = mti / 100 % 10;
+        if ((messageClass != 1 && messageClass != 2) || mti / 10 % 10 != 0) {
+            return null;
+        }
+        IsoMessage reversal = new IsoMessage(mti / 1000 * 1000 + 400);
+        if (!original.getHeader().isEmpty()) {
+            reversal.setHeader(new ArrayList<>(original.getHeader().values()));
+        }
+        for (int field : copiedFields) {
+            Object value = original.getField(field);
+            if (value != null) {
+                reversal.setField(field, value);
+            }
+        }
+        if (originalDataField != null) {
+            reversal.setField(originalDataField + ".1", mti);
+            reversal.setField(originalDataField + ".2", original.getField(11));
+            reversal.setField(originalDataField + ".3", original.getField(7));
+            reversal.setField(originalDataField + ".4", orZero(original.getField(32)));
+            reversal.setField(originalDataField + ".5", orZero(original.getField(33)));
+        }
+        return reversal;
+    }
+
+    private static Object orZero(Object value) {
+        return value != null ? value : 0;
+    }
+
+}
@@ -17,22 +17,58 @@ package org.chiknrice.iso.util;
 
 import org.chiknrice.iso.CodecException;
 
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+import static java.lang.String.format;
+
 /**
+ * Table driven BCD conversion. Aside from the byte[]/String methods, digits can be read from and written to a
+ * ByteBuffer in place as a long, into a char[] or StringBuilder and from a CharSequence. An odd number of digits is
+ * padded with a nibble either on the left (the first nibble) or on the right (the last nibble). The pad nibble is
+ * ignored when decoding and is written as the given filler (usually 0 or 0xF) when encoding.
+ *
  * @author <a href="mailto:chiknrice@gmail.com">Ian Bondoc</a>
  */
 public class Bcd {
 
+    /**
+     * The 2 digit value of each byte or -1 if either nibble is not a decimal digit.
+     */
+    private static final byte[] VALUES = new byte[256];
+
+    /**
+     * The 2 chars of each byte, nibbles which are not decimal digits are represented as hex digits.
+     */
+    private static final char[] CHARS = new char[512];
+
+    private static final long[] POWERS_OF_TEN = new long[19];
+
+    static {
+        for (int b = 0; b < 256; b++) {
+            int hi = b >>> 4;
+            int lo = b & 0x0F;
+            VALUES[b] = (byte) (hi < 10 && lo < 10 ? hi * 10 + lo : -1);
+            CHARS[b << 1] = Character.toUpperCase(Character.forDigit(hi, 16));
+            CHARS[(b << 1) + 1] = Character.toUpperCase(Character.forDigit(lo, 16));
+        }
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
     /**
      * @param bytes
      * @return the decoded BCD digits as String
      */
     public static String decode(byte[] bytes) {
         char[] digits = new char[bytes.length * 2];
-        int charPos = digits.length - 1;// LSB
-
-        for (int bytePos = bytes.length - 1; bytePos >= 0; bytePos--) {
-            digits[charPos--] = (char) ((bytes[bytePos] & 0x0f) + 48);
-            digits[charPos--] = (char) (((bytes[bytePos] & 0xf0) >> 4) + 48);
+        for (int i = 0; i < bytes.length; i++) {
+            int b = bytes[i] & 0xFF;
+            digits[i << 1] = CHARS[b << 1];
+            digits[(i << 1) + 1] = CHARS[(b << 1) + 1];
         }
         return new String(digits);
     }
@@ -42,21 +78,205 @@ public class Bcd {
      * @return the value encoded in BCD
      */
     public static byte[] encode(String value) {
-        byte[] bytes = new byte[value.length() / 2 + value.length() % 2];
-        int length = value.length();
+        byte[] bytes = new byte[byteCount(value.length())];
+        encode(ByteBuffer.wrap(bytes), value, true, 0);
+        return bytes;
+    }
+
+    /**
+     * @param digits the number of digits.
+     * @return the number of bytes the digits are encoded to.
+     */
+    public static int byteCount(int digits) {
+        return digits / 2 + digits % 2;
+    }
+
+    /**
+     * Decodes the digits from the position of the buffer which is advanced after the encoded bytes.
+     *
+     * @param buf        the buffer to read from.
+     * @param digits     the number of digits (up to 18) excluding the pad nibble.
+     * @param leftPadded if an odd number of digits is padded on the left, otherwise on the right.
+     * @return the value of the digits.
+     */
+    public static long decodeLong(ByteBuffer buf, int digits, boolean leftPadded) {
+        if (digits < 0 || digits >= POWERS_OF_TEN.length) {
+            throw new IllegalArgumentException(format("Invalid number of digits for a long %d", digits));
+        }
+        int start = buf.position();
+        int bytes = checkRemaining(buf, digits);
+        int first = 0;
+        int last = bytes;
+        long value = 0;
+        if (digits % 2 == 1) {
+            if (leftPadded) {
+                value = digit(buf, start, bytes, buf.get(start) & 0x0F);
+                first++;
+            } else {
+                last--;
+            }
+        }
+        for (int i = first; i < last; i++) {
+            int pair = VALUES[buf.get(start + i) & 0xFF];
+            if (pair < 0) {
+                throw invalid(buf, start, bytes);
+            }
+            value = value * 100 + pair;
+        }
+        if (last < bytes) {
+            value = value * 10 + digit(buf, start, bytes, (buf.get(start + last) & 0xF0) >>> 4);
+        }
+        buf.position(start + bytes);
+        return value;
+    }
+
+    /**
+     * Decodes the digits from the position of the buffer which is advanced after the encoded bytes.
+     *
+     * @param buf        the buffer to read from.
+     * @param digits     the number of digits excluding the pad nibble.
+     * @param leftPadded if an odd number of digits is padded on the left, otherwise on the right.
+     * @param dst        the array where the digits are written to.
+     * @param offset     the index of the first digit in the array.
+     */
+    public static void decode(ByteBuffer buf, int digits, boolean leftPadded, char[] dst, int offset) {
+        int start = buf.position();
+        int bytes = checkRemaining(buf, digits);
+        int nibble = digits % 2 == 1 && leftPadded ? 1 : 0;
+        for (int i = 0; i < digits; i++, nibble++) {
+            int b = buf.get(start + (nibble >> 1)) & 0xFF;
+            char c = CHARS[(b << 1) + (nibble & 1)];
+            if (c > '9') {
+                throw invalid(buf, start, bytes);
+            }
+            dst[offset + i] = c;
+        }
+        buf.position(start + bytes);
+    }
+
+    /**
+     * Decodes the digits from the position of the buffer which is advanced after the encoded bytes.
+     *
+     * @param buf        the buffer to read from.
+     * @param digits     the number of digits excluding the pad nibble.
+     * @param leftPadded if an odd number of digits is padded on the left, otherwise on the right.
+     * @param dst        where the digits are appended to.
+     */
+    public static void decode(ByteBuffer buf, int digits, boolean leftPadded, StringBuilder dst) {
+        int offset = dst.length();
+        dst.setLength(offset + digits);
+        int start = buf.position();
+        int bytes = checkRemaining(buf, digits);
+        int nibble = digits % 2 == 1 && leftPadded ? 1 : 0;
+        for (int i = 0; i < digits; i++, nibble++) {
+            int b = buf.get(start + (nibble >> 1)) & 0xFF;
+            char c = CHARS[(b << 1) + (nibble & 1)];
+            if (c > '9') {
+                dst.setLength(offset);
+                throw invalid(buf, start, bytes);
+            }
+            dst.setCharAt(offset + i, c);
+        }
+        buf.position(start + bytes);
+    }
 
-        for (int charPos = length - 1; charPos >= 0; charPos--) {
-            int bytePos = bytes.length - ((length - charPos - 1) / 2) - 1;
-            boolean hi = (length - charPos) % 2 == 0;
+    /**
+     * Encodes the value to the position of the buffer which is advanced after the encoded bytes.
+     *
+     * @param buf        the buffer to write to.
+     * @param value      the value to be encoded which should not be negative.
+     * @param digits     the number of digits excluding the pad nibble, the value is left padded with zeros.
+     * @param leftPadded if an odd number of digits is padded on the left, otherwise on the right.
+     * @param filler     the pad nibble.
+     */
+    public static void encodeLong(ByteBuffer buf, long value, int digits, boolean leftPadded, int filler) {
+        if (value < 0) {
+            throw new IllegalArgumentException(format("Negative value %d", value));
+        }
+        if (digits < POWERS_OF_TEN.length && value >= POWERS_OF_TEN[digits]) {
+            throw new CodecException(format("Value %d exceeds %d digits", value, digits));
+        }
+        int start = buf.position();
+        int bytes = byteCount(digits);
+        if (buf.remaining() < bytes) {
+            throw new BufferOverflowException();
+        }
+        int pad = digits % 2 == 0 ? -1 : leftPadded ? 0 : (bytes << 1) - 1;
+        int lo = 0;
+        for (int nibble = (bytes << 1) - 1; nibble >= 0; nibble--) {
+            int n;
+            if (nibble == pad) {
+                n = filler & 0x0F;
+            } else {
+                n = (int) (value % 10);
+                value /= 10;
+            }
+            if ((nibble & 1) == 1) {
+                lo = n;
+            } else {
+                buf.put(start + (nibble >> 1), (byte) ((n << 4) | lo));
+            }
+        }
+        buf.position(start + bytes);
+    }
 
-            char c = value.charAt(charPos);
-            if (!Character.isDigit(c)) {
-                throw new CodecException(String.format("Invalid numeric value [%s]", value));
+    /**
+     * Encodes the digits to the position of the buffer which is advanced after the encoded bytes.
+     *
+     * @param buf        the buffer to write to.
+     * @param value      the digits to be encoded.
+     * @param leftPadded if an odd number of digits is padded on the left, otherwise on the right.
+     * @param filler     the pad nibble.
+     */
+    public static void encode(ByteBuffer buf, CharSequence value, boolean leftPadded, int filler) {
+        int digits = value.length();
+        int start = buf.position();
+        int bytes = byteCount(digits);
+        if (buf.remaining() < bytes) {
+            throw new BufferOverflowException();
+        }
+        int nibble = digits % 2 == 1 && leftPadded ? 1 : 0;
+        int hi = filler & 0x0F;
+        for (int i = 0; i < digits; i++, nibble++) {
+            int n = value.charAt(i) - '0';
+            if (n < 0 || n > 9) {
+                throw new CodecException(format("Invalid numeric value [%s]", value));
             }
+            if ((nibble & 1) == 0) {
+                hi = n;
+            } else {
+                buf.put(start + (nibble >> 1), (byte) ((hi << 4) | n));
+            }
+        }
+        if ((nibble & 1) == 1) {
+            buf.put(start + (nibble >> 1), (byte) ((hi << 4) | (filler & 0x0F)));
+        }
+        buf.position(start + bytes);
+    }
 
-            bytes[bytePos] = (byte) (bytes[bytePos] | ((c - 48) << (hi ? 4 : 0)));
+    private static int checkRemaining(ByteBuffer buf, int digits) {
+        int bytes = byteCount(digits);
+        if (buf.remaining() < bytes) {
+            throw new BufferUnderflowException();
         }
         return bytes;
     }
 
+    private static int digit(ByteBuffer buf, int start, int bytes, int nibble) {
+        if (nibble > 9) {
+            throw invalid(buf, start, bytes);
+        }
+        return nibble;
+    }
+
+    private static CodecException invalid(ByteBuffer buf, int start, int bytes) {
+        char[] chars = new char[bytes << 1];
+        for (int i = 0; i < bytes; i++) {
+            int b = buf.get(start + i) & 0xFF;
+            chars[i << 1] = CHARS[b << 1];
+            chars[(i << 1) + 1] = CHARS[(b << 1) + 1];
+        }
+        return new CodecException(format("Invalid numeric value [%s]", new String(chars)));
+    }
+
 }
@@ -17,73 +17,136 @@ package org.chiknrice.iso.util;
 
 import org.chiknrice.iso.CodecException;
 
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 import static java.lang.String.format;
 
 /**
+ * Reads and writes unsigned big endian integers of 1 to 8 bytes directly against a ByteBuffer regardless of the byte
+ * order of the buffer. Values which don't fit the given width (including negative values when the width is less than 8)
+ * are rejected instead of being silently trimmed.
+ *
  * @author <a href="mailto:chiknrice@gmail.com">Ian Bondoc</a>
  */
 public class Binary {
 
-    public static Long decodeLong(byte[] bytes) {
-        return wrap(bytes, 8).getLong();
+    /**
+     * Reads the value from the position of the buffer which is advanced by the width.
+     *
+     * @param buf
+     * @param width the number of bytes (1 to 8).
+     * @return the unsigned value, an 8 byte value with the most significant bit set is returned as a negative long.
+     */
+    public static long getLong(ByteBuffer buf, int width) {
+        int position = buf.position();
+        long value = getLong(buf, position, width);
+        buf.position(position + width);
+        return value;
     }
 
-    public static Integer decodeInt(byte[] bytes) {
-        return wrap(bytes, 4).getInt();
-    }
-
-    private static ByteBuffer wrap(byte[] bytes, int maxBytes) {
-        ByteBuffer buf = ByteBuffer.allocate(maxBytes);
-        if (bytes.length < maxBytes) {
-            buf.position(maxBytes - bytes.length);
+    /**
+     * Reads the value at the index of the buffer without changing its position.
+     *
+     * @param buf
+     * @param index the index of the most significant byte.
+     * @param width the number of bytes (1 to 8).
+     * @return the unsigned value, an 8 byte value with the most significant bit set is returned as a negative long.
+     */
+    public static long getLong(ByteBuffer buf, int index, int width) {
+        checkWidth(width);
+        if (index < 0 || buf.limit() - index < width) {
+            throw new BufferUnderflowException();
         }
-        buf.put(bytes);
-        buf.clear();
-        return buf;
-    }
-
-    public static byte[] encode(Long value) {
-        return encode(value, 8);
+        if (buf.order() == ByteOrder.BIG_ENDIAN) {
+            switch (width) {
+                case 8:
+                    return buf.getLong(index);
+                case 4:
+                    return buf.getInt(index) & 0xFFFFFFFFL;
+                case 2:
+                    return buf.getShort(index) & 0xFFFFL;
+                default:
+                    break;
+            }
+        }
+        long value = 0;
+        for (int i = 0; i < width; i++) {
+            value = (value << 8) | (buf.get(index + i) & 0xFFL);
+        }
+        return value;
     }
 
-    public static byte[] encode(Integer value) {
-        return encode(value, 4);
+    /**
+     * Writes the value to the position of the buffer which is advanced by the width.
+     *
+     * @param buf
+     * @param value the unsigned value, all 64 bits are written when the width is 8.
+     * @param width the number of bytes (1 to 8).
+     * @throws CodecException if the value doesn't fit the width.
+     */
+    public static void putLong(ByteBuffer buf, long value, int width) {
+        int position = buf.position();
+        if (buf.limit() - position < width) {
+            checkWidth(width);
+            throw new BufferOverflowException();
+        }
+        putLong(buf, position, value, width);
+        buf.position(position + width);
     }
 
-    public static byte[] encode(Number value, int maxBytes) {
-        int size;
-        if (value instanceof Long) {
-            size = 8;
-        } else {
-            size = 4;
+    /**
+     * Writes the value at the index of the buffer without changing its position.
+     *
+     * @param buf
+     * @param index the index of the most significant byte.
+     * @param value the unsigned value, all 64 bits are written when the width is 8.
+     * @param width the number of bytes (1 to 8).
+     * @throws CodecException if the value doesn't fit the width.
+     */
+    public static void putLong(ByteBuffer buf, int index, long value, int width) {
+        checkWidth(width);
+        if (width < 8 && (value >>> (width << 3)) != 0) {
+            throw new CodecException(format("%d trimmed on encoding to %d bytes", value, width));
         }
-        ByteBuffer buf = ByteBuffer.allocate(size);
-        if (value instanceof Long) {
-            buf.putLong((Long) value);
-        } else {
-            buf.putInt((Integer) value);
+        if (index < 0 || buf.limit() - index < width) {
+            throw new BufferOverflowException();
         }
-
-        buf.flip();
-        byte[] bytes = buf.array();
-        if (maxBytes < bytes.length) {
-            byte[] trimmed = new byte[maxBytes];
-            System.arraycopy(bytes, bytes.length - maxBytes, trimmed, 0, trimmed.length);
-
-            // verify no data trimmed
-            buf = ByteBuffer.allocate(size);
-            buf.put(bytes, 0, bytes.length - maxBytes);
-            buf.clear();
-            if (((size == 8) ? buf.getLong() : buf.getInt()) > 0) {
-                throw new CodecException(format("%s trimmed on encoding to %d bytes", value.toString(), maxBytes));
+        if (buf.order() == ByteOrder.BIG_ENDIAN) {
+            switch (width) {
+                case 8:
+                    buf.putLong(index, value);
+                    return;
+                case 4:
+                    buf.putInt(index, (int) value);
+                    return;
+                case 2:
+                    buf.putShort(index, (short) value);
+                    return;
+                default:
+                    break;
             }
+        }
+        for (int i = width - 1; i >= 0; i--) {
+            buf.put(index + i, (byte) value);
+            value >>>= 8;
+        }
+    }
+
+    /**
+     * @param value a value which is not negative.
+     * @return the minimum number of bytes (at least 1) which can hold the value.
+     */
+    public static int width(long value) {
+        return Math.max(1, (71 - Long.numberOfLeadingZeros(value)) >>> 3);
+    }
 
-            // use trimmed
-            bytes = trimmed;
+    private static void checkWidth(int width) {
+        if (width < 1 || width > 8) {
+            throw new IllegalArgumentException(format("Invalid width %d", width));
         }
-        return bytes;
     }
 
 }
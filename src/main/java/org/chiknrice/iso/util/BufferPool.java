@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2014 Ian Bondoc
+ *
+ * This file is part of Jen8583
+ *
+ * Jen8583 is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the License, or(at your option) any later version.
+ *
+ * Jen8583 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.chiknrice.iso.util;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import static java.lang.String.format;
+
+/**
+ * A bounded pool of equally sized ByteBuffers (either heap or direct). The pool never blocks, a buffer is allocated
+ * when the pool is empty and a released buffer is simply dropped when the pool is already full. The pool is thread
+ * safe and can be shared across codecs.
+ *
+ * @author <a href="mailto:chiknrice@gmail.com">Ian Bondoc</a>
+ */
+public class BufferPool {
+
+    private final int bufferSize;
+    private final boolean direct;
+    private final BlockingQueue<ByteBuffer> buffers;
+
+    /**
+     * @param bufferSize the capacity of each buffer in the pool.
+     * @param maxPooled  the maximum number of idle buffers retained by the pool.
+     * @param direct     true if the pool should allocate direct buffers.
+     */
+    public BufferPool(int bufferSize, int maxPooled, boolean direct) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException(format("Invalid buffer size %d", bufferSize));
+        }
+        if (maxPooled <= 0) {
+            throw new IllegalArgumentException(format("Invalid max pooled buffers %d", maxPooled));
+        }
+        this.bufferSize = bufferSize;
+        this.direct = direct;
+        this.buffers = new ArrayBlockingQueue<>(maxPooled);
+    }
+
+    /**
+     * Takes an idle buffer from the pool or allocates a new one if none is available. The buffer returned is cleared.
+     *
+     * @return the buffer.
+     */
+    public ByteBuffer acquire() {
+        ByteBuffer buf = buffers.poll();
+        if (buf == null) {
+            buf = direct ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize);
+        } else {
+            buf.clear();
+        }
+        return buf;
+    }
+
+    /**
+     * Returns the buffer to the pool. Buffers which were not allocated by a pool of the same kind are ignored.
+     *
+     * @param buf the buffer to be returned.
+     */
+    public void release(ByteBuffer buf) {
+        if (buf != null && buf.capacity() == bufferSize && buf.isDirect() == direct && !buf.isReadOnly()) {
+            buffers.offer(buf);
+        }
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public boolean isDirect() {
+        return direct;
+    }
+
+    /**
+     * @return the number of idle buffers currently held by the pool.
+     */
+    public int size() {
+        return buffers.size();
+    }
+
+}
@@ -17,52 +17,166 @@ package org.chiknrice.iso.util;
 
 import org.chiknrice.iso.CodecException;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static java.lang.String.format;
+
 /**
+ * Table driven hex conversion. Aside from the byte[]/String methods, hex digits can be streamed between a ByteBuffer
+ * and an Appendable/CharSequence or read and written as ASCII bytes of a ByteBuffer (e.g. a HEX bitmap) without
+ * intermediate strings. Decoding is case insensitive while encoding uses upper case digits.
+ *
  * @author <a href="mailto:chiknrice@gmail.com">Ian Bondoc</a>
  */
 public class Hex {
 
-    private static final String HEX = "0123456789ABCDEF";
+    private static final char[] DIGITS = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E',
+            'F'};
+
+    /**
+     * The value of each hex digit (indexed by char) or -1 if the char is not a hex digit.
+     */
+    private static final byte[] VALUES = new byte[256];
+
+    static {
+        Arrays.fill(VALUES, (byte) -1);
+        for (int i = 0; i < DIGITS.length; i++) {
+            VALUES[DIGITS[i]] = (byte) i;
+            VALUES[Character.toLowerCase(DIGITS[i])] = (byte) i;
+        }
+    }
 
+    /**
+     * @param c
+     * @return the value of the hex digit or -1 if the char is not a hex digit.
+     */
     public static int value(char c) {
-        return HEX.indexOf(c);
+        return c < 256 ? VALUES[c] : -1;
     }
 
     public static String encode(byte[] bytes) {
         char[] digits = new char[bytes.length * 2];
-        int charPos = digits.length - 1;// LSB
-
-        for (int bytePos = bytes.length - 1; bytePos >= 0; bytePos--) {
-            digits[charPos--] = HEX.charAt(bytes[bytePos] & 0x0f);
-            digits[charPos--] = HEX.charAt((bytes[bytePos] & 0xf0) >> 4);
+        for (int i = 0; i < bytes.length; i++) {
+            digits[i << 1] = DIGITS[(bytes[i] & 0xF0) >>> 4];
+            digits[(i << 1) + 1] = DIGITS[bytes[i] & 0x0F];
         }
         return new String(digits);
     }
 
+    /**
+     * @param bytes
+     * @param dst   where the hex digits of the bytes are appended to.
+     */
+    public static void encode(byte[] bytes, Appendable dst) {
+        try {
+            for (byte b : bytes) {
+                dst.append(DIGITS[(b & 0xF0) >>> 4]).append(DIGITS[b & 0x0F]);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Appends the hex digits of the remaining bytes of the buffer which is advanced to its limit.
+     *
+     * @param src
+     * @param dst where the hex digits of the bytes are appended to.
+     */
+    public static void encode(ByteBuffer src, Appendable dst) {
+        try {
+            while (src.hasRemaining()) {
+                byte b = src.get();
+                dst.append(DIGITS[(b & 0xF0) >>> 4]).append(DIGITS[b & 0x0F]);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
     public static byte[] decode(String hex) {
         // A null string returns an empty array
         if (hex == null || hex.length() == 0) {
             return new byte[0];
         } else {
-            hex = hex.toUpperCase();
             byte[] bytes = new byte[hex.length() / 2 + hex.length() % 2];
+            decode(hex, ByteBuffer.wrap(bytes));
+            return bytes;
+        }
+    }
 
-            int length = hex.length();
-
-            for (int charPos = length - 1; charPos >= 0; charPos--) {
-                int bytePos = bytes.length - ((length - charPos - 1) / 2) - 1;
-                boolean hi = (length - charPos) % 2 == 0;
+    /**
+     * Writes the bytes of the hex digits to the buffer. An odd number of digits is padded on the left with 0.
+     *
+     * @param hex
+     * @param dst
+     */
+    public static void decode(CharSequence hex, ByteBuffer dst) {
+        int length = hex.length();
+        if (dst.remaining() < length / 2 + length % 2) {
+            throw new BufferOverflowException();
+        }
+        int i = 0;
+        if (length % 2 == 1) {
+            dst.put((byte) value(hex, 0));
+            i++;
+        }
+        for (; i < length; i += 2) {
+            dst.put((byte) ((value(hex, i) << 4) | value(hex, i + 1)));
+        }
+    }
 
-                char c = hex.charAt(charPos);
+    /**
+     * Reads hex digits encoded as ASCII bytes from the buffer.
+     *
+     * @param src
+     * @param digits the number of hex digits to read (up to 16).
+     * @return the value of the digits.
+     */
+    public static long getHex(ByteBuffer src, int digits) {
+        if (src.remaining() < digits) {
+            throw new BufferUnderflowException();
+        }
+        long value = 0;
+        for (int i = 0; i < digits; i++) {
+            int b = src.get() & 0xFF;
+            int digit = VALUES[b];
+            if (digit < 0) {
+                throw new CodecException(format("Invalid hex char %s", (char) b));
+            }
+            value = (value << 4) | digit;
+        }
+        return value;
+    }
 
-                if (HEX.indexOf(c) == -1) {
-                    throw new CodecException(String.format("Invalid hex char %s", c));
-                }
+    /**
+     * Writes the value as upper case hex digits encoded as ASCII bytes to the buffer.
+     *
+     * @param dst
+     * @param value
+     * @param digits the number of least significant hex digits of the value to write (up to 16).
+     */
+    public static void putHex(ByteBuffer dst, long value, int digits) {
+        if (dst.remaining() < digits) {
+            throw new BufferOverflowException();
+        }
+        for (int shift = (digits - 1) << 2; shift >= 0; shift -= 4) {
+            dst.put((byte) DIGITS[(int) (value >>> shift) & 0xF]);
+        }
+    }
 
-                bytes[bytePos] |= (HEX.indexOf(c) << (hi ? 4 : 0));
-            }
-            return bytes;
+    private static int value(CharSequence hex, int index) {
+        char c = hex.charAt(index);
+        int value = value(c);
+        if (value < 0) {
+            throw new CodecException(format("Invalid hex char %s", c));
         }
+        return value;
     }
 
 }
@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2014 Ian Bondoc
+ *
+ * This file is part of Jen8583
+ *
+ * Jen8583 is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the License, or(at your option) any later version.
+ *
+ * Jen8583 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.chiknrice.iso.util;
+
+import org.chiknrice.iso.ConfigException;
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static java.lang.String.format;
+
+/**
+ * A single byte character set translated through lookup tables which are built once from the corresponding
+ * java.nio.charset.Charset. Any single byte charset supported by the JVM can be used, e.g. ISO-8859-1 (the default) or
+ * the EBCDIC code pages cp037 and cp500. Bytes which don't map to a character decode to U+FFFD and characters which
+ * can't be mapped encode to the replacement byte of the charset just like String.getBytes().
+ *
+ * @author <a href="mailto:chiknrice@gmail.com">Ian Bondoc</a>
+ */
+public final class SingleByteCharset implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final ConcurrentMap<String, SingleByteCharset> CHARSETS = new ConcurrentHashMap<>();
+
+    public static final SingleByteCharset ISO_8859_1 = forName(StandardCharsets.ISO_8859_1.name());
+
+    private final String name;
+    private final transient char[] chars = new char[256];
+    private final transient short[] lowBytes = new short[256];
+    private final transient char[] highChars;
+    private final transient byte[] highBytes;
+    private final transient byte replacement;
+
+    private SingleByteCharset(Charset charset) {
+        if (!charset.canEncode() || charset.newEncoder().maxBytesPerChar() != 1f) {
+            throw new ConfigException(format("Charset %s is not a single byte charset", charset.name()));
+        }
+        this.name = charset.name();
+        CharsetDecoder decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        Arrays.fill(lowBytes, (short) -1);
+        char[] highChars = new char[256];
+        byte[] highBytes = new byte[256];
+        int high = 0;
+        for (int b = 0; b < 256; b++) {
+            char c = '\uFFFD';
+            try {
+                CharBuffer decoded = decoder.reset().decode(ByteBuffer.wrap(new byte[]{(byte) b}));
+                if (decoded.remaining() == 1) {
+                    c = decoded.get();
+                }
+            } catch (CharacterCodingException e) {
+                // left as the replacement character
+            }
+            chars[b] = c;
+            if (c == '\uFFFD') {
+                continue;
+            }
+            if (c < 256) {
+                if (lowBytes[c] < 0) {
+                    lowBytes[c] = (short) b;
+                }
+            } else {
+                highChars[high] = c;
+                highBytes[high++] = (byte) b;
+            }
+        }
+        // sorted by char for binary search, keeping the first byte of a char which is mapped more than once
+        long[] sorted = new long[high];
+        for (int i = 0; i < high; i++) {
+            sorted[i] = ((long) highChars[i] << 16) | (i << 8) | (highBytes[i] & 0xFF);
+        }
+        Arrays.sort(sorted);
+        this.highChars = new char[high];
+        this.highBytes = new byte[high];
+        int size = 0;
+        for (long entry : sorted) {
+            char c = (char) (entry >>> 16);
+            if (size == 0 || this.highChars[size - 1] != c) {
+                this.highChars[size] = c;
+                this.highBytes[size++] = (byte) entry;
+            }
+        }
+        this.replacement = charset.newEncoder().replacement()[0];
+    }
+
+    /**
+     * @param name the name or alias of a single byte charset supported by the JVM (e.g. ISO-8859-1, cp037, cp500).
+     * @return the shared instance for the charset.
+     * @throws ConfigException if the charset is not supported or is not a single byte charset.
+     */
+    public static SingleByteCharset forName(String name) {
+        Charset charset;
+        try {
+            charset = Charset.forName(name);
+        } catch (IllegalCharsetNameException | UnsupportedCharsetException e) {
+            throw new ConfigException(format("Unsupported charset %s", name));
+        }
+        SingleByteCharset singleByteCharset = CHARSETS.get(charset.name());
+        if (singleByteCharset == null) {
+            singleByteCharset = new SingleByteCharset(charset);
+            SingleByteCharset existing = CHARSETS.putIfAbsent(charset.name(), singleByteCharset);
+            if (existing != null) {
+                singleByteCharset = existing;
+            }
+        }
+        return singleByteCharset;
+    }
+
+    /**
+     * @param b the encoded byte.
+     * @return the character of the byte.
+     */
+    public char toChar(byte b) {
+        return chars[b & 0xFF];
+    }
+
+    /**
+     * @param c the character to be encoded.
+     * @return the byte of the character.
+     */
+    public byte toByte(char c) {
+        if (c < 256) {
+            short b = lowBytes[c];
+            return b >= 0 ? (byte) b : replacement;
+        } else {
+            int i = Arrays.binarySearch(highChars, c);
+            return i >= 0 ? highBytes[i] : replacement;
+        }
+    }
+
+    public String name() {
+        return name;
+    }
+
+    /**
+     * Only the name is serialized, the shared instance is used when deserialized.
+     */
+    private Object readResolve() {
+        return forName(name);
+    }
+
+    @Override
+    public int hashCode() {
+        return name.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o == this || (o instanceof SingleByteCharset && ((SingleByteCharset) o).name.equals(name));
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright (c) 2014 Ian Bondoc
+ *
+ * This file is part of Jen8583
+ *
+ * Jen8583 is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the License, or(at your option) any later version.
+ *
+ * Jen8583 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.chiknrice.iso.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static java.lang.String.format;
+
+/**
+ * A hashed timing wheel of keyed timeouts (e.g. in-flight transactions keyed by STAN, terminal id and RRN). Scheduling
+ * and cancelling are O(1) and never block, a single worker thread moves new timeouts to the buckets of the wheel,
+ * unlinks cancelled ones and expires a bucket per tick. All the timeouts which expire in a tick are handed to the
+ * callback as a single batch in the worker thread. Timeouts never expire early but may expire up to a tick late.
+ *
+ * @param <K> the type of the key.
+ * @param <V> the type of the value kept with the timeout and handed to the callback when it expires.
+ * @author <a href="mailto:chiknrice@gmail.com">Ian Bondoc</a>
+ */
+public class TimeoutWheel<K, V> implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TimeoutWheel.class);
+
+    private static final class Timeout<K, V> {
+        private final K key;
+        private final V value;
+        private final long deadline;
+        private long rounds;
+        private int bucket = -1;
+        private Timeout<K, V> prev;
+        private Timeout<K, V> next;
+
+        private Timeout(K key, V value, long deadline) {
+            this.key = key;
+            this.value = value;
+            this.deadline = deadline;
+        }
+    }
+
+    private final long tickNanos;
+    private final Timeout<K, V>[] buckets;
+    private final int mask;
+    private final Consumer<List<V>> onExpiry;
+    private final ConcurrentMap<K, Timeout<K, V>> timeouts = new ConcurrentHashMap<>();
+    private final Queue<Timeout<K, V>> scheduled = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout<K, V>> cancelled = new ConcurrentLinkedQueue<>();
+    private final long start;
+    private final Thread worker;
+    private volatile boolean running = true;
+    private long tick;
+
+    /**
+     * @param name      the name of the worker thread.
+     * @param tick      the duration of a tick.
+     * @param unit      the unit of the tick.
+     * @param wheelSize the number of buckets, rounded up to a power of 2.
+     * @param onExpiry  called with the values of the timeouts which expired in a tick.
+     */
+    @SuppressWarnings("unchecked")
+    public TimeoutWheel(String name, long tick, TimeUnit unit, int wheelSize, Consumer<List<V>> onExpiry) {
+        if (tick <= 0) {
+            throw new IllegalArgumentException(format("Invalid tick %d", tick));
+        }
+        if (wheelSize <= 0 || wheelSize > 1 << 30) {
+            throw new IllegalArgumentException(format("Invalid wheel size %d", wheelSize));
+        }
+        this.tickNanos = unit.toNanos(tick);
+        this.buckets = new Timeout[wheelSize == 1 ? 1 : Integer.highestOneBit(wheelSize - 1) << 1];
+        this.mask = buckets.length - 1;
+        this.onExpiry = onExpiry;
+        this.start = System.nanoTime();
+        this.worker = new Thread(this::run, name);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Schedules a timeout unless one with the same key is already pending.
+     *
+     * @param key   the key of the timeout.
+     * @param value the value handed to the callback when the timeout expires.
+     * @param delay how long until the timeout expires.
+     * @param unit  the unit of the delay.
+     * @return false if a timeout with the same key is already pending.
+     */
+    public boolean schedule(K key, V value, long delay, TimeUnit unit) {
+        Timeout<K, V> timeout = new Timeout<>(key, value, System.nanoTime() - start + unit.toNanos(delay));
+        if (timeouts.putIfAbsent(key, timeout) != null) {
+            return false;
+        }
+        scheduled.add(timeout);
+        return true;
+    }
+
+    /**
+     * @param key the key of the timeout.
+     * @return the value of the cancelled timeout or null if there's no timeout pending with the key (e.g. it already
+     * expired).
+     */
+    public V cancel(K key) {
+        Timeout<K, V> timeout = timeouts.remove(key);
+        if (timeout == null) {
+            return null;
+        }
+        cancelled.add(timeout);
+        return timeout.value;
+    }
+
+    /**
+     * Cancels the timeout only if it has the value.
+     *
+     * @param key   the key of the timeout.
+     * @param value the value of the timeout.
+     * @return true if the timeout was cancelled.
+     */
+    public boolean cancel(K key, V value) {
+        Timeout<K, V> timeout = timeouts.get(key);
+        if (timeout == null || timeout.value != value || !timeouts.remove(key, timeout)) {
+            return false;
+        }
+        cancelled.add(timeout);
+        return true;
+    }
+
+    /**
+     * Cancels all the pending timeouts.
+     *
+     * @return the values of the cancelled timeouts.
+     */
+    public List<V> cancelAll() {
+        List<V> values = new ArrayList<>();
+        for (K key : timeouts.keySet()) {
+            V value = cancel(key);
+            if (value != null) {
+                values.add(value);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * @return the number of pending timeouts.
+     */
+    public int size() {
+        return timeouts.size();
+    }
+
+    private void run() {
+        List<V> expired = new ArrayList<>();
+        while (running) {
+            long sleepNanos = (tick + 1) * tickNanos - (System.nanoTime() - start);
+            if (sleepNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                } catch (InterruptedException e) {
+                    continue;
+                }
+            }
+            transferScheduled();
+            unlinkCancelled();
+            expire((int) (tick & mask), expired);
+            tick++;
+            if (!expired.isEmpty()) {
+                try {
+                    onExpiry.accept(expired);
+                } catch (RuntimeException e) {
+                    LOG.error("Failed to handle expired timeouts", e);
+                }
+                expired = new ArrayList<>();
+            }
+        }
+    }
+
+    private void transferScheduled() {
+        Timeout<K, V> timeout;
+        while ((timeout = scheduled.poll()) != null) {
+            if (timeouts.get(timeout.key) != timeout) {
+                continue;
+            }
+            long ticks = timeout.deadline / tickNanos;
+            timeout.rounds = Math.max(ticks - tick, 0) / buckets.length;
+            int bucket = (int) (Math.max(ticks, tick) & mask);
+            timeout.bucket = bucket;
+            timeout.next = buckets[bucket];
+            if (timeout.next != null) {
+                timeout.next.prev = timeout;
+            }
+            buckets[bucket] = timeout;
+        }
+    }
+
+    private void unlinkCancelled() {
+        Timeout<K, V> timeout;
+        while ((timeout = cancelled.poll()) != null) {
+            if (timeout.bucket >= 0) {
+                unlink(timeout);
+            }
+        }
+    }
+
+    private void expire(int bucket, List<V> expired) {
+        Timeout<K, V> timeout = buckets[bucket];
+        while (timeout != null) {
+            Timeout<K, V> next = timeout.next;
+            if (timeout.rounds <= 0) {
+                unlink(timeout);
+                if (timeouts.remove(timeout.key, timeout)) {
+                    expired.add(timeout.value);
+                }
+            } else {
+                timeout.rounds--;
+            }
+            timeout = next;
+        }
+    }
+
+    private void unlink(Timeout<K, V> timeout) {
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else {
+            buckets[timeout.bucket] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.prev = null;
+        timeout.next = null;
+        timeout.bucket = -1;
+    }
+
+    /**
+     * Stops the worker thread, pending timeouts never expire.
+     */
+    @Override
+    public void close() {
+        running = false;
+        worker.interrupt();
+    }
+
+}
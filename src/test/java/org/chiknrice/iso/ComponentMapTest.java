@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) 2014 Ian Bondoc
+ *
+ * This file is part of Jen8583
+ *
+ * Jen8583 is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the License, or(at your option) any later version.
+ *
+ * Jen8583 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.chiknrice.iso;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="mailto:chiknrice@gmail.com">Ian Bondoc</a>
+ */
+public class ComponentMapTest {
+
+    @Test
+    public void testPutGetRemove() {
+        ComponentMap map = new ComponentMap(4);
+        assertThat(map.put(3, "a"), is(nullValue()));
+        assertThat(map.put(3, "b"), is((Object) "a"));
+        map.put(2, null);
+        map.put(200, "c");
+        map.put(5000, "d");
+        map.put(0, "e");
+
+        assertThat(map.size(), is(5));
+        assertThat(map.get(3), is((Object) "b"));
+        assertThat(map.get(200), is((Object) "c"));
+        assertThat(map.get(5000), is((Object) "d"));
+        assertThat(map.get(0), is((Object) "e"));
+        assertThat(map.get(4), is(nullValue()));
+        assertThat(map.get("3"), is(nullValue()));
+        assertTrue(map.containsKey(2));
+        assertFalse(map.containsKey(4));
+
+        assertThat(map.remove(3), is((Object) "b"));
+        assertThat(map.remove(3), is(nullValue()));
+        assertThat(map.remove(5000), is((Object) "d"));
+        assertThat(map.size(), is(3));
+
+        map.clear();
+        assertThat(map.size(), is(0));
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    public void testOrderAndEquality() {
+        ComponentMap map = new ComponentMap();
+        TreeMap<Integer, Object> expected = new TreeMap<>();
+        for (int key : new int[]{128, 2, 5000, 65, -1, 64, 1024, 1025, 7}) {
+            map.put(key, "v" + key);
+            expected.put(key, "v" + key);
+        }
+
+        assertThat(new ArrayList<>(map.keySet()), is(new ArrayList<>(expected.keySet())));
+        assertThat(map.toString(), is(expected.toString()));
+        assertTrue(map.equals(expected));
+        assertTrue(expected.equals(map));
+        assertThat(map.hashCode(), is(expected.hashCode()));
+    }
+
+    @Test
+    public void testIteratorRemoveAndSetValue() {
+        ComponentMap map = new ComponentMap();
+        for (int key : new int[]{0, 2, 3, 70, 2000}) {
+            map.put(key, key);
+        }
+        Iterator<Entry<Integer, Object>> i = map.entrySet().iterator();
+        while (i.hasNext()) {
+            Entry<Integer, Object> entry = i.next();
+            if (entry.getKey() % 2 == 0) {
+                i.remove();
+            } else {
+                entry.setValue("odd");
+            }
+        }
+        Map<Integer, Object> expected = new TreeMap<>();
+        expected.put(3, "odd");
+        assertThat(map, is((Map<Integer, Object>) expected));
+    }
+
+    @Test
+    public void testPresenceMask() {
+        ComponentMap map = new ComponentMap();
+        map.put(2, "a");
+        map.put(64, "b");
+        map.put(66, null);
+        assertFalse(map.hasOverflow());
+
+        long[] mask = map.getPresenceMask();
+        assertThat(mask[0], is(0x4000000000000001L));
+        assertThat(mask[1], is(0x4000000000000000L));
+        for (int i = 2; i < mask.length; i++) {
+            assertThat(mask[i], is(0L));
+        }
+
+        map.remove(64);
+        assertThat(Arrays.copyOf(map.getPresenceMask(), 2), is(new long[]{0x4000000000000000L, 0x4000000000000000L}));
+
+        map.put(2048, "c");
+        assertTrue(map.hasOverflow());
+    }
+
+}
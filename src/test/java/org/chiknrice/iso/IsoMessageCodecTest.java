@@ -0,0 +1,366 @@
+/*
+ * Copyright (c) 2014 Ian Bondoc
+ *
+ * This file is part of Jen8583
+ *
+ * Jen8583 is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the License, or(at your option) any later version.
+ *
+ * Jen8583 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.chiknrice.iso;
+
+import org.chiknrice.iso.codec.CustomCodec;
+import org.chiknrice.iso.config.IsoMessageDef;
+import org.chiknrice.iso.util.BufferPool;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Map;
+import java.util.TimeZone;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="mailto:chiknrice@gmail.com">Ian Bondoc</a>
+ */
+public class IsoMessageCodecTest {
+
+    private static IsoMessage createMessage() throws Exception {
+        SimpleDateFormat utc = new SimpleDateFormat("MMddHHmmss");
+        utc.setTimeZone(TimeZone.getTimeZone("UTC"));
+        SimpleDateFormat local = new SimpleDateFormat("MMddHHmmss");
+
+        IsoMessage m = new IsoMessage(200);
+        m.setField(2, "4111111111111111");
+        m.setField(3, 1000);
+        m.setField(4, 12345);
+        m.setField(7, utc.parse("0102030405"));
+        m.setField(11, 123456);
+        m.setField(12, local.parse("0101030405"));
+        m.setField(13, local.parse("0102000000"));
+        m.setField("28.1", "C");
+        m.setField("28.2", 200);
+        return m;
+    }
+
+    @Test
+    public void testEncodeToBuffer() throws Exception {
+        IsoMessageCodec codec = IsoMessageCodec.build("iso8583ascii.xml");
+        IsoMessage m = createMessage();
+        byte[] expected = codec.encode(m);
+
+        ByteBuffer buf = ByteBuffer.allocate(100);
+        buf.position(2);
+        int written = codec.encode(m, buf);
+        assertThat(written, is(expected.length));
+        assertThat(buf.position(), is(2 + expected.length));
+        assertTrue(Arrays.equals(expected, Arrays.copyOfRange(buf.array(), 2, 2 + written)));
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(100);
+        assertThat(codec.encode(m, direct), is(expected.length));
+        direct.flip();
+        byte[] bytes = new byte[direct.remaining()];
+        direct.get(bytes);
+        assertTrue(Arrays.equals(expected, bytes));
+
+        assertThat(codec.decode(expected), is(m));
+    }
+
+    @Test
+    public void testEncodeToInsufficientBuffer() throws Exception {
+        IsoMessageCodec codec = IsoMessageCodec.build("iso8583ascii.xml");
+        ByteBuffer buf = ByteBuffer.allocate(20);
+        buf.position(3);
+        try {
+            codec.encode(createMessage(), buf);
+            fail("Failure expected due to insufficient buffer");
+        } catch (CodecException e) {
+            assertThat(buf.position(), is(3));
+        }
+    }
+
+    @Test
+    public void testDecodeBackToBack() throws Exception {
+        IsoMessageCodec codec = IsoMessageCodec.build("iso8583ascii.xml");
+        IsoMessage m1 = createMessage();
+        IsoMessage m2 = createMessage();
+        m2.setField(11, 654321);
+        m2.setField(28, null);
+
+        ByteBuffer buf = ByteBuffer.allocateDirect(200);
+        int length1 = codec.encode(m1, buf);
+        int length2 = codec.encode(m2, buf);
+        buf.flip();
+
+        assertThat(codec.decode(buf), is(m1));
+        assertThat(buf.position(), is(length1));
+        assertThat(codec.decode(buf), is(m2));
+        assertThat(buf.position(), is(length1 + length2));
+        assertThat(buf.hasRemaining(), is(false));
+    }
+
+    @Test
+    public void testDecodeSlice() throws Exception {
+        IsoMessageCodec codec = IsoMessageCodec.build("iso8583ascii.xml");
+        IsoMessage m = createMessage();
+        byte[] encoded = codec.encode(m);
+        byte[] framed = new byte[encoded.length + 4];
+        System.arraycopy(encoded, 0, framed, 2, encoded.length);
+
+        assertThat(codec.decode(framed, 2, encoded.length), is(m));
+    }
+
+    @Test
+    public void testDecodeUnconfiguredField() throws Exception {
+        IsoMessageCodec codec = IsoMessageCodec.build("iso8583ascii.xml");
+        byte[] encoded = codec.encode(createMessage());
+        // bit 5 of the primary bitmap which follows the 4 char mti
+        encoded[4] |= 0x08;
+        try {
+            codec.decode(encoded);
+            fail("Failure expected due to unconfigured field");
+        } catch (CodecException e) {
+            assertThat(e.getMessage(), is("Missing configuration for 5"));
+        }
+    }
+
+    @Test
+    public void testDecodeMissingMandatoryField() throws Exception {
+        IsoMessageCodec codec = IsoMessageCodec.build("iso8583ascii.xml");
+        byte[] encoded = codec.encode(createMessage());
+        // drop field 4 (12 chars after mti, bitmap, field 2 and field 3) and its bit
+        byte[] withoutField4 = new byte[encoded.length - 12];
+        System.arraycopy(encoded, 0, withoutField4, 0, 36);
+        System.arraycopy(encoded, 48, withoutField4, 36, encoded.length - 48);
+        withoutField4[4] &= ~0x10;
+        try {
+            codec.decode(withoutField4);
+            fail("Failure expected due to missing mandatory field");
+        } catch (CodecException e) {
+            assertTrue(e.getMessage().startsWith("Missing mandatory component"));
+        }
+    }
+
+    @Test
+    public void testLazyDecode() throws Exception {
+        IsoMessageCodec codec = IsoMessageCodec.build("iso8583ascii.xml");
+        IsoMessageCodec lazyCodec = codec.withLazyDecoding();
+        IsoMessage m = createMessage();
+        byte[] encoded = codec.encode(m);
+
+        ByteBuffer buf = ByteBuffer.wrap(encoded);
+        IsoMessage lazy = lazyCodec.decode(buf);
+        assertThat(buf.hasRemaining(), is(false));
+        assertThat(lazy.getField(11), is((Object) 123456));
+        assertThat(lazy.getField("28.2"), is((Object) 200));
+        assertThat(lazy, is(m));
+        assertTrue(Arrays.equals(encoded, codec.encode(lazy)));
+    }
+
+    @Test
+    public void testLazyDecodeOnlyDecodesAccessedFields() throws Exception {
+        IsoMessageCodec codec = IsoMessageCodec.build("iso8583ascii.xml");
+        byte[] encoded = codec.encode(createMessage());
+        // corrupt field 7 which follows field 4
+        encoded[48] = 'X';
+
+        IsoMessage lazy = codec.withLazyDecoding().decode(encoded);
+        assertThat(lazy.getField(2), is((Object) "4111111111111111"));
+        assertThat(lazy.getField(11), is((Object) 123456));
+        try {
+            lazy.getField(7);
+            fail("Failure expected due to invalid date");
+        } catch (CodecException e) {
+            assertThat(lazy.getField(4), is((Object) 12345));
+        }
+    }
+
+    @Test
+    public void testPassthroughUntouchedFields() throws Exception {
+        IsoMessageCodec codec = IsoMessageCodec.build("iso8583ascii.xml");
+        IsoMessage m = createMessage();
+        byte[] encoded = codec.encode(m);
+        // corrupt field 7 which follows field 4, it can't be decoded but can still be forwarded as is
+        encoded[48] = 'X';
+
+        IsoMessage lazy = codec.withLazyDecoding().decode(encoded);
+        lazy.setField(11, 654321);
+        byte[] forwarded = codec.encode(lazy);
+
+        byte[] expected = encoded.clone();
+        System.arraycopy("654321".getBytes(StandardCharsets.ISO_8859_1), 0, expected, 58, 6);
+        assertTrue(Arrays.equals(expected, forwarded));
+    }
+
+    @Test
+    public void testPassthroughDropsMutableFieldsOnceAccessed() throws Exception {
+        IsoMessageCodec codec = IsoMessageCodec.build("iso8583ascii.xml");
+        IsoMessage lazy = codec.withLazyDecoding().decode(codec.encode(createMessage()));
+
+        Map<Integer, Object> field28 = lazy.getField(28);
+        field28.put(2, 300);
+        Date field13 = lazy.getField(13);
+        field13.setTime(new SimpleDateFormat("MMddHHmmss").parse("1231000000").getTime());
+
+        IsoMessage expected = createMessage();
+        expected.setField("28.2", 300);
+        expected.setField(13, field13);
+        assertTrue(Arrays.equals(codec.encode(expected), codec.encode(lazy)));
+    }
+
+    @Test
+    public void testEncodeWithPool() throws Exception {
+        BufferPool pool = new BufferPool(512, 2, true);
+        IsoMessageCodec pooled = IsoMessageCodec.build("iso8583ascii.xml", pool);
+        IsoMessageCodec codec = IsoMessageCodec.build("iso8583ascii.xml");
+        IsoMessage m = createMessage();
+
+        assertThat(pool.size(), is(0));
+        assertTrue(Arrays.equals(codec.encode(m), pooled.encode(m)));
+        assertThat(pool.size(), is(1));
+        assertTrue(Arrays.equals(codec.encode(m), pooled.encode(m)));
+        assertThat(pool.size(), is(1));
+    }
+
+    @Test
+    public void testBufferPoolBounds() {
+        BufferPool pool = new BufferPool(16, 1, false);
+        ByteBuffer buf1 = pool.acquire();
+        ByteBuffer buf2 = pool.acquire();
+        assertThat(buf1.capacity(), is(16));
+        assertThat(buf1.isDirect(), is(false));
+        buf1.put((byte) 1);
+        pool.release(buf1);
+        pool.release(buf2);
+        pool.release(ByteBuffer.allocate(8));
+        assertThat(pool.size(), is(1));
+        ByteBuffer reused = pool.acquire();
+        assertTrue(reused == buf1);
+        assertThat(reused.position(), is(0));
+        assertThat(pool.size(), is(0));
+    }
+
+    @Test
+    public void testBerTlv() throws Exception {
+        IsoMessageCodec codec = IsoMessageCodec.build("test-ber-tlv.xml");
+        IsoMessage m = new IsoMessage(100);
+        m.setField(11, 123456);
+        m.setField("55.130", new byte[]{0x39, 0x00});
+        m.setField("55.24362", 840);
+        m.setField("55.40706", 1000);
+        m.setField("55.40742", new byte[]{0x11, 0x22, 0x33, 0x44, 0x55, 0x66, 0x77, (byte) 0x88});
+        m.setField("55.112.87", new byte[]{0x41, 0x11, 0x11, 0x11, 0x11, 0x11, 0x11, 0x11, (byte) 0xD2, 0x51});
+        m.setField("55.112.24352", "CARDHOLDER/TEST");
+
+        byte[] encoded = codec.encode(m);
+        // field 55 follows the mti, bitmap, field 11 and the 3 digit length
+        byte[] field55 = Arrays.copyOfRange(encoded, 4 + 8 + 6 + 3, encoded.length);
+        assertThat(new String(encoded, 18, 3, StandardCharsets.ISO_8859_1), is(String.format("%03d", field55.length)));
+        // tags are encoded in ascending order so the constructed tag 0x70 comes first
+        assertTrue(Arrays.equals(new byte[]{0x70, 0x1E, 0x57, 0x0A, 0x41, 0x11}, Arrays.copyOf(field55, 6)));
+
+        IsoMessage decoded = codec.decode(encoded);
+        assertThat(decoded.getField("55.24362"), is((Object) 840));
+        assertThat(decoded.getField("55.40706"), is((Object) 1000));
+        assertThat(decoded.getField("55.112.24352"), is((Object) "CARDHOLDER/TEST"));
+        assertTrue(Arrays.equals((byte[]) m.getField("55.40742"), (byte[]) decoded.getField("55.40742")));
+        assertTrue(Arrays.equals((byte[]) m.getField("55.112.87"), (byte[]) decoded.getField("55.112.87")));
+        assertTrue(Arrays.equals(encoded, codec.encode(decoded)));
+    }
+
+    @Test
+    public void testEncodedLength() throws Exception {
+        IsoMessageCodec codec = IsoMessageCodec.build("iso8583ascii.xml");
+        IsoMessageCodec pooled = IsoMessageCodec.build("iso8583ascii.xml", new BufferPool(512, 1, false));
+        IsoMessage m = createMessage();
+        byte[] encoded = pooled.encode(m);
+        assertThat(codec.encodedLength(m), is(encoded.length));
+        assertTrue(Arrays.equals(encoded, codec.encode(m)));
+
+        m.setField(2, "41111111");
+        m.setField(28, null);
+        assertThat(codec.encodedLength(m), is(pooled.encode(m).length));
+    }
+
+    @Test
+    public void testEncodedLengthOfLazyMessage() throws Exception {
+        IsoMessageCodec codec = IsoMessageCodec.build("iso8583ascii.xml");
+        byte[] encoded = codec.encode(createMessage());
+        // corrupt field 7, its length is known without decoding it
+        encoded[48] = 'X';
+
+        IsoMessage lazy = codec.withLazyDecoding().decode(encoded);
+        assertThat(codec.encodedLength(lazy), is(encoded.length));
+    }
+
+    /**
+     * Decodes blank values as null.
+     */
+    public static class BlankAsNullCodec implements CustomCodec<String> {
+
+        @Override
+        public String decode(byte[] bytes) {
+            String value = new String(bytes, StandardCharsets.ISO_8859_1);
+            return value.trim().isEmpty() ? null : value;
+        }
+
+        @Override
+        public byte[] encode(String value) {
+            return value.getBytes(StandardCharsets.ISO_8859_1);
+        }
+
+    }
+
+    @Test
+    public void testCustomCodecDecodingNull() throws Exception {
+        String xml = "<iso xmlns=\"http://www.chiknrice.org/jen8583\">"
+                + "<defaults><var length-encoding=\"CHAR\"/><tlv tag-encoding=\"BINARY\" length-encoding=\"BINARY\"/>"
+                + "<alpha justified=\"LEFT\" trim=\"true\"/><numeric encoding=\"CHAR\"/>"
+                + "<date timezone=\"UTC\" encoding=\"CHAR\"/><ordinality mandatory=\"false\" fail-fast=\"true\"/>"
+                + "</defaults><mti-encoding type=\"CHAR\"/><msg-bitmap type=\"BINARY\"/><message mti=\"0200\">"
+                + "<numeric index=\"11\" length=\"6\"/><custom-var index=\"48\" length-digits=\"2\" codec=\""
+                + BlankAsNullCodec.class.getName() + "\"/></message></iso>";
+        IsoMessageCodec codec = IsoMessageCodec.build(
+                IsoMessageDef.build(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8))), null);
+
+        IsoMessage m = new IsoMessage(200);
+        m.setField(11, 1);
+        byte[] withoutBlank = codec.encode(m);
+        m.setField(48, "   ");
+
+        IsoMessage decoded = codec.decode(codec.encode(m));
+        assertFalse(decoded.getFields().containsKey(48));
+        assertTrue(Arrays.equals(withoutBlank, codec.encode(decoded)));
+    }
+
+    @Test
+    public void testEncodedLengthOfBerTlv() throws Exception {
+        IsoMessageCodec codec = IsoMessageCodec.build("test-ber-tlv.xml");
+        IsoMessage m = new IsoMessage(100);
+        m.setField(11, 1);
+        m.setField("55.130", new byte[]{0x39, 0x00});
+        m.setField("55.24362", 840);
+        m.setField("55.40706", 1000);
+        m.setField("55.40742", new byte[8]);
+        m.setField("55.14647553", new byte[200]);
+        m.setField("55.112.87", new byte[10]);
+        m.setField("55.112.24352", "TEST");
+
+        ByteBuffer buf = ByteBuffer.allocate(512);
+        assertThat(codec.encodedLength(m), is(codec.encode(m, buf)));
+    }
+
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2014 Ian Bondoc
+ *
+ * This file is part of Jen8583
+ *
+ * Jen8583 is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the License, or(at your option) any later version.
+ *
+ * Jen8583 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.chiknrice.iso.batch;
+
+import org.chiknrice.iso.CodecException;
+import org.chiknrice.iso.IsoMessage;
+import org.chiknrice.iso.IsoMessageCodec;
+import org.chiknrice.iso.config.ComponentDef.Encoding;
+import org.chiknrice.iso.net.FrameCodec;
+import org.chiknrice.iso.net.FrameWriter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import static java.lang.String.format;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="mailto:chiknrice@gmail.com">Ian Bondoc</a>
+ */
+public class BatchReaderTest {
+
+    private IsoMessageCodec codec;
+    private FrameCodec frameCodec;
+    private Path file;
+
+    @Before
+    public void setUp() throws IOException {
+        codec = IsoMessageCodec.build("test-net.xml");
+        frameCodec = new FrameCodec(Encoding.BCD, 4);
+        file = Files.createTempFile("batch", ".dat");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    private List<IsoMessage> write(int count) throws Exception {
+        SimpleDateFormat utc = new SimpleDateFormat("MMddHHmmss");
+        utc.setTimeZone(TimeZone.getTimeZone("UTC"));
+        List<IsoMessage> messages = new ArrayList<>();
+        FrameWriter writer = new FrameWriter(frameCodec);
+        for (int i = 0; i < count; i++) {
+            IsoMessage m = new IsoMessage(200);
+            m.setField(2, "4111111111111111".substring(0, 12 + i % 5));
+            m.setField(3, 0);
+            m.setField(4, i);
+            m.setField(7, utc.parse("0102030405"));
+            m.setField(11, i % 1000000);
+            m.setField(37, format("%012d", i));
+            m.setField(41, "TERM0001");
+            m.setField(49, 608);
+            messages.add(m);
+            writer.add(ByteBuffer.wrap(codec.encode(m)));
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            assertTrue(writer.flush(channel));
+        }
+        return messages;
+    }
+
+    @Test
+    public void testDecodeInOrder() throws Exception {
+        List<IsoMessage> messages = write(5000);
+        try (BatchReader reader = new BatchReader(file, frameCodec, codec)) {
+            assertThat(reader.size(), is(5000));
+            assertThat(reader.decodeAll(), is(messages));
+            assertThat(reader.decodeAll(new ForkJoinPool(2)), is(messages));
+            assertThat(reader.decode(42), is(messages.get(42)));
+        }
+    }
+
+    @Test
+    public void testUnorderedStream() throws Exception {
+        List<IsoMessage> messages = write(3000);
+        try (BatchReader reader = new BatchReader(file, frameCodec, codec.withLazyDecoding())) {
+            Set<Object> rrns = reader.stream().map(m -> m.getField(37)).collect(Collectors.toSet());
+            Set<Object> expected = new HashSet<>();
+            for (IsoMessage m : messages) {
+                expected.add(m.getField(37));
+            }
+            assertThat(rrns, is(expected));
+        }
+    }
+
+    @Test
+    public void testSegments() throws Exception {
+        List<IsoMessage> messages = write(500);
+        // segments much smaller than the file so that records would cross segment boundaries
+        try (BatchReader reader = new BatchReader(file, frameCodec, codec, 1000)) {
+            assertThat(reader.size(), is(500));
+            assertThat(reader.decodeAll(), is(messages));
+        }
+    }
+
+    @Test
+    public void testRecordExceedsSegment() throws Exception {
+        write(1);
+        try {
+            new BatchReader(file, frameCodec, codec, 20).close();
+            fail("Failure expected due to record larger than a segment");
+        } catch (CodecException e) {
+            assertThat(e.getMessage(), is("Record at offset 0 exceeds 20 bytes"));
+        }
+    }
+
+    @Test
+    public void testIncompleteRecord() throws Exception {
+        write(3);
+        long size = Files.size(file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(size - 1);
+        }
+        try {
+            new BatchReader(file, frameCodec, codec).close();
+            fail("Failure expected due to incomplete record");
+        } catch (CodecException e) {
+            assertTrue(e.getMessage().startsWith("Incomplete record at offset"));
+        }
+    }
+
+    @Test
+    public void testEmptyFile() throws Exception {
+        try (BatchReader reader = new BatchReader(file, frameCodec, codec)) {
+            assertThat(reader.size(), is(0));
+            assertTrue(reader.decodeAll().isEmpty());
+        }
+    }
+
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2014 Ian Bondoc
+ *
+ * This file is part of Jen8583
+ *
+ * Jen8583 is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the License, or(at your option) any later version.
+ *
+ * Jen8583 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.chiknrice.iso.batch;
+
+import org.chiknrice.iso.CodecException;
+import org.chiknrice.iso.IsoMessage;
+import org.chiknrice.iso.IsoMessageCodec;
+import org.chiknrice.iso.config.ComponentDef.Encoding;
+import org.chiknrice.iso.net.FrameCodec;
+import org.chiknrice.iso.util.BufferPool;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static java.lang.String.format;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="mailto:chiknrice@gmail.com">Ian Bondoc</a>
+ */
+public class BatchWriterTest {
+
+    private IsoMessageCodec codec;
+    private Path file;
+    private Date date;
+
+    @Before
+    public void setUp() throws IOException {
+        codec = IsoMessageCodec.build("test-net.xml");
+        file = Files.createTempFile("batch", ".dat");
+        date = new Date(0);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    private IsoMessage message(int i) {
+        IsoMessage m = new IsoMessage(200);
+        m.setField(2, "4111111111111111".substring(0, 12 + i % 5));
+        m.setField(3, 0);
+        m.setField(4, i);
+        m.setField(7, date);
+        m.setField(11, i % 1000000);
+        m.setField(37, format("%012d", i));
+        m.setField(41, "TERM0001");
+        m.setField(49, 608);
+        return m;
+    }
+
+    private void assertWritten(FrameCodec frameCodec, List<IsoMessage> messages) throws IOException {
+        try (BatchReader reader = new BatchReader(file, frameCodec, codec)) {
+            assertThat(reader.decodeAll(), is(messages));
+        }
+    }
+
+    @Test
+    public void testWriteStream() throws Exception {
+        FrameCodec frameCodec = new FrameCodec(Encoding.BINARY, 2);
+        List<IsoMessage> messages = IntStream.range(0, 5000).mapToObj(this::message).collect(Collectors.toList());
+        BufferPool bufferPool = new BufferPool(4096, 16, true);
+        try (BatchWriter writer = new BatchWriter(file, frameCodec, codec, bufferPool, 3000, true)) {
+            writer.write(messages.stream());
+            assertThat(writer.getCount(), is(5000L));
+        }
+        assertTrue(bufferPool.size() > 0);
+        assertWritten(frameCodec, messages);
+    }
+
+    @Test
+    public void testWriteBatches() throws Exception {
+        FrameCodec frameCodec = new FrameCodec(Encoding.CHAR, 4);
+        List<IsoMessage> messages = IntStream.range(0, 100).mapToObj(this::message).collect(Collectors.toList());
+        try (BatchWriter writer = new BatchWriter(file, frameCodec, codec, new BufferPool(1024, 4, false), 10,
+                false)) {
+            writer.writeBatch(messages.subList(0, 30));
+            writer.writeBatch(Collections.<IsoMessage>emptyList());
+            writer.writeBatch(messages.subList(30, 100));
+        }
+        assertWritten(frameCodec, messages);
+    }
+
+    @Test
+    public void testMessageExceedsBuffer() throws Exception {
+        FrameCodec frameCodec = new FrameCodec(Encoding.BINARY, 2);
+        try (BatchWriter writer = new BatchWriter(file, frameCodec, codec, new BufferPool(64, 4, false), 10,
+                false)) {
+            writer.writeBatch(Collections.singletonList(message(1)));
+            fail("Failure expected due to message larger than the buffer");
+        } catch (CodecException e) {
+            assertTrue(e.getMessage().contains("exceeds buffer size 64"));
+        }
+        assertThat(Files.size(file), is(0L));
+    }
+
+}
@@ -18,9 +18,11 @@ package org.chiknrice.iso.codec;
 import org.chiknrice.iso.CodecException;
 import org.chiknrice.iso.ConfigException;
 import org.chiknrice.iso.config.ComponentDef.Encoding;
+import org.chiknrice.iso.util.SingleByteCharset;
 import org.junit.Test;
 
 import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 
 import static org.hamcrest.CoreMatchers.is;
@@ -143,6 +145,42 @@ public class AlphaCodecTest {
         assertThat(decoded, is(" ü "));
     }
 
+    @Test
+    public void testEbcdic() {
+        AlphaCodec codec = new AlphaCodec(true, false, 6, SingleByteCharset.forName("cp037"));
+        ByteBuffer buf = ByteBuffer.allocateDirect(20);
+        codec.encode(buf, "Ab1ü");
+        buf.flip();
+        byte[] bytes = new byte[buf.remaining()];
+        buf.duplicate().get(bytes);
+        assertArrayEquals("  Ab1ü".getBytes(Charset.forName("cp037")), bytes);
+        assertThat(codec.decode(buf), is("Ab1ü"));
+        assertThat(buf.hasRemaining(), is(false));
+    }
+
+    @Test
+    public void testSingleByteCharsetTables() {
+        for (String name : new String[]{"ISO-8859-1", "cp037", "cp500", "windows-1252"}) {
+            Charset charset = Charset.forName(name);
+            SingleByteCharset singleByteCharset = SingleByteCharset.forName(name);
+            for (int b = 0; b < 256; b++) {
+                String expected = new String(new byte[]{(byte) b}, charset);
+                char c = singleByteCharset.toChar((byte) b);
+                assertThat(String.valueOf(c), is(expected));
+                if (c != '\uFFFD') {
+                    assertThat(singleByteCharset.toByte(c), is(String.valueOf(c).getBytes(charset)[0]));
+                }
+            }
+            assertThat(singleByteCharset.toByte('\u20AC'), is("\u20AC".getBytes(charset)[0]));
+        }
+        assertTrue(SingleByteCharset.forName("IBM037") == SingleByteCharset.forName("cp037"));
+    }
+
+    @Test(expected = ConfigException.class)
+    public void testMultiByteCharset() {
+        SingleByteCharset.forName("UTF-8");
+    }
+
     @Test
     public void testGetEncoding() {
         AlphaCodec codec = new AlphaCodec(false);
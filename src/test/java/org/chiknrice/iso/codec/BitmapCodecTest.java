@@ -21,7 +21,9 @@ import org.chiknrice.iso.codec.BitmapCodec.Bitmap.Type;
 import org.junit.Test;
 
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.TreeSet;
@@ -500,6 +502,52 @@ public class BitmapCodecTest {
         }
     }
 
+    @Test
+    public void testWordsAndControlBits() {
+        byte[] bytes = new byte[4];
+        bytes[0] = (byte) Integer.parseInt("11000000", 2);
+        bytes[1] = (byte) Integer.parseInt("00000001", 2);
+        bytes[2] = (byte) Integer.parseInt("10000000", 2);
+        bytes[3] = (byte) Integer.parseInt("00100000", 2);
+
+        Bitmap bitmap = new BitmapCodec(Type.COMPRESSED).decode(ByteBuffer.wrap(bytes));
+        assertThat(bitmap.getWordCount(), is(1));
+        assertThat(bitmap.getWord(0), is(0xC001802000000000L));
+        assertThat(bitmap.getWord(1), is(0L));
+        assertThat(bitmap.isControlBit(1), is(true));
+        assertThat(bitmap.isControlBit(9), is(false));
+        assertThat(bitmap.isControlBit(17), is(true));
+        assertThat(bitmap.isControlBit(25), is(true));
+        assertThat(bitmap.isControlBit(33), is(true));
+        assertThat(bitmap.getWord(0) & ~bitmap.getControlBits(0), is(0x4001002000000000L));
+
+        assertThat(Type.BINARY.getControlBits(0), is(Long.MIN_VALUE));
+        assertThat(Type.BINARY.getControlBits(1), is(0L));
+    }
+
+    @Test
+    public void testEncodeWords() {
+        long[] bits = {0x6908080000000000L, 0x4000000000000000L};
+
+        for (Type type : Type.values()) {
+            BitmapCodec codec = new BitmapCodec(type);
+            ByteBuffer buf = ByteBuffer.allocate(40).order(ByteOrder.LITTLE_ENDIAN);
+            codec.encode(buf, bits);
+            int length = buf.position();
+
+            ByteBuffer expected = ByteBuffer.allocate(40);
+            codec.encode(expected, new TreeSet<>(Arrays.asList(2, 3, 5, 8, 13, 21, 66)));
+            assertThat(length, is(expected.position()));
+            assertThat(Arrays.copyOf(buf.array(), length), is(Arrays.copyOf(expected.array(), length)));
+
+            buf.flip();
+            Bitmap bitmap = codec.decode(buf);
+            assertThat(buf.position(), is(length));
+            assertThat(bitmap.getWord(0) & ~bitmap.getControlBits(0), is(bits[0]));
+            assertThat(bitmap.getWord(1) & ~bitmap.getControlBits(1), is(bits[1] & ~type.getControlBits(1)));
+        }
+    }
+
     @Test
     public void testDecodeCompressedSecondary() {
         // 8 bytes for primary bitmap
@@ -651,4 +699,20 @@ public class BitmapCodecTest {
         assertNotEquals(codec2.hashCode(), codec3.hashCode());
     }
 
+    @Test
+    public void testEncodedLength() {
+        for (Type type : Type.values()) {
+            BitmapCodec codec = new BitmapCodec(type);
+            for (int[] bits : new int[][]{{}, {2}, {2, 15}, {2, 31}, {66}, {2, 140}}) {
+                Set<Integer> enabledBits = new TreeSet<>();
+                for (int bit : bits) {
+                    enabledBits.add(bit);
+                }
+                ByteBuffer buf = ByteBuffer.allocate(64);
+                codec.encode(buf, enabledBits);
+                assertThat(type + " " + enabledBits, codec.encodedLength(enabledBits), is(buf.position()));
+            }
+        }
+    }
+
 }
@@ -18,12 +18,15 @@ package org.chiknrice.iso.codec;
 import org.chiknrice.iso.CodecException;
 import org.chiknrice.iso.ConfigException;
 import org.chiknrice.iso.config.ComponentDef.Encoding;
+import org.chiknrice.iso.util.Bcd;
 import org.junit.Test;
 
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.time.LocalDateTime;
+import java.time.MonthDay;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.TimeZone;
@@ -99,6 +102,84 @@ public class DateTimeCodecTest {
         }
     }
 
+    @Test
+    public void testCompiledPatterns() throws ParseException {
+        TimeZone utc = TimeZone.getTimeZone("UTC");
+        SimpleDateFormat sdf = new SimpleDateFormat("yyyyMMddHHmmss");
+        sdf.setTimeZone(utc);
+        Date date = sdf.parse("20241130235958");
+        String[] patterns = {"MMddHHmmss", "HHmmss", "MMdd", "yyMM", "hhmmss", "yyyyMMddHHmmss", "yy-MM"};
+        for (String pattern : patterns) {
+            SimpleDateFormat expected = new SimpleDateFormat(pattern);
+            expected.setLenient(false);
+            expected.setTimeZone(utc);
+            for (Encoding encoding : new Encoding[]{Encoding.CHAR, Encoding.BCD}) {
+                // only patterns of fixed width digits can be BCD encoded
+                if (Encoding.BCD == encoding && !expected.format(date).matches("\\d{" + pattern.length() + "}")) {
+                    continue;
+                }
+                DateTimeCodec codec = new DateTimeCodec(pattern, utc, encoding);
+                ByteBuffer buf = ByteBuffer.allocate(20);
+                codec.encode(buf, date);
+                byte[] bytes = Arrays.copyOf(buf.array(), buf.position());
+                String formatted = expected.format(date);
+                byte[] expectedBytes = Encoding.CHAR == encoding ? formatted.getBytes(StandardCharsets.ISO_8859_1) :
+                        Bcd.encode(formatted);
+                assertTrue(pattern, Arrays.equals(expectedBytes, bytes));
+                buf.flip();
+                assertThat(pattern, codec.decode(buf), is(expected.parse(formatted)));
+                assertThat(buf.hasRemaining(), is(false));
+            }
+        }
+    }
+
+    @Test
+    public void testInvalidDate() {
+        DateTimeCodec codec = new DateTimeCodec("MMdd", TimeZone.getTimeZone("UTC"), Encoding.CHAR);
+        try {
+            codec.decode(ByteBuffer.wrap("1332".getBytes(StandardCharsets.ISO_8859_1)));
+            fail("Failure expected due to invalid date");
+        } catch (CodecException e) {
+            assertThat(e.getMessage(), is("Unparseable date: \"1332\""));
+        }
+    }
+
+    @Test
+    public void testJavaTimeValues() {
+        TimeZone tz = TimeZone.getTimeZone("Asia/Manila");
+        DateTimeCodec codec = new DateTimeCodec("MMddHHmmss", tz, Encoding.BCD);
+        ByteBuffer buf = ByteBuffer.allocate(20);
+        codec.encodeLocalDateTime(buf, LocalDateTime.of(2015, 12, 31, 23, 59, 58));
+        assertTrue(Arrays.equals(new byte[]{0x12, 0x31, 0x23, 0x59, 0x58}, Arrays.copyOf(buf.array(), 5)));
+
+        buf.flip();
+        assertThat(codec.decodeLocalDateTime(buf.duplicate()), is(LocalDateTime.of(1970, 12, 31, 23, 59, 58)));
+        assertThat(codec.decodeMonthDay(buf.duplicate()), is(MonthDay.of(12, 31)));
+        long millis = codec.decodeEpochMillis(buf);
+        assertThat(millis, is(LocalDateTime.of(1970, 12, 31, 23, 59, 58).atZone(tz.toZoneId()).toInstant()
+                .toEpochMilli()));
+
+        DateTimeCodec monthDay = new DateTimeCodec("MMdd", tz, Encoding.CHAR);
+        buf.clear();
+        monthDay.encodeMonthDay(buf, MonthDay.of(2, 29));
+        buf.flip();
+        assertThat(monthDay.decodeMonthDay(buf), is(MonthDay.of(2, 29)));
+    }
+
+    @Test
+    public void testTemporalCodec() {
+        DateTimeCodec dateCodec = new DateTimeCodec("yyMMddHHmmss", TimeZone.getTimeZone("UTC"), Encoding.CHAR);
+        TemporalCodec codec = new TemporalCodec(dateCodec, TemporalCodec.Type.LOCAL_DATE_TIME);
+        ByteBuffer buf = ByteBuffer.allocate(20);
+        codec.encode(buf, LocalDateTime.of(2015, 1, 2, 3, 4, 5));
+        assertThat(new String(buf.array(), 0, 12, StandardCharsets.ISO_8859_1), is("150102030405"));
+
+        buf.flip();
+        assertThat(codec.decode(buf.duplicate()), is((Object) LocalDateTime.of(2015, 1, 2, 3, 4, 5)));
+        TemporalCodec epochMillis = new TemporalCodec(dateCodec, TemporalCodec.Type.EPOCH_MILLIS);
+        assertThat(epochMillis.decode(buf), is((Object) 1420167845000L));
+    }
+
     @Test
     public void testGetEncoding() {
         DateTimeCodec codec = new DateTimeCodec("hhmmss", TimeZone.getDefault(), Encoding.BCD);
@@ -221,6 +221,94 @@ public class NumericCodecTest {
         }
     }
 
+    @Test
+    public void testPrimitiveRoundTrip() {
+        ByteBuffer buf = ByteBuffer.allocate(20);
+        NumericCodec charCodec = new NumericCodec(Encoding.CHAR, 6);
+        charCodec.encodeLong(buf, 123L);
+        NumericCodec bcdCodec = new NumericCodec(Encoding.BCD, 3);
+        bcdCodec.encodeLong(buf, 45L);
+        NumericCodec binaryCodec = new NumericCodec(Encoding.BINARY, 3);
+        binaryCodec.encodeLong(buf, 0x010203L);
+        assertThat(buf.position(), is(11));
+        assertThat(new String(buf.array(), 0, 6, StandardCharsets.ISO_8859_1), is("000123"));
+        assertThat(buf.get(6), is((byte) 0x00));
+        assertThat(buf.get(7), is((byte) 0x45));
+
+        buf.flip();
+        assertThat(charCodec.decodeLong(buf), is(123L));
+        assertThat(bcdCodec.decodeLong(buf), is(45L));
+        assertThat(binaryCodec.decodeLong(buf), is(0x010203L));
+        assertThat(buf.hasRemaining(), is(false));
+    }
+
+    @Test
+    public void testEncodeNegativeChar() {
+        NumericCodec codec = new NumericCodec(Encoding.CHAR, 6);
+        ByteBuffer buf = ByteBuffer.allocate(20);
+        codec.encode(buf, -123);
+        assertThat(new String(buf.array(), 0, 6, StandardCharsets.ISO_8859_1), is("-00123"));
+        buf.flip();
+        assertThat(codec.decode(buf), is((Number) (-123)));
+    }
+
+    @Test(expected = CodecException.class)
+    public void testEncodeExceedingFixedLength() {
+        NumericCodec codec = new NumericCodec(Encoding.CHAR, 3);
+        codec.encode(ByteBuffer.allocate(20), 1234);
+    }
+
+    @Test
+    public void testDecodeLongExceedingLong() {
+        NumericCodec codec = new NumericCodec(Encoding.CHAR);
+        ByteBuffer buf = ByteBuffer.wrap("9223372036854775808".getBytes(StandardCharsets.ISO_8859_1));
+        try {
+            codec.decodeLong(buf);
+            fail("Failure expected due to value exceeding long");
+        } catch (CodecException e) {
+            assertThat(e.getMessage(), is("Value exceeds long type 9223372036854775808"));
+        }
+        assertThat(codec.decode(buf), is((Number) new BigInteger("9223372036854775808")));
+    }
+
+    @Test
+    public void testDecodeBcdWithFiller() {
+        NumericCodec right = new NumericCodec(Encoding.BCD, null, false, 0xF);
+        assertThat(right.decode(ByteBuffer.wrap(new byte[]{0x12, 0x34, 0x5F})), is((Number) 12345));
+        assertThat(right.decodeLong(ByteBuffer.wrap(new byte[]{0x12, 0x34, 0x5F})), is(12345L));
+        assertThat(right.decode(ByteBuffer.wrap(new byte[]{0x12, 0x34, 0x56})), is((Number) 123456));
+        NumericCodec left = new NumericCodec(Encoding.BCD, null, true, 0xF);
+        assertThat(left.decode(ByteBuffer.wrap(new byte[]{(byte) 0xF1, 0x23, 0x45})), is((Number) 12345));
+        assertThat(left.decode(ByteBuffer.wrap(new byte[]{0x01, 0x23, 0x45})), is((Number) 12345));
+    }
+
+    @Test(expected = CodecException.class)
+    public void testDecodeBcdWithFillerOnOtherSide() {
+        new NumericCodec(Encoding.BCD).decode(ByteBuffer.wrap(new byte[]{0x12, 0x34, 0x5F}));
+    }
+
+    @Test
+    public void testBcdWithFillerRoundTrip() {
+        NumericCodec[] codecs = {new NumericCodec(Encoding.BCD, null, false, 0xF),
+                new NumericCodec(Encoding.BCD, null, true, 0xF), new NumericCodec(Encoding.BCD, 5, false, 0xF),
+                new NumericCodec(Encoding.BCD, 5, true, 0)};
+        byte[][] expected = {{0x12, 0x34, 0x5F}, {(byte) 0xF1, 0x23, 0x45}, {0x12, 0x34, 0x5F}, {0x01, 0x23, 0x45}};
+        for (int i = 0; i < codecs.length; i++) {
+            for (Number value : new Number[]{12345, new BigInteger("12345")}) {
+                ByteBuffer buf = ByteBuffer.allocate(codecs[i].encodedLength(value));
+                codecs[i].encode(buf, value);
+                assertArrayEquals(expected[i], buf.array());
+                buf.flip();
+                assertThat(codecs[i].decode(buf), is((Number) 12345));
+            }
+        }
+    }
+
+    @Test(expected = ConfigException.class)
+    public void testVariableLengthRightPaddedWithDigit() {
+        new NumericCodec(Encoding.BCD, null, false, 0);
+    }
+
     @Test
     public void testGetEncoding() {
         NumericCodec codec = new NumericCodec(Encoding.BCD);
@@ -242,6 +330,8 @@ public class NumericCodecTest {
         assertNotEquals(codec1.hashCode(), codec3.hashCode());
         assertTrue(!codec2.equals(codec3));
         assertNotEquals(codec2.hashCode(), codec3.hashCode());
+        assertTrue(!codec1.equals(new NumericCodec(Encoding.CHAR, 5, false, 0)));
+        assertTrue(!codec1.equals(new NumericCodec(Encoding.CHAR, 5, true, 0xF)));
     }
 
 }
@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) 2014 Ian Bondoc
+ *
+ * This file is part of Jen8583
+ *
+ * Jen8583 is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the License, or(at your option) any later version.
+ *
+ * Jen8583 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.chiknrice.iso.codec;
+
+import org.chiknrice.iso.CodecException;
+import org.chiknrice.iso.config.ComponentDef;
+import org.chiknrice.iso.config.ComponentDef.Encoding;
+import org.chiknrice.iso.config.CompositeDef;
+import org.chiknrice.iso.config.CompositePlan;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="mailto:chiknrice@gmail.com">Ian Bondoc</a>
+ */
+public class TlvCompositeCodecTest {
+
+    private static CompositePlan plan(TlvCompositeCodec codec) {
+        TreeMap<Integer, ComponentDef> defs = new TreeMap<>();
+        defs.put(1, new ComponentDef(new AlphaCodec(false), true));
+        defs.put(2, new ComponentDef(new NumericCodec(Encoding.BCD), false));
+        defs.put(3, new ComponentDef(new BinaryCodec(), false));
+        return new CompositeDef(defs, codec, true).getPlan();
+    }
+
+    private static CompositePlan berPlan(BerTlvCompositeCodec codec) {
+        TreeMap<Integer, ComponentDef> defs = new TreeMap<>();
+        defs.put(0x82, new ComponentDef(new BinaryCodec(), false));
+        defs.put(0x5F2A, new ComponentDef(new NumericCodec(Encoding.BCD), false));
+        defs.put(0x9F26, new ComponentDef(new BinaryCodec(), false));
+        defs.put(0xDF8101, new ComponentDef(new BinaryCodec(), false));
+        return new CompositeDef(defs, codec, true).getPlan();
+    }
+
+    @Test
+    public void testEncodeInPlace() {
+        TlvCompositeCodec codec = new TlvCompositeCodec(Encoding.BINARY, Encoding.BINARY, true);
+        CompositePlan plan = plan(codec);
+        Map<Integer, Object> values = new TreeMap<>();
+        values.put(1, "abc");
+        values.put(2, 12345);
+        values.put(3, new byte[]{0x0A});
+
+        ByteBuffer buf = ByteBuffer.allocate(20);
+        codec.encode(buf, values, plan);
+        assertTrue(Arrays.equals(new byte[]{0x01, 0x00, 0x03, 'a', 'b', 'c', 0x02, 0x00, 0x06, 0x01, 0x23, 0x45, 0x03,
+                0x00, 0x01, 0x0A}, Arrays.copyOf(buf.array(), buf.position())));
+
+        buf.flip();
+        Map<Integer, Object> decoded = codec.decode(buf, plan);
+        assertThat(decoded.get(1), is((Object) "abc"));
+        assertThat(decoded.get(2), is((Object) 12345));
+        assertTrue(Arrays.equals(new byte[]{0x0A}, (byte[]) decoded.get(3)));
+    }
+
+    @Test
+    public void testBcdLength() {
+        TlvCompositeCodec codec = new TlvCompositeCodec(Encoding.BCD, Encoding.BCD, true);
+        CompositePlan plan = plan(codec);
+        Map<Integer, Object> values = new TreeMap<>();
+        values.put(1, "abc");
+
+        ByteBuffer buf = ByteBuffer.allocate(20);
+        codec.encode(buf, values, plan);
+        assertTrue(Arrays.equals(new byte[]{0x01, 0x03, 'a', 'b', 'c'}, Arrays.copyOf(buf.array(), buf.position())));
+        buf.flip();
+        assertThat(codec.decode(buf, plan), is(values));
+    }
+
+    @Test
+    public void testBerMultiByteTags() {
+        BerTlvCompositeCodec codec = new BerTlvCompositeCodec(true);
+        CompositePlan plan = berPlan(codec);
+        Map<Integer, Object> values = new TreeMap<>();
+        values.put(0x82, new byte[]{0x39, 0x00});
+        values.put(0x5F2A, 840);
+        values.put(0x9F26, new byte[]{0x11, 0x22});
+        values.put(0xDF8101, new byte[]{0x01});
+
+        ByteBuffer buf = ByteBuffer.allocate(30);
+        codec.encode(buf, values, plan);
+        assertTrue(Arrays.equals(new byte[]{(byte) 0x82, 0x02, 0x39, 0x00, 0x5F, 0x2A, 0x02, 0x08, 0x40,
+                (byte) 0x9F, 0x26, 0x02, 0x11, 0x22, (byte) 0xDF, (byte) 0x81, 0x01, 0x01, 0x01},
+                Arrays.copyOf(buf.array(), buf.position())));
+
+        buf.flip();
+        Map<Integer, Object> decoded = codec.decode(buf, plan);
+        assertThat(decoded.get(0x5F2A), is((Object) 840));
+        assertTrue(Arrays.equals(new byte[]{0x11, 0x22}, (byte[]) decoded.get(0x9F26)));
+        assertTrue(Arrays.equals(new byte[]{0x01}, (byte[]) decoded.get(0xDF8101)));
+    }
+
+    @Test
+    public void testBerLongFormLength() {
+        BerTlvCompositeCodec codec = new BerTlvCompositeCodec(true);
+        CompositePlan plan = berPlan(codec);
+        byte[] large = new byte[300];
+        for (int i = 0; i < large.length; i++) {
+            large[i] = (byte) i;
+        }
+        Map<Integer, Object> values = new TreeMap<>();
+        values.put(0x82, new byte[200]);
+        values.put(0x9F26, large);
+
+        for (ByteBuffer buf : new ByteBuffer[]{ByteBuffer.allocate(600), ByteBuffer.allocateDirect(600)}) {
+            codec.encode(buf, values, plan);
+            assertThat(buf.position(), is(1 + 2 + 200 + 2 + 3 + 300));
+            assertThat(buf.get(1), is((byte) 0x81));
+            assertThat(buf.get(2), is((byte) 200));
+            assertThat(buf.get(205), is((byte) 0x82));
+            assertThat(buf.get(206), is((byte) 0x01));
+            assertThat(buf.get(207), is((byte) 0x2C));
+
+            buf.flip();
+            Map<Integer, Object> decoded = codec.decode(buf, plan);
+            assertTrue(Arrays.equals(new byte[200], (byte[]) decoded.get(0x82)));
+            assertTrue(Arrays.equals(large, (byte[]) decoded.get(0x9F26)));
+        }
+    }
+
+    @Test
+    public void testBerSkipsPadding() {
+        BerTlvCompositeCodec codec = new BerTlvCompositeCodec(true);
+        ByteBuffer buf = ByteBuffer.wrap(new byte[]{0x00, (byte) 0x9F, 0x26, 0x01, 0x0A, 0x00, 0x00});
+        Map<Integer, Object> decoded = codec.decode(buf, berPlan(codec));
+        assertThat(decoded.size(), is(1));
+        assertTrue(Arrays.equals(new byte[]{0x0A}, (byte[]) decoded.get(0x9F26)));
+    }
+
+    @Test
+    public void testBerInvalidLength() {
+        BerTlvCompositeCodec codec = new BerTlvCompositeCodec(true);
+        ByteBuffer buf = ByteBuffer.wrap(new byte[]{(byte) 0x9F, 0x26, (byte) 0x81, 0x05, 0x0A});
+        try {
+            codec.decode(buf, berPlan(codec));
+            fail("Failure expected due to length exceeding the data");
+        } catch (CodecException e) {
+            assertThat(e.getMessage(), is("Length of tag 40742 exceeds remaining 1 bytes"));
+        }
+    }
+
+}
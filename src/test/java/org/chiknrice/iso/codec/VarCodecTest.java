@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2014 Ian Bondoc
+ *
+ * This file is part of Jen8583
+ *
+ * Jen8583 is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the License, or(at your option) any later version.
+ *
+ * Jen8583 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.chiknrice.iso.codec;
+
+import org.chiknrice.iso.config.ComponentDef.Encoding;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="mailto:chiknrice@gmail.com">Ian Bondoc</a>
+ */
+public class VarCodecTest {
+
+    private static byte[] encode(Codec<Number> codec, Number value) {
+        ByteBuffer buf = ByteBuffer.allocate(32);
+        buf.position(1);
+        codec.encode(buf, value);
+        assertThat(codec.encodedLength(value), is(buf.position() - 1));
+        return Arrays.copyOfRange(buf.array(), 1, buf.position());
+    }
+
+    @Test
+    public void testBcdDigitCount() {
+        VarCodec<Number> codec = new VarCodec<>(new NumericCodec(Encoding.CHAR, 2), new NumericCodec(Encoding.BCD));
+        assertTrue(Arrays.equals(new byte[]{'0', '3', 0x01, 0x23}, encode(codec, 123)));
+        assertTrue(Arrays.equals(new byte[]{'0', '4', 0x12, 0x34}, encode(codec, 1234L)));
+        assertTrue(Arrays.equals(new byte[]{'0', '1', 0x00}, encode(codec, 0)));
+        assertTrue(Arrays.equals(new byte[]{'1', '9', 0x01, 0x23, 0x45, 0x67, (byte) 0x89, 0x01, 0x23, 0x45, 0x67,
+                (byte) 0x89}, encode(codec, new BigInteger("1234567890123456789"))));
+
+        assertThat(codec.decode(ByteBuffer.wrap(new byte[]{'0', '3', 0x01, 0x23})), is((Number) 123));
+    }
+
+    @Test
+    public void testBcdDigitCountWithFiller() {
+        BigInteger pan = new BigInteger("4111111111111111111");
+        VarCodec<Number> right = new VarCodec<>(new NumericCodec(Encoding.CHAR, 2),
+                new NumericCodec(Encoding.BCD, null, false, 0xF));
+        byte[] encoded = encode(right, pan);
+        assertTrue(Arrays.equals(new byte[]{'1', '9', 0x41, 0x11, 0x11, 0x11, 0x11, 0x11, 0x11, 0x11, 0x11, 0x1F},
+                encoded));
+        assertThat(right.decode(ByteBuffer.wrap(encoded)), is((Number) pan));
+
+        VarCodec<Number> left = new VarCodec<>(new NumericCodec(Encoding.CHAR, 2),
+                new NumericCodec(Encoding.BCD, null, true, 0xF));
+        encoded = encode(left, pan);
+        assertTrue(Arrays.equals(new byte[]{'1', '9', (byte) 0xF4, 0x11, 0x11, 0x11, 0x11, 0x11, 0x11, 0x11, 0x11,
+                0x11}, encoded));
+        assertThat(left.decode(ByteBuffer.wrap(encoded)), is((Number) pan));
+    }
+
+    @Test
+    public void testCharLength() {
+        VarCodec<Number> codec = new VarCodec<>(new NumericCodec(Encoding.BINARY, 1), new NumericCodec(Encoding.CHAR));
+        assertTrue(Arrays.equals(new byte[]{0x04, '-', '1', '2', '3'}, encode(codec, -123)));
+        assertThat(codec.decode(ByteBuffer.wrap(new byte[]{0x04, '-', '1', '2', '3'})), is((Number) (-123)));
+    }
+
+    @Test
+    public void testAlphaLength() {
+        VarCodec<String> codec = new VarCodec<>(new NumericCodec(Encoding.BCD, 2), new AlphaCodec(false));
+        ByteBuffer buf = ByteBuffer.allocate(8);
+        codec.encode(buf, "abc");
+        assertTrue(Arrays.equals(new byte[]{0x03, 'a', 'b', 'c'}, Arrays.copyOf(buf.array(), buf.position())));
+    }
+
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2014 Ian Bondoc
+ *
+ * This file is part of Jen8583
+ *
+ * Jen8583 is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the License, or(at your option) any later version.
+ *
+ * Jen8583 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.chiknrice.iso.codec;
+
+import org.chiknrice.iso.CodecException;
+import org.chiknrice.iso.codec.BitmapCodec.Bitmap.Type;
+import org.chiknrice.iso.config.ComponentDef;
+import org.chiknrice.iso.config.ComponentDef.Encoding;
+import org.chiknrice.iso.config.CompositeDef;
+import org.chiknrice.iso.config.CompositePlan;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="mailto:chiknrice@gmail.com">Ian Bondoc</a>
+ */
+public class VarCompositeCodecTest {
+
+    private static CompositePlan plan(VarCompositeCodec codec) {
+        TreeMap<Integer, ComponentDef> defs = new TreeMap<>();
+        defs.put(2, new ComponentDef(new AlphaCodec(false, true, 3), true));
+        defs.put(3, new ComponentDef(new NumericCodec(Encoding.CHAR, 2), false));
+        return new CompositeDef(defs, codec, true).getPlan();
+    }
+
+    /**
+     * Encodes only the optional component, the encoder doesn't fail fast so it just warns of the missing mandatory one.
+     */
+    private static ByteBuffer missingMandatory() {
+        VarCompositeCodec codec = new VarCompositeCodec(new BitmapCodec(Type.BINARY), false);
+        Map<Integer, Object> values = new TreeMap<>();
+        values.put(3, 12);
+        ByteBuffer buf = ByteBuffer.allocate(16);
+        codec.encode(buf, values, plan(codec));
+        buf.flip();
+        return buf;
+    }
+
+    @Test
+    public void testDecodeMissingMandatoryFailFast() {
+        VarCompositeCodec codec = new VarCompositeCodec(new BitmapCodec(Type.BINARY), true);
+        try {
+            codec.decode(missingMandatory(), plan(codec));
+            fail("Failure expected due to missing mandatory component");
+        } catch (CodecException e) {
+            assertThat(e.getMessage(), is("Missing mandatory component 2"));
+        }
+    }
+
+    @Test
+    public void testDecodeMissingMandatoryWithoutFailFast() {
+        VarCompositeCodec codec = new VarCompositeCodec(new BitmapCodec(Type.BINARY), false);
+        Map<Integer, Object> decoded = codec.decode(missingMandatory(), plan(codec));
+        assertThat(decoded.size(), is(1));
+        assertThat(decoded.get(3), is((Object) 12));
+        assertFalse(decoded.containsKey(2));
+    }
+
+}
@@ -19,7 +19,6 @@ package org.chiknrice.iso.config;
 import org.chiknrice.iso.codec.Codec;
 import org.chiknrice.iso.codec.CompositeCodec;
 import org.chiknrice.iso.codec.VarCodec;
-import org.hamcrest.CoreMatchers;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
 import org.mockito.invocation.InvocationOnMock;
@@ -105,9 +104,11 @@ public class CompositeDefTest {
 
         compositeDef.getCodec().decode(buf);
 
-        ArgumentCaptor<SortedMap> arg = ArgumentCaptor.forClass(SortedMap.class);
+        ArgumentCaptor<CompositePlan> arg = ArgumentCaptor.forClass(CompositePlan.class);
         verify(compositeCodec).decode(any(ByteBuffer.class), arg.capture());
-        assertThat(arg.getValue(), CoreMatchers.<SortedMap>is(subComponentDefs));
+        assertThat(arg.getValue(), is(compositeDef.getPlan()));
+        assertThat(arg.getValue().size(), is(1));
+        assertThat(arg.getValue().getDef(1), is(subComponentDefs.get(1)));
 
         Map<Integer, Object> toEncode = new HashMap<>();
         toEncode.put(1, "1");
@@ -116,7 +117,7 @@ public class CompositeDefTest {
 
         compositeDef.getCodec().encode(buf, toEncode);
 
-        verify(compositeCodec).encode(buf, toEncode, subComponentDefs);
+        verify(compositeCodec).encode(buf, toEncode, compositeDef.getPlan());
     }
 
 
@@ -144,6 +145,20 @@ public class CompositeDefTest {
         verify(componentDef3).setParent(compositeDef);
     }
 
+    @Test
+    public void testPlanLastDirectIndex() {
+        SortedMap<Integer, ComponentDef> subComponentDefs = new TreeMap<>();
+        subComponentDefs.put(0x5F2A, mock(ComponentDef.class));
+        subComponentDefs.put(0x9F26, mock(ComponentDef.class));
+        CompositePlan plan = new CompositeDef(subComponentDefs, mock(CompositeCodec.class), true).getPlan();
+        assertThat(plan.getLastIndex(), is(0x9F26));
+        assertThat(plan.getLastDirectIndex(), is(0));
+
+        subComponentDefs.put(0x82, mock(ComponentDef.class));
+        plan = new CompositeDef(subComponentDefs, mock(CompositeCodec.class), true).getPlan();
+        assertThat(plan.getLastDirectIndex(), is(0x82));
+    }
+
     @Test
     public void testClone() {
 
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2014 Ian Bondoc
+ *
+ * This file is part of Jen8583
+ *
+ * Jen8583 is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the License, or(at your option) any later version.
+ *
+ * Jen8583 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.chiknrice.iso.config;
+
+import org.chiknrice.iso.IsoMessage;
+import org.chiknrice.iso.IsoMessageCodec;
+import org.chiknrice.iso.codec.BerTlvCompositeCodec;
+import org.chiknrice.iso.codec.NumericCodec;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.stream.Stream;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="mailto:chiknrice@gmail.com">Ian Bondoc</a>
+ */
+public class IsoMessageDefSnapshotTest {
+
+    private Path dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("snapshots");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(dir);
+    }
+
+    private static void assertSameDef(IsoMessageDef expected, IsoMessageDef actual) {
+        assertThat(actual.getHeaderDef(), is(expected.getHeaderDef()));
+        assertThat(actual.getMtiCodec(), is(expected.getMtiCodec()));
+        assertThat(actual.getFieldsDef(), is(expected.getFieldsDef()));
+    }
+
+    @Test
+    public void testSnapshotRoundTrip() throws Exception {
+        for (String config : new String[]{"test.xml", "iso8583ascii.xml", "test-ber-tlv.xml", "test-net.xml"}) {
+            IsoMessageDef built = IsoMessageDef.build(config);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            IsoMessageDefSnapshot.write(built, "hash", out);
+            IsoMessageDef loaded = IsoMessageDefSnapshot.read(new ByteArrayInputStream(out.toByteArray()), "hash");
+            assertSameDef(built, loaded);
+            assertNull(IsoMessageDefSnapshot.read(new ByteArrayInputStream(out.toByteArray()), "other"));
+        }
+    }
+
+    @Test
+    public void testLoadWritesAndReusesSnapshot() throws Exception {
+        IsoMessageDef built = IsoMessageDef.build("test-net.xml");
+        IsoMessageDef first = IsoMessageDef.build("test-net.xml", dir);
+        Path snapshot = dir.resolve("test-net.xml" + IsoMessageDefSnapshot.SUFFIX);
+        assertTrue(Files.isRegularFile(snapshot));
+        byte[] written = Files.readAllBytes(snapshot);
+
+        IsoMessageDef second = IsoMessageDef.build("test-net.xml", dir);
+        assertSameDef(built, first);
+        assertSameDef(built, second);
+        assertTrue(Arrays.equals(written, Files.readAllBytes(snapshot)));
+
+        // the loaded definition encodes and decodes just like the built one
+        IsoMessage m = new IsoMessage(200);
+        m.setField(2, "4111111111111111");
+        m.setField(3, 0);
+        m.setField(4, 100);
+        m.setField(7, new Date(0));
+        m.setField(11, 1);
+        m.setField(37, "000000000001");
+        m.setField(41, "TERM0001");
+        m.setField(49, 608);
+        byte[] encoded = IsoMessageCodec.build(built, null).encode(m);
+        IsoMessageCodec loadedCodec = IsoMessageCodec.build(second, null);
+        assertTrue(Arrays.equals(encoded, loadedCodec.encode(m)));
+        assertThat(loadedCodec.decode(encoded), is(m));
+    }
+
+    @Test
+    public void testStaleSnapshotIsReplaced() throws Exception {
+        Path snapshot = dir.resolve("test.xml" + IsoMessageDefSnapshot.SUFFIX);
+        try (OutputStream out = Files.newOutputStream(snapshot)) {
+            IsoMessageDefSnapshot.write(IsoMessageDef.build("iso8583ascii.xml"), "stale", out);
+        }
+        IsoMessageDef loaded = IsoMessageDef.build("test.xml", dir);
+        assertSameDef(IsoMessageDef.build("test.xml"), loaded);
+        assertSameDef(IsoMessageDef.build("test.xml"), IsoMessageDef.build("test.xml", dir));
+    }
+
+    private static class Layout implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private int alpha;
+
+    }
+
+    @Test
+    public void testChangedClassLayoutIsStale() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ObjectOutputStream objectOut = new ObjectOutputStream(out)) {
+            objectOut.writeUTF("hash");
+            objectOut.writeObject(new Layout());
+        }
+        // same class and serialVersionUID but written with a field which has since been renamed
+        String written = new String(out.toByteArray(), StandardCharsets.ISO_8859_1).replace("alpha", "bravo");
+        byte[] snapshot = written.getBytes(StandardCharsets.ISO_8859_1);
+        assertNull(IsoMessageDefSnapshot.read(new ByteArrayInputStream(snapshot), "hash"));
+    }
+
+    @Test
+    public void testFingerprint() {
+        assertTrue(IsoMessageDefSnapshot.FINGERPRINT.contains(
+                IsoMessageDefSnapshot.layout(ObjectStreamClass.lookup(NumericCodec.class))));
+        // a computed serialVersionUID would change with any edit of the class and make its snapshots stale
+        assertThat(ObjectStreamClass.lookup(BerTlvCompositeCodec.class).getSerialVersionUID(), is(1L));
+    }
+
+    @Test
+    public void testCorruptSnapshotIsReplaced() throws Exception {
+        Path snapshot = dir.resolve("test.xml" + IsoMessageDefSnapshot.SUFFIX);
+        Files.write(snapshot, new byte[]{1, 2, 3});
+        assertSameDef(IsoMessageDef.build("test.xml"), IsoMessageDef.build("test.xml", dir));
+        assertTrue(Files.size(snapshot) > 3);
+    }
+
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright (c) 2014 Ian Bondoc
+ *
+ * This file is part of Jen8583
+ *
+ * Jen8583 is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the License, or(at your option) any later version.
+ *
+ * Jen8583 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.chiknrice.iso.net;
+
+import org.chiknrice.iso.CodecException;
+import org.chiknrice.iso.ConfigException;
+import org.chiknrice.iso.IsoMessage;
+import org.chiknrice.iso.IsoMessageCodec;
+import org.chiknrice.iso.config.ComponentDef.Encoding;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+import java.nio.channels.ReadableByteChannel;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TimeZone;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="mailto:chiknrice@gmail.com">Ian Bondoc</a>
+ */
+public class FrameCodecTest {
+
+    /**
+     * A channel which returns the bytes in chunks of the given sizes.
+     */
+    private static class ChunkedChannel implements ReadableByteChannel {
+
+        private final ByteBuffer bytes;
+        private final int[] chunks;
+        private int chunk;
+
+        private ChunkedChannel(byte[] bytes, int... chunks) {
+            this.bytes = ByteBuffer.wrap(bytes);
+            this.chunks = chunks;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) {
+            if (!bytes.hasRemaining()) {
+                return -1;
+            }
+            int size = Math.min(Math.min(chunks[chunk++ % chunks.length], bytes.remaining()), dst.remaining());
+            ByteBuffer slice = bytes.slice();
+            slice.limit(size);
+            dst.put(slice);
+            bytes.position(bytes.position() + size);
+            return size;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static byte[] concat(byte[]... arrays) {
+        int length = 0;
+        for (byte[] array : arrays) {
+            length += array.length;
+        }
+        byte[] result = new byte[length];
+        int pos = 0;
+        for (byte[] array : arrays) {
+            System.arraycopy(array, 0, result, pos, array.length);
+            pos += array.length;
+        }
+        return result;
+    }
+
+    private static List<byte[]> readAll(FrameReader reader, ReadableByteChannel channel) throws IOException {
+        List<byte[]> frames = new ArrayList<>();
+        while (reader.read(channel, frame -> {
+            byte[] bytes = new byte[frame.remaining()];
+            frame.get(bytes);
+            frames.add(bytes);
+        }) >= 0) {
+        }
+        assertThat(reader.pending(), is(0));
+        return frames;
+    }
+
+    private static void assertFrames(List<byte[]> frames, byte[]... expected) {
+        assertThat(frames.size(), is(expected.length));
+        for (int i = 0; i < expected.length; i++) {
+            assertTrue(Arrays.equals(expected[i], frames.get(i)));
+        }
+    }
+
+    @Test
+    public void testBinaryPrefix() throws IOException {
+        FrameCodec frameCodec = new FrameCodec(Encoding.BINARY, 2);
+        byte[] m1 = "ABC".getBytes();
+        byte[] m2 = new byte[300];
+        Arrays.fill(m2, (byte) 'X');
+        byte[] m3 = "D".getBytes();
+        byte[] stream = concat(new byte[]{0x00, 0x03}, m1, new byte[]{0x01, 0x2C}, m2, new byte[]{0x00, 0x01}, m3);
+
+        // partial frames, several frames per read and a frame longer than the initial buffer
+        assertFrames(readAll(new FrameReader(frameCodec, 1024, 16, false), new ChunkedChannel(stream, 1, 7, 3)), m1,
+                m2, m3);
+        assertFrames(readAll(new FrameReader(frameCodec, 1024, 64, true), new ChunkedChannel(stream, 500)), m1, m2,
+                m3);
+    }
+
+    @Test
+    public void testBcdPrefix() throws IOException {
+        FrameCodec frameCodec = new FrameCodec(Encoding.BCD, 4);
+        byte[] m1 = new byte[12];
+        byte[] m2 = "XY".getBytes();
+        byte[] stream = concat(new byte[]{0x00, 0x12}, m1, new byte[]{0x00, 0x02}, m2);
+        assertFrames(readAll(new FrameReader(frameCodec, 64, 8, false), new ChunkedChannel(stream, 3)), m1, m2);
+    }
+
+    @Test
+    public void testCharPrefix() throws IOException {
+        FrameCodec frameCodec = new FrameCodec(Encoding.CHAR, 4);
+        byte[] m1 = "HELLO".getBytes();
+        byte[] m2 = "WORLD!".getBytes();
+        byte[] stream = concat("0005".getBytes(), m1, "0006".getBytes(), m2);
+        assertFrames(readAll(new FrameReader(frameCodec, 64, 8, false), new ChunkedChannel(stream, 2, 5)), m1, m2);
+    }
+
+    @Test
+    public void testPrefixCountingItself() throws IOException {
+        FrameCodec frameCodec = new FrameCodec(Encoding.BINARY, 2, 0, -2, true);
+        byte[] m1 = "ABC".getBytes();
+        byte[] stream = concat(new byte[]{0x00, 0x05}, m1);
+        assertFrames(readAll(new FrameReader(frameCodec, 64, 8, false), new ChunkedChannel(stream, 1)), m1);
+    }
+
+    @Test
+    public void testEmbeddedLength() throws IOException {
+        // a 4 byte header with the length of the whole message in its last 2 bytes
+        FrameCodec frameCodec = new FrameCodec(Encoding.BINARY, 2, 2, -4, false);
+        byte[] m1 = {'H', 'D', 0x00, 0x07, 'A', 'B', 'C'};
+        byte[] m2 = {'H', 'D', 0x00, 0x04};
+        assertFrames(readAll(new FrameReader(frameCodec, 64, 8, false), new ChunkedChannel(concat(m1, m2), 3)), m1,
+                m2);
+        assertThat(frameCodec.prefixLength(), is(0));
+
+        ByteBuffer message = ByteBuffer.wrap(new byte[]{'H', 'D', 0x00, 0x00, 'A', 'B', 'C'});
+        frameCodec.encodeLength(null, message);
+        assertTrue(Arrays.equals(m1, message.array()));
+        assertThat(message.position(), is(0));
+    }
+
+    @Test
+    public void testDecodeLeavesIncompleteFrame() {
+        FrameCodec frameCodec = new FrameCodec(Encoding.CHAR, 4);
+        ByteBuffer buf = ByteBuffer.wrap("0003AB".getBytes());
+        assertNull(frameCodec.decode(buf));
+        assertThat(buf.position(), is(0));
+        buf = ByteBuffer.wrap("00".getBytes());
+        assertThat(frameCodec.frameLength(buf), is(-1));
+        assertNull(frameCodec.decode(buf));
+    }
+
+    @Test(expected = CodecException.class)
+    public void testFrameTooLong() throws IOException {
+        FrameCodec frameCodec = new FrameCodec(Encoding.BINARY, 2);
+        readAll(new FrameReader(frameCodec, 64, 8, false), new ChunkedChannel(new byte[]{0x01, 0x00, 0x00}, 3));
+    }
+
+    @Test(expected = CodecException.class)
+    public void testInvalidLength() throws IOException {
+        FrameCodec frameCodec = new FrameCodec(Encoding.BINARY, 2, 0, -2, true);
+        readAll(new FrameReader(frameCodec, 64, 8, false), new ChunkedChannel(new byte[]{0x00, 0x01, 0x00}, 3));
+    }
+
+    @Test
+    public void testBufferSmallerThanLengthField() {
+        FrameCodec prefix = new FrameCodec(Encoding.CHAR, 4);
+        FrameCodec embedded = new FrameCodec(Encoding.BINARY, 2, 6, 0, false);
+        assertThat(prefix.lengthFieldEnd(), is(4));
+        assertThat(embedded.lengthFieldEnd(), is(8));
+        assertInvalidBufferSize(prefix, 3);
+        assertInvalidBufferSize(embedded, 7);
+        assertThat(new FrameReader(prefix, 64, 4, false).pending(), is(0));
+        assertThat(new FrameReader(embedded, 64, 8, false).pending(), is(0));
+    }
+
+    private static void assertInvalidBufferSize(FrameCodec frameCodec, int bufferSize) {
+        try {
+            new FrameReader(frameCodec, 64, bufferSize, false);
+            fail("Expected ConfigException");
+        } catch (ConfigException e) {
+            assertThat(e.getMessage(), is("Invalid buffer size " + bufferSize));
+        }
+    }
+
+    @Test
+    public void testWriteAndReadMessages() throws Exception {
+        IsoMessageCodec codec = IsoMessageCodec.build("iso8583ascii.xml");
+        SimpleDateFormat utc = new SimpleDateFormat("MMddHHmmss");
+        utc.setTimeZone(TimeZone.getTimeZone("UTC"));
+        SimpleDateFormat local = new SimpleDateFormat("MMddHHmmss");
+        List<IsoMessage> messages = new ArrayList<>();
+        for (int i = 1; i <= 5; i++) {
+            IsoMessage m = new IsoMessage(200);
+            m.setField(2, "4111111111111111");
+            m.setField(4, 100 * i);
+            m.setField(7, utc.parse("0102030405"));
+            m.setField(11, i);
+            m.setField(12, local.parse("0101030405"));
+            m.setField(13, local.parse("0102000000"));
+            messages.add(m);
+        }
+
+        FrameCodec frameCodec = new FrameCodec(Encoding.BINARY, 2);
+        Pipe pipe = Pipe.open();
+        FrameWriter writer = new FrameWriter(frameCodec);
+        for (IsoMessage m : messages) {
+            writer.add(ByteBuffer.wrap(codec.encode(m)));
+        }
+        assertFalse(writer.isEmpty());
+        assertTrue(writer.flush(pipe.sink()));
+        assertTrue(writer.isEmpty());
+        pipe.sink().close();
+
+        List<IsoMessage> decoded = new ArrayList<>();
+        FrameReader reader = new FrameReader(frameCodec, 1024, 32, true);
+        while (reader.read(pipe.source(), frame -> {
+            decoded.add(codec.decode(frame));
+            assertFalse(frame.hasRemaining());
+        }) >= 0) {
+        }
+        assertThat(decoded, is(messages));
+    }
+
+}
@@ -0,0 +1,342 @@
+/*
+ * Copyright (c) 2014 Ian Bondoc
+ *
+ * This file is part of Jen8583
+ *
+ * Jen8583 is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the License, or(at your option) any later version.
+ *
+ * Jen8583 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.chiknrice.iso.net;
+
+import org.chiknrice.iso.ConfigException;
+import org.chiknrice.iso.IsoMessage;
+import org.chiknrice.iso.IsoMessageCodec;
+import org.chiknrice.iso.config.ComponentDef.Encoding;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.text.SimpleDateFormat;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static java.lang.String.format;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="mailto:chiknrice@gmail.com">Ian Bondoc</a>
+ */
+public class IsoClientTest {
+
+    private static final int[] KEY_FIELDS = {11, 37, 41};
+
+    private IsoMessageCodec codec;
+    private FrameCodec frameCodec;
+    private ScheduledExecutorService executor;
+    private IsoServer server;
+    private InetSocketAddress address;
+    private IsoClient client;
+
+    @Before
+    public void setUp() {
+        codec = IsoMessageCodec.build("test-net.xml");
+        frameCodec = new FrameCodec(Encoding.BINARY, 2);
+        executor = Executors.newScheduledThreadPool(4);
+    }
+
+    @After
+    public void tearDown() {
+        if (client != null) {
+            client.close();
+        }
+        if (server != null) {
+            server.close();
+        }
+        executor.shutdownNow();
+    }
+
+    private void start(Function<IsoMessage, CompletionStage<IsoMessage>> handler) throws Exception {
+        server = new IsoServer(codec, frameCodec, handler);
+        address = server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        client = new IsoClient(codec, frameCodec, KEY_FIELDS);
+        client.connect(address);
+    }
+
+    private static IsoMessage request(int stan) {
+        IsoMessage m = new IsoMessage(200);
+        m.setField(2, "4111111111111111");
+        m.setField(3, 0);
+        m.setField(4, 100 + stan);
+        m.setField(7, new Date());
+        m.setField(11, stan);
+        m.setField(37, format("%012d", stan));
+        m.setField(41, "TERM0001");
+        m.setField(49, 608);
+        return m;
+    }
+
+    private static IsoMessage respond(IsoMessage request) {
+        IsoMessage m = new IsoMessage(210);
+        m.copyFields(request, 3, 4, 7, 11, 37, 41, 49);
+        m.setField(39, "00");
+        return m;
+    }
+
+    @Test
+    public void testResponsesOutOfOrder() throws Exception {
+        start(request -> {
+            CompletableFuture<IsoMessage> response = new CompletableFuture<>();
+            executor.schedule(() -> response.complete(respond(request)), ThreadLocalRandom.current().nextInt(20),
+                    TimeUnit.MILLISECONDS);
+            return response;
+        });
+
+        List<CompletableFuture<IsoMessage>> responses = new ArrayList<>();
+        for (int stan = 1; stan <= 500; stan++) {
+            responses.add(client.send(request(stan), 10, TimeUnit.SECONDS));
+        }
+        for (int stan = 1; stan <= 500; stan++) {
+            IsoMessage response = responses.get(stan - 1).get(10, TimeUnit.SECONDS);
+            assertThat(response.getMti(), is(210));
+            assertThat(response.getField(11), is((Object) stan));
+            assertThat(response.getField(37), is((Object) format("%012d", stan)));
+            assertThat(response.getField(4), is((Object) (100 + stan)));
+        }
+        assertThat(client.inFlight(), is(0));
+    }
+
+    @Test
+    public void testConcurrentSenders() throws Exception {
+        start(request -> CompletableFuture.completedFuture(respond(request)));
+        client.close();
+        client = new IsoClient(codec.withLazyDecoding(), frameCodec, KEY_FIELDS);
+        client.connect(address);
+
+        List<CompletableFuture<IsoMessage>> responses = new ArrayList<>();
+        List<CompletableFuture<Void>> senders = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            int first = t * 100 + 1;
+            CompletableFuture<List<CompletableFuture<IsoMessage>>> sent = CompletableFuture.supplyAsync(() -> {
+                List<CompletableFuture<IsoMessage>> futures = new ArrayList<>();
+                for (int stan = first; stan < first + 100; stan++) {
+                    futures.add(client.send(request(stan), 10, TimeUnit.SECONDS));
+                }
+                return futures;
+            }, executor);
+            senders.add(sent.thenAccept(futures -> {
+                synchronized (responses) {
+                    responses.addAll(futures);
+                }
+            }));
+        }
+        CompletableFuture.allOf(senders.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+        assertThat(responses.size(), is(400));
+        for (CompletableFuture<IsoMessage> response : responses) {
+            assertThat(response.get(10, TimeUnit.SECONDS).getField(39), is((Object) "00"));
+        }
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        start(request -> new CompletableFuture<>());
+        CompletableFuture<IsoMessage> response = client.send(request(1), 50, TimeUnit.MILLISECONDS);
+        try {
+            response.get(10, TimeUnit.SECONDS);
+            fail("Failure expected due to timeout");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(ResponseTimeoutException.class));
+            assertNull(((ResponseTimeoutException) e.getCause()).getReversal());
+        }
+        assertThat(client.inFlight(), is(0));
+    }
+
+    @Test
+    public void testReversal() throws Exception {
+        CompletableFuture<IsoMessage> reversalReceived = new CompletableFuture<>();
+        start(request -> {
+            if (request.getMti() == 400) {
+                reversalReceived.complete(request);
+                IsoMessage m = new IsoMessage(410);
+                m.copyFields(request, 3, 4, 7, 11, 37, 41, 49);
+                m.setField(39, "00");
+                return CompletableFuture.completedFuture(m);
+            } else {
+                return new CompletableFuture<>();
+            }
+        });
+        client.setReversals(new ReversalFactory(90, 2, 3, 4, 7, 11, 37, 41, 49), 10, TimeUnit.SECONDS);
+        IsoMessage request = request(7);
+        CompletableFuture<IsoMessage> response = client.send(request, 50, TimeUnit.MILLISECONDS);
+        try {
+            response.get(10, TimeUnit.SECONDS);
+            fail("Failure expected due to timeout");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(ResponseTimeoutException.class));
+            IsoMessage reversalResponse = ((ResponseTimeoutException) e.getCause()).getReversal().get(10,
+                    TimeUnit.SECONDS);
+            assertThat(reversalResponse.getMti(), is(410));
+            assertThat(reversalResponse.getField(11), is((Object) 7));
+        }
+
+        IsoMessage reversal = reversalReceived.get(10, TimeUnit.SECONDS);
+        assertThat(reversal.getField(4), is((Object) 107));
+        assertThat(reversal.getField("90.1"), is((Object) 200));
+        assertThat(reversal.getField("90.2"), is((Object) 7));
+        SimpleDateFormat utc = new SimpleDateFormat("MMddHHmmss");
+        utc.setTimeZone(TimeZone.getTimeZone("UTC"));
+        assertThat(utc.format(reversal.getField("90.3")), is(utc.format(request.getField(7))));
+        assertThat(reversal.getField("90.4"), is((Object) 0));
+        assertThat(client.inFlight(), is(0));
+    }
+
+    @Test
+    public void testLateResponseDoesNotMatchReversal() throws Exception {
+        CompletableFuture<IsoMessage> lateResponse = new CompletableFuture<>();
+        start(request -> {
+            if (request.getMti() == 400) {
+                // the late 0210 is written before the 0410 on the same connection
+                lateResponse.complete(respond(request));
+                IsoMessage m = new IsoMessage(410);
+                m.copyFields(request, 3, 4, 7, 11, 37, 41, 49);
+                m.setField(39, "00");
+                CompletableFuture<IsoMessage> reversalResponse = new CompletableFuture<>();
+                executor.schedule(() -> reversalResponse.complete(m), 100, TimeUnit.MILLISECONDS);
+                return reversalResponse;
+            } else {
+                return lateResponse;
+            }
+        });
+        client.setReversals(new ReversalFactory(90, 2, 3, 4, 7, 11, 37, 41, 49), 10, TimeUnit.SECONDS);
+        CompletableFuture<IsoMessage> response = client.send(request(8), 50, TimeUnit.MILLISECONDS);
+        try {
+            response.get(10, TimeUnit.SECONDS);
+            fail("Failure expected due to timeout");
+        } catch (ExecutionException e) {
+            CompletableFuture<IsoMessage> reversal = ((ResponseTimeoutException) e.getCause()).getReversal();
+            assertThat(reversal.get(10, TimeUnit.SECONDS).getMti(), is(410));
+        }
+        assertTrue(lateResponse.isDone());
+        assertThat(client.inFlight(), is(0));
+    }
+
+    @Test
+    public void testReversalFactory() {
+        ReversalFactory factory = new ReversalFactory(null, 11, 41);
+        IsoMessage reversal = factory.apply(request(9));
+        assertThat(reversal.getMti(), is(400));
+        assertThat(reversal.getFields().keySet().size(), is(2));
+        assertThat(reversal.getField(41), is((Object) "TERM0001"));
+        assertNull(factory.apply(new IsoMessage(210)));
+        assertNull(factory.apply(new IsoMessage(800)));
+        assertThat(factory.apply(new IsoMessage(1100)).getMti(), is(1400));
+    }
+
+    @Test
+    public void testDuplicateKey() throws Exception {
+        start(request -> new CompletableFuture<>());
+        CompletableFuture<IsoMessage> first = client.send(request(1), 10, TimeUnit.SECONDS);
+        CompletableFuture<IsoMessage> second = client.send(request(1), 10, TimeUnit.SECONDS);
+        try {
+            second.get(10, TimeUnit.SECONDS);
+            fail("Failure expected due to duplicate key");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(IllegalStateException.class));
+        }
+        assertFalse(first.isDone());
+        first.cancel(false);
+        assertThat(client.inFlight(), is(0));
+    }
+
+    @Test
+    public void testBadConnectionsDoNotStopServer() throws Exception {
+        start(request -> CompletableFuture.completedFuture(respond(request)));
+
+        try (Socket oversized = new Socket(address.getAddress(), address.getPort())) {
+            oversized.getOutputStream().write(new byte[]{(byte) 0xFF, (byte) 0xFF});
+            oversized.setSoTimeout(10000);
+            assertThat(oversized.getInputStream().read(), is(-1));
+        }
+        for (int i = 0; i < 10; i++) {
+            Socket reset = new Socket(address.getAddress(), address.getPort());
+            reset.setSoLinger(true, 0);
+            reset.close();
+        }
+
+        assertThat(client.send(request(1), 10, TimeUnit.SECONDS).get(10, TimeUnit.SECONDS).getMti(), is(210));
+        client.close();
+        client = new IsoClient(codec, frameCodec, KEY_FIELDS);
+        client.connect(address);
+        assertThat(client.send(request(2), 10, TimeUnit.SECONDS).get(10, TimeUnit.SECONDS).getMti(), is(210));
+    }
+
+    private static long ioThreads() {
+        return Thread.getAllStackTraces().keySet().stream().filter(t -> t.getName().equals("iso-client")).count();
+    }
+
+    @Test
+    public void testInvalidClientStartsNoThread() throws Exception {
+        long threads = ioThreads();
+        try {
+            new IsoClient(codec, frameCodec);
+            fail("Failure expected due to missing key fields");
+        } catch (ConfigException e) {
+            assertThat(ioThreads(), is(threads));
+        }
+
+        start(request -> CompletableFuture.completedFuture(respond(request)));
+        threads = ioThreads();
+        IsoClient unconnected = new IsoClient(codec, frameCodec, KEY_FIELDS);
+        assertThat(ioThreads(), is(threads));
+        unconnected.close();
+        try {
+            unconnected.connect(address);
+            fail("Failure expected due to closed client");
+        } catch (ClosedChannelException e) {
+            assertThat(ioThreads(), is(threads));
+        }
+    }
+
+    @Test
+    public void testServerClosed() throws Exception {
+        CompletableFuture<Void> received = new CompletableFuture<>();
+        start(request -> {
+            received.complete(null);
+            return new CompletableFuture<>();
+        });
+        CompletableFuture<IsoMessage> response = client.send(request(1), 10, TimeUnit.SECONDS);
+        received.get(10, TimeUnit.SECONDS);
+        server.close();
+        try {
+            response.get(10, TimeUnit.SECONDS);
+            fail("Failure expected due to closed connection");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(ClosedChannelException.class));
+        }
+        assertThat(client.send(request(2), 10, TimeUnit.SECONDS).isCompletedExceptionally(), is(true));
+    }
+
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2014 Ian Bondoc
+ *
+ * This file is part of Jen8583
+ *
+ * Jen8583 is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the License, or(at your option) any later version.
+ *
+ * Jen8583 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.chiknrice.iso.util;
+
+import org.chiknrice.iso.CodecException;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="mailto:chiknrice@gmail.com">Ian Bondoc</a>
+ */
+public class BcdTest {
+
+    @Test
+    public void testLegacyMethods() {
+        assertTrue(Arrays.equals(new byte[]{0x01, 0x23, 0x45}, Bcd.encode("12345")));
+        assertThat(Bcd.decode(new byte[]{0x01, 0x23, 0x45}), is("012345"));
+    }
+
+    @Test
+    public void testEncodeLongPadding() {
+        ByteBuffer buf = ByteBuffer.allocate(10);
+        Bcd.encodeLong(buf, 12345, 5, true, 0);
+        Bcd.encodeLong(buf, 12345, 5, false, 0xF);
+        Bcd.encodeLong(buf, 42, 4, true, 0xF);
+        assertThat(buf.position(), is(8));
+        assertTrue(Arrays.equals(new byte[]{0x01, 0x23, 0x45, 0x12, 0x34, 0x5F, 0x00, 0x42},
+                Arrays.copyOf(buf.array(), 8)));
+
+        buf.flip();
+        assertThat(Bcd.decodeLong(buf, 5, true), is(12345L));
+        assertThat(Bcd.decodeLong(buf, 5, false), is(12345L));
+        assertThat(Bcd.decodeLong(buf, 4, true), is(42L));
+        assertThat(buf.hasRemaining(), is(false));
+    }
+
+    @Test
+    public void testCharSinks() {
+        ByteBuffer buf = ByteBuffer.allocateDirect(20);
+        Bcd.encode(buf, "4111111111111111111", false, 0xF);
+        assertThat(buf.position(), is(10));
+        assertThat(buf.get(9), is((byte) 0x1F));
+        buf.flip();
+
+        StringBuilder sb = new StringBuilder("PAN:");
+        Bcd.decode(buf.duplicate(), 19, false, sb);
+        assertThat(sb.toString(), is("PAN:4111111111111111111"));
+
+        char[] chars = new char[21];
+        Bcd.decode(buf, 19, false, chars, 1);
+        assertThat(new String(chars, 1, 19), is("4111111111111111111"));
+        assertThat(buf.hasRemaining(), is(false));
+    }
+
+    @Test
+    public void testInvalidDigit() {
+        try {
+            Bcd.decodeLong(ByteBuffer.wrap(new byte[]{0x12, 0x3A}), 4, true);
+            fail("Failure expected due to invalid digit");
+        } catch (CodecException e) {
+            assertThat(e.getMessage(), is("Invalid numeric value [123A]"));
+        }
+        try {
+            Bcd.encode(ByteBuffer.allocate(2), "12a", true, 0);
+            fail("Failure expected due to invalid digit");
+        } catch (CodecException e) {
+            assertThat(e.getMessage(), is("Invalid numeric value [12a]"));
+        }
+    }
+
+    @Test(expected = CodecException.class)
+    public void testEncodeLongExceedingDigits() {
+        Bcd.encodeLong(ByteBuffer.allocate(2), 123, 2, true, 0);
+    }
+
+}
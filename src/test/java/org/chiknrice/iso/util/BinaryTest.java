@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2014 Ian Bondoc
+ *
+ * This file is part of Jen8583
+ *
+ * Jen8583 is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the License, or(at your option) any later version.
+ *
+ * Jen8583 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.chiknrice.iso.util;
+
+import org.chiknrice.iso.CodecException;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="mailto:chiknrice@gmail.com">Ian Bondoc</a>
+ */
+public class BinaryTest {
+
+    @Test
+    public void testAllWidths() {
+        for (ByteOrder order : new ByteOrder[]{ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}) {
+            ByteBuffer buf = ByteBuffer.allocate(36).order(order);
+            for (int width = 1; width <= 8; width++) {
+                Binary.putLong(buf, width == 8 ? Long.MAX_VALUE : (1L << (width << 3)) - 1, width);
+            }
+            assertThat(buf.position(), is(36));
+            assertThat(buf.get(0), is((byte) 0xFF));
+            assertThat(buf.get(28), is((byte) 0x7F));
+            buf.flip();
+            for (int width = 1; width <= 8; width++) {
+                assertThat(Binary.getLong(buf, width), is(width == 8 ? Long.MAX_VALUE : (1L << (width << 3)) - 1));
+            }
+        }
+    }
+
+    @Test
+    public void testBigEndian() {
+        ByteBuffer buf = ByteBuffer.allocate(5).order(ByteOrder.LITTLE_ENDIAN);
+        Binary.putLong(buf, 12345, 5);
+        assertTrue(Arrays.equals(new byte[]{0x00, 0x00, 0x00, 0x30, 0x39}, buf.array()));
+        assertThat(Binary.getLong(buf, 3, 2), is(12345L));
+    }
+
+    @Test
+    public void testOverflow() {
+        ByteBuffer buf = ByteBuffer.allocate(8);
+        try {
+            Binary.putLong(buf, 0x100, 1);
+            fail("Failure expected due to overflow");
+        } catch (CodecException e) {
+            assertThat(e.getMessage(), is("256 trimmed on encoding to 1 bytes"));
+        }
+        try {
+            Binary.putLong(buf, -1, 2);
+            fail("Failure expected due to negative value");
+        } catch (CodecException e) {
+            assertThat(e.getMessage(), is("-1 trimmed on encoding to 2 bytes"));
+            assertThat(buf.position(), is(0));
+        }
+        Binary.putLong(buf, -1, 8);
+        buf.flip();
+        assertThat(Binary.getLong(buf, 8), is(-1L));
+    }
+
+    @Test
+    public void testWidth() {
+        assertThat(Binary.width(0), is(1));
+        assertThat(Binary.width(0xFF), is(1));
+        assertThat(Binary.width(0x100), is(2));
+        assertThat(Binary.width(Long.MAX_VALUE), is(8));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidWidth() {
+        Binary.getLong(ByteBuffer.allocate(16), 9);
+    }
+
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2014 Ian Bondoc
+ *
+ * This file is part of Jen8583
+ *
+ * Jen8583 is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the License, or(at your option) any later version.
+ *
+ * Jen8583 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.chiknrice.iso.util;
+
+import org.chiknrice.iso.CodecException;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="mailto:chiknrice@gmail.com">Ian Bondoc</a>
+ */
+public class HexTest {
+
+    @Test
+    public void testEncodeDecode() {
+        byte[] bytes = {0x01, (byte) 0xAB, 0x7F, (byte) 0x80};
+        assertThat(Hex.encode(bytes), is("01AB7F80"));
+        assertTrue(Arrays.equals(bytes, Hex.decode("01ab7F80")));
+        assertTrue(Arrays.equals(new byte[]{0x0A, (byte) 0xBC}, Hex.decode("abc")));
+        assertThat(Hex.decode(null).length, is(0));
+    }
+
+    @Test
+    public void testStreaming() {
+        StringBuilder sb = new StringBuilder("0x");
+        ByteBuffer src = ByteBuffer.wrap(new byte[]{0x12, (byte) 0xEF});
+        Hex.encode(src, sb);
+        assertThat(src.hasRemaining(), is(false));
+        Hex.encode(new byte[]{0x34}, sb);
+        assertThat(sb.toString(), is("0x12EF34"));
+
+        ByteBuffer dst = ByteBuffer.allocateDirect(4);
+        Hex.decode("cafe", dst);
+        dst.flip();
+        assertThat(dst.getShort(), is((short) 0xCAFE));
+    }
+
+    @Test
+    public void testHexDigitsInBuffer() {
+        ByteBuffer buf = ByteBuffer.allocate(16);
+        Hex.putHex(buf, 0xF23AL, 6);
+        buf.put("ff".getBytes());
+        buf.flip();
+        assertThat(new String(buf.array(), 0, 6), is("00F23A"));
+        assertThat(Hex.getHex(buf, 6), is(0xF23AL));
+        assertThat(Hex.getHex(buf, 2), is(0xFFL));
+    }
+
+    @Test
+    public void testInvalidChar() {
+        assertThat(Hex.value('g'), is(-1));
+        assertThat(Hex.value('\u0130'), is(-1));
+        try {
+            Hex.decode("0G");
+            fail("Failure expected due to invalid hex char");
+        } catch (CodecException e) {
+            assertThat(e.getMessage(), is("Invalid hex char G"));
+        }
+    }
+
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2014 Ian Bondoc
+ *
+ * This file is part of Jen8583
+ *
+ * Jen8583 is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the License, or(at your option) any later version.
+ *
+ * Jen8583 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.chiknrice.iso.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.*;
+
+/**
+ * @author <a href="mailto:chiknrice@gmail.com">Ian Bondoc</a>
+ */
+public class TimeoutWheelTest {
+
+    @Test
+    public void testExpiryAndCancel() throws Exception {
+        List<List<Long>> batches = new ArrayList<>();
+        CountDownLatch done = new CountDownLatch(500);
+        // a small wheel so that timeouts need several rounds
+        TimeoutWheel<Integer, Long> wheel = new TimeoutWheel<>("test-timeouts", 5, TimeUnit.MILLISECONDS, 8,
+                expired -> {
+                    synchronized (batches) {
+                        batches.add(expired);
+                    }
+                    for (int i = 0; i < expired.size(); i++) {
+                        done.countDown();
+                    }
+                });
+        try {
+            for (int i = 0; i < 1000; i++) {
+                assertTrue(wheel.schedule(i, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100 + i % 50), 100 + i
+                        % 50, TimeUnit.MILLISECONDS));
+            }
+            assertFalse(wheel.schedule(1, 0L, 10, TimeUnit.MILLISECONDS));
+            assertThat(wheel.size(), is(1000));
+            for (int i = 1; i < 1000; i += 2) {
+                assertNotNull(wheel.cancel(i));
+            }
+            assertNull(wheel.cancel(1));
+            assertThat(wheel.size(), is(500));
+
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            Set<Long> expired = new HashSet<>();
+            synchronized (batches) {
+                assertTrue(batches.size() < 500);
+                for (List<Long> batch : batches) {
+                    for (Long deadline : batch) {
+                        // never early
+                        assertTrue(System.nanoTime() >= deadline);
+                        assertTrue(expired.add(deadline));
+                    }
+                }
+            }
+            assertThat(expired.size(), is(500));
+            assertThat(wheel.size(), is(0));
+        } finally {
+            wheel.close();
+        }
+    }
+
+    @Test
+    public void testCancelValue() {
+        TimeoutWheel<String, Object> wheel = new TimeoutWheel<>("test-timeouts", 10, TimeUnit.MILLISECONDS, 16,
+                expired -> fail("No timeout should expire"));
+        try {
+            Object first = new Object();
+            Object second = new Object();
+            assertTrue(wheel.schedule("key", first, 1, TimeUnit.MINUTES));
+            assertFalse(wheel.cancel("key", second));
+            assertTrue(wheel.cancel("key", first));
+            assertTrue(wheel.schedule("key", second, 1, TimeUnit.MINUTES));
+            assertFalse(wheel.cancel("key", first));
+            assertThat(wheel.cancelAll().size(), is(1));
+            assertThat(wheel.size(), is(0));
+        } finally {
+            wheel.close();
+        }
+    }
+
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright (c) 2014 Ian Bondoc
+ *
+ * This file is part of Jen8583
+ *
+ * Jen8583 is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the License, or(at your option) any later version.
+ *
+ * Jen8583 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.chiknrice.iso.bench;
+
+import org.chiknrice.iso.codec.AlphaCodec;
+import org.chiknrice.iso.codec.BerTlvCompositeCodec;
+import org.chiknrice.iso.codec.BinaryCodec;
+import org.chiknrice.iso.codec.BitmapCodec;
+import org.chiknrice.iso.codec.BitmapCodec.Bitmap;
+import org.chiknrice.iso.codec.DateTimeCodec;
+import org.chiknrice.iso.codec.NumericCodec;
+import org.chiknrice.iso.codec.TlvCompositeCodec;
+import org.chiknrice.iso.config.ComponentDef;
+import org.chiknrice.iso.config.ComponentDef.Encoding;
+import org.chiknrice.iso.config.CompositeDef;
+import org.chiknrice.iso.config.CompositePlan;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.Date;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Micro benchmarks of the codecs, each encode writes to and each decode reads from a reused direct buffer.
+ *
+ * @author <a href="mailto:chiknrice@gmail.com">Ian Bondoc</a>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CodecBenchmark {
+
+    private final NumericCodec charNumeric = new NumericCodec(Encoding.CHAR, 12);
+    private final NumericCodec bcdNumeric = new NumericCodec(Encoding.BCD, 12);
+    private final NumericCodec binaryNumeric = new NumericCodec(Encoding.BINARY, 4);
+    private final AlphaCodec alpha = new AlphaCodec(true, true, 25);
+    private final DateTimeCodec charDate = new DateTimeCodec("MMddHHmmss", TimeZone.getTimeZone("UTC"), Encoding.CHAR);
+    private final DateTimeCodec bcdDate = new DateTimeCodec("MMddHHmmss", TimeZone.getTimeZone("UTC"), Encoding.BCD);
+    private final BitmapCodec binaryBitmap = new BitmapCodec(Bitmap.Type.BINARY);
+    private final BitmapCodec hexBitmap = new BitmapCodec(Bitmap.Type.HEX);
+    private final BerTlvCompositeCodec tlv = new BerTlvCompositeCodec(true);
+
+    private final Date date = new Date();
+    private final long[] bits = {0x7230058020C10000L, 0x0000000000000004L};
+    private final Map<Integer, Object> tlvValues = new TreeMap<>();
+
+    private CompositePlan tlvPlan;
+    private ByteBuffer buf;
+    private ByteBuffer charNumericBytes;
+    private ByteBuffer bcdNumericBytes;
+    private ByteBuffer binaryNumericBytes;
+    private ByteBuffer alphaBytes;
+    private ByteBuffer charDateBytes;
+    private ByteBuffer bcdDateBytes;
+    private ByteBuffer binaryBitmapBytes;
+    private ByteBuffer hexBitmapBytes;
+    private ByteBuffer tlvBytes;
+
+    @Setup
+    public void setup() {
+        TreeMap<Integer, ComponentDef> defs = new TreeMap<>();
+        defs.put(0x82, new ComponentDef(new BinaryCodec(), true));
+        defs.put(0x95, new ComponentDef(new BinaryCodec(), true));
+        defs.put(0x9A, new ComponentDef(new NumericCodec(Encoding.BCD), true));
+        defs.put(0x5F2A, new ComponentDef(new NumericCodec(Encoding.BCD), true));
+        defs.put(0x9F02, new ComponentDef(new NumericCodec(Encoding.BCD), true));
+        defs.put(0x9F26, new ComponentDef(new BinaryCodec(), true));
+        defs.put(0x9F36, new ComponentDef(new BinaryCodec(), true));
+        defs.put(0x9F37, new ComponentDef(new BinaryCodec(), true));
+        tlvPlan = new CompositeDef(defs, tlv, true).getPlan();
+        tlvValues.put(0x82, new byte[]{0x39, 0x00});
+        tlvValues.put(0x95, new byte[5]);
+        tlvValues.put(0x9A, 241130);
+        tlvValues.put(0x5F2A, 840);
+        tlvValues.put(0x9F02, 1000);
+        tlvValues.put(0x9F26, new byte[8]);
+        tlvValues.put(0x9F36, new byte[2]);
+        tlvValues.put(0x9F37, new byte[4]);
+
+        buf = ByteBuffer.allocateDirect(256);
+        charNumericBytes = encoded(b -> charNumeric.encodeLong(b, 123456789L));
+        bcdNumericBytes = encoded(b -> bcdNumeric.encodeLong(b, 123456789L));
+        binaryNumericBytes = encoded(b -> binaryNumeric.encodeLong(b, 123456789L));
+        alphaBytes = encoded(b -> alpha.encode(b, "MERCHANT NAME"));
+        charDateBytes = encoded(b -> charDate.encode(b, date));
+        bcdDateBytes = encoded(b -> bcdDate.encode(b, date));
+        binaryBitmapBytes = encoded(b -> binaryBitmap.encode(b, bits));
+        hexBitmapBytes = encoded(b -> hexBitmap.encode(b, bits));
+        tlvBytes = encoded(b -> tlv.encode(b, tlvValues, tlvPlan));
+    }
+
+    private interface Encoder {
+        void encode(ByteBuffer buf);
+    }
+
+    private static ByteBuffer encoded(Encoder encoder) {
+        ByteBuffer encoded = ByteBuffer.allocateDirect(256);
+        encoder.encode(encoded);
+        encoded.flip();
+        return encoded;
+    }
+
+    private ByteBuffer clear() {
+        buf.clear();
+        return buf;
+    }
+
+    private static ByteBuffer rewind(ByteBuffer encoded) {
+        encoded.rewind();
+        return encoded;
+    }
+
+    @Benchmark
+    public ByteBuffer encodeCharNumeric() {
+        charNumeric.encodeLong(clear(), 123456789L);
+        return buf;
+    }
+
+    @Benchmark
+    public long decodeCharNumeric() {
+        return charNumeric.decodeLong(rewind(charNumericBytes));
+    }
+
+    @Benchmark
+    public Number decodeCharNumericBoxed() {
+        return charNumeric.decode(rewind(charNumericBytes));
+    }
+
+    @Benchmark
+    public ByteBuffer encodeBcdNumeric() {
+        bcdNumeric.encodeLong(clear(), 123456789L);
+        return buf;
+    }
+
+    @Benchmark
+    public long decodeBcdNumeric() {
+        return bcdNumeric.decodeLong(rewind(bcdNumericBytes));
+    }
+
+    @Benchmark
+    public ByteBuffer encodeBinaryNumeric() {
+        binaryNumeric.encodeLong(clear(), 123456789L);
+        return buf;
+    }
+
+    @Benchmark
+    public long decodeBinaryNumeric() {
+        return binaryNumeric.decodeLong(rewind(binaryNumericBytes));
+    }
+
+    @Benchmark
+    public ByteBuffer encodeAlpha() {
+        alpha.encode(clear(), "MERCHANT NAME");
+        return buf;
+    }
+
+    @Benchmark
+    public String decodeAlpha() {
+        return alpha.decode(rewind(alphaBytes));
+    }
+
+    @Benchmark
+    public ByteBuffer encodeCharDate() {
+        charDate.encode(clear(), date);
+        return buf;
+    }
+
+    @Benchmark
+    public long decodeCharDate() {
+        return charDate.decodeEpochMillis(rewind(charDateBytes));
+    }
+
+    @Benchmark
+    public ByteBuffer encodeBcdDate() {
+        bcdDate.encode(clear(), date);
+        return buf;
+    }
+
+    @Benchmark
+    public long decodeBcdDate() {
+        return bcdDate.decodeEpochMillis(rewind(bcdDateBytes));
+    }
+
+    @Benchmark
+    public ByteBuffer encodeBinaryBitmap() {
+        binaryBitmap.encode(clear(), bits);
+        return buf;
+    }
+
+    @Benchmark
+    public Bitmap decodeBinaryBitmap() {
+        return binaryBitmap.decode(rewind(binaryBitmapBytes));
+    }
+
+    @Benchmark
+    public ByteBuffer encodeHexBitmap() {
+        hexBitmap.encode(clear(), bits);
+        return buf;
+    }
+
+    @Benchmark
+    public Bitmap decodeHexBitmap() {
+        return hexBitmap.decode(rewind(hexBitmapBytes));
+    }
+
+    @Benchmark
+    public ByteBuffer encodeBerTlv() {
+        tlv.encode(clear(), tlvValues, tlvPlan);
+        return buf;
+    }
+
+    @Benchmark
+    public Map<Integer, Object> decodeBerTlv() {
+        return tlv.decode(rewind(tlvBytes), tlvPlan);
+    }
+
+}
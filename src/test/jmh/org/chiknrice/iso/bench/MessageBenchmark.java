@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2014 Ian Bondoc
+ *
+ * This file is part of Jen8583
+ *
+ * Jen8583 is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the License, or(at your option) any later version.
+ *
+ * Jen8583 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.chiknrice.iso.bench;
+
+import org.chiknrice.iso.IsoMessage;
+import org.chiknrice.iso.IsoMessageCodec;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full message encode/decode of the bundled configs: iso8583ascii (CHAR with a binary bitmap), test (nested
+ * composites), bench-bcd (BCD mti, numerics, dates and length prefixes) and test-ber-tlv (EMV data in field 55).
+ *
+ * @author <a href="mailto:chiknrice@gmail.com">Ian Bondoc</a>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MessageBenchmark {
+
+    @Param({"iso8583ascii", "test", "bcd", "emv"})
+    private String config;
+
+    private IsoMessageCodec codec;
+    private IsoMessageCodec lazyCodec;
+    private IsoMessage message;
+    private byte[] encoded;
+    private ByteBuffer buf;
+
+    @Setup
+    public void setup() {
+        switch (config) {
+            case "iso8583ascii":
+                codec = IsoMessageCodec.build("iso8583ascii.xml");
+                message = new IsoMessage(200);
+                message.setField(2, "4111111111111111");
+                message.setField(3, 1000);
+                message.setField(4, 12345);
+                message.setField(7, new Date());
+                message.setField(11, 123456);
+                message.setField(12, new Date());
+                message.setField(13, new Date());
+                message.setField("28.1", "C");
+                message.setField("28.2", 200);
+                break;
+            case "test":
+                codec = IsoMessageCodec.build("test.xml");
+                message = new IsoMessage(100);
+                message.setField(2, "a");
+                message.setField(3, "b");
+                message.setField(4, "c");
+                message.setField("5.1", 12);
+                message.setField("5.2", "ab");
+                message.setField("6.2", "ab");
+                message.setField("6.3", "cd");
+                message.setField("6.4.1", "ef");
+                message.setField("6.4.2", "0123456789");
+                message.setField("6.5.1", "abcde");
+                message.setField("6.5.5", 1234567);
+                message.setField("6.9", new BigInteger("12345678901234567890"));
+                break;
+            case "bcd":
+                codec = IsoMessageCodec.build("bench-bcd.xml");
+                message = new IsoMessage(200);
+                message.setField(2, 4111111111111111L);
+                message.setField(3, 0);
+                message.setField(4, 12345);
+                message.setField(7, new Date());
+                message.setField(11, 123456);
+                message.setField(12, new Date());
+                message.setField(13, new Date());
+                message.setField(22, 51);
+                message.setField(37, "123456789012");
+                message.setField(41, "TERM0001");
+                message.setField(42, "MERCHANT0000001");
+                message.setField(49, 840);
+                message.setField(52, new byte[8]);
+                break;
+            case "emv":
+                codec = IsoMessageCodec.build("test-ber-tlv.xml");
+                message = new IsoMessage(100);
+                message.setField(11, 123456);
+                message.setField("55.130", new byte[]{0x39, 0x00});
+                message.setField("55.24362", 840);
+                message.setField("55.40706", 1000);
+                message.setField("55.40742", new byte[8]);
+                message.setField("55.112.87", new byte[10]);
+                message.setField("55.112.24352", "CARDHOLDER/TEST");
+                break;
+            default:
+                throw new IllegalArgumentException(config);
+        }
+        lazyCodec = codec.withLazyDecoding();
+        encoded = codec.encode(message);
+        buf = ByteBuffer.allocateDirect(IsoMessageCodec.MAX_MESSAGE_LENGTH);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return codec.encode(message);
+    }
+
+    @Benchmark
+    public int encodeToBuffer() {
+        buf.clear();
+        return codec.encode(message, buf);
+    }
+
+    @Benchmark
+    public int encodedLength() {
+        return codec.encodedLength(message);
+    }
+
+    @Benchmark
+    public IsoMessage decode() {
+        return codec.decode(encoded);
+    }
+
+    @Benchmark
+    public Object decodeLazyOneField() {
+        return lazyCodec.decode(encoded).getField(11);
+    }
+
+}
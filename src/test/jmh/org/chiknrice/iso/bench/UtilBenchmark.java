@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2014 Ian Bondoc
+ *
+ * This file is part of Jen8583
+ *
+ * Jen8583 is free software: you can redistribute it and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of the License, or(at your option) any later version.
+ *
+ * Jen8583 is distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License along with this program. If not, see
+ * <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.chiknrice.iso.bench;
+
+import org.chiknrice.iso.util.Bcd;
+import org.chiknrice.iso.util.Binary;
+import org.chiknrice.iso.util.Hex;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Micro benchmarks of the BCD, hex and binary conversions on a reused direct buffer.
+ *
+ * @author <a href="mailto:chiknrice@gmail.com">Ian Bondoc</a>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class UtilBenchmark {
+
+    private static final String PAN = "4111111111111111111";
+
+    private final ByteBuffer buf = ByteBuffer.allocateDirect(64);
+    private final StringBuilder chars = new StringBuilder(64);
+
+    @Setup
+    public void setup() {
+        Bcd.encode(buf, PAN, true, 0);
+        Hex.putHex(buf, 0x7230058020C10000L, 16);
+        Binary.putLong(buf, 0x7230058020C10000L, 8);
+    }
+
+    private ByteBuffer at(int position) {
+        buf.limit(buf.capacity()).position(position);
+        return buf;
+    }
+
+    @Benchmark
+    public ByteBuffer encodeBcdLong() {
+        Bcd.encodeLong(at(0), 123456789012L, 12, true, 0);
+        return buf;
+    }
+
+    @Benchmark
+    public long decodeBcdLong() {
+        return Bcd.decodeLong(at(0), 12, true);
+    }
+
+    @Benchmark
+    public ByteBuffer encodeBcdDigits() {
+        Bcd.encode(at(0), PAN, true, 0);
+        return buf;
+    }
+
+    @Benchmark
+    public int decodeBcdDigits() {
+        chars.setLength(0);
+        Bcd.decode(at(0), PAN.length(), true, chars);
+        return chars.length();
+    }
+
+    @Benchmark
+    public ByteBuffer putHex() {
+        Hex.putHex(at(10), 0x7230058020C10000L, 16);
+        return buf;
+    }
+
+    @Benchmark
+    public long getHex() {
+        return Hex.getHex(at(10), 16);
+    }
+
+    @Benchmark
+    public int encodeHex() {
+        chars.setLength(0);
+        ByteBuffer src = at(26);
+        src.limit(34);
+        Hex.encode(src, chars);
+        return chars.length();
+    }
+
+    @Benchmark
+    public ByteBuffer putLong() {
+        Binary.putLong(at(26), 0x7230058020C10000L, 8);
+        return buf;
+    }
+
+    @Benchmark
+    public long getLong() {
+        return Binary.getLong(at(26), 8);
+    }
+
+}